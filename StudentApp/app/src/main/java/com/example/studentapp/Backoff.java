@@ -0,0 +1,27 @@
+package com.example.studentapp;
+
+import java.util.Random;
+
+/**
+ * Capped exponential backoff with jitter: half of {@code base * 2^attempts} (at most
+ * {@code max}) plus a random share of the other half, so a class of devices retrying after the
+ * same failure spreads out instead of arriving together.
+ */
+public class Backoff {
+
+    private final long baseMillis;
+    private final long maxMillis;
+    private final Random random;
+
+    public Backoff(long baseMillis, long maxMillis, Random random) {
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+        this.random = random;
+    }
+
+    /** Delay before the next try after {@code attempts} earlier ones. */
+    public synchronized long delayMillis(int attempts) {
+        long delay = Math.min(maxMillis, baseMillis << Math.min(attempts, 16));
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+}
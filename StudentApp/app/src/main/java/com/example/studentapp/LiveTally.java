@@ -0,0 +1,77 @@
+package com.example.studentapp;
+
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.PayloadReader;
+import com.example.votingcore.protocol.ProtocolException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live results of one election, kept in step with the teacher's {@code TALLY_SNAPSHOT} and
+ * {@code TALLY_DELTA} frames. Remembers the stream and version it holds so a new connection can
+ * resume from them with {@code SUBSCRIBE_TALLY}.
+ *
+ * <p>Safe to apply frames on the connection thread while the UI reads counts. Plain Java so it
+ * can be tested on the JVM.
+ */
+public class LiveTally {
+
+    private int stream;
+    private int version;
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+
+    /**
+     * Applies a tally frame whose election id has already been read.
+     *
+     * @return the candidates whose count changed, in frame order; every candidate for a snapshot,
+     *     none for a delta already applied, or null if a delta was missed and the caller should
+     *     subscribe again from {@link #getStream()} and {@link #getVersion()}
+     */
+    public synchronized List<String> apply(int type, PayloadReader payload) throws ProtocolException {
+        int frameStream = payload.readInt();
+        int frameVersion = payload.readInt();
+        if (type == MessageType.TALLY_DELTA) {
+            if (frameStream != stream || frameVersion > version + 1) {
+                return null;
+            }
+            if (frameVersion <= version) {
+                return Collections.emptyList();
+            }
+        } else {
+            counts.clear();
+        }
+        stream = frameStream;
+        version = frameVersion;
+        int count = payload.readUnsignedShort();
+        List<String> changed = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String candidate = payload.readString();
+            counts.put(candidate, payload.readLong());
+            changed.add(candidate);
+        }
+        return changed;
+    }
+
+    /** 0 until the first snapshot. */
+    public synchronized int getStream() {
+        return stream;
+    }
+
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    public synchronized long getVotes(String candidate) {
+        Long votes = counts.get(candidate);
+        return votes == null ? 0 : votes;
+    }
+
+    /** Candidates in the order they first appeared. */
+    public synchronized List<String> getCandidates() {
+        return new ArrayList<>(counts.keySet());
+    }
+}
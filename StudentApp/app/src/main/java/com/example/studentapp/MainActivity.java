@@ -8,33 +8,63 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
 import android.os.Build;
 import android.os.Bundle;
 import android.view.View;
+import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.LinearLayout;
 import android.widget.ListView;
 import android.widget.RadioButton;
 import android.widget.RadioGroup;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.PayloadReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final int REQUEST_PERMISSION = 1;
     private static final int REQUEST_ENABLE_BT = 2;
     private static final UUID MY_UUID = UUID.fromString("8ce255c0-200a-11e0-ac64-0800200c9a66");
+    private static final long OUTBOX_POLL_MS = 500;
+    private static final String PREFS_NAME = "teacher";
+    private static final String KEY_TEACHER_ADDRESS = "address";
+    private static final long RECONNECT_BASE_MS = 500;
+    private static final long RECONNECT_MAX_MS = 15_000;
 
     private BluetoothAdapter bluetoothAdapter;
     private ArrayList<BluetoothDevice> devices = new ArrayList<>();
@@ -44,11 +74,59 @@ public class MainActivity extends AppCompatActivity {
     private EditText nameEditText;
     private RadioGroup candidateRadioGroup;
     private TextView resultsTextView;
-    private List<String> candidates = new ArrayList<>();
+    private LinearLayout liveResultsLayout;
+    private CheckBox kioskCheckBox;
+    private TextView pendingTextView;
+    private Spinner electionSpinner;
+    private ArrayAdapter<String> electionAdapter;
+    // Open elections by id and the one shown; only touched on the UI thread
+    private final Map<Integer, Ballot> ballots = new TreeMap<>();
+    private final List<Integer> electionIds = new ArrayList<>();
+    private int selectedElectionId = -1;
+    // Live results per election, applied on the connection thread
+    private final Map<Integer, LiveTally> liveTallies = new ConcurrentHashMap<>();
+    // Rows of the shown election's live results, and elections subscribed to on this connection;
+    // UI thread only
+    private final Map<String, TextView> resultRows = new HashMap<>();
+    private final Set<Integer> subscribedElections = new HashSet<>();
+    // Announced photo and manifesto hashes per election and candidate; UI thread only
+    private final Map<Integer, Map<Integer, CandidateMedia>> candidateMedia = new HashMap<>();
+    // Blobs asked for on this connection, by hex hash
+    private final Set<String> requestedBlobs = ConcurrentHashMap.newKeySet();
+    private MediaCache mediaCache;
+
+    /** One election's candidate list, their ids and the list version. */
+    private static class Ballot {
+        final String title;
+        final List<Integer> ids;
+        final List<String> names;
+        int version;
+
+        Ballot(String title, int version, List<Integer> ids, List<String> names) {
+            this.title = title;
+            this.ids = ids;
+            this.names = names;
+            this.version = version;
+        }
+    }
+
+    /** Hashes of one candidate's photo and manifesto, either of which may be missing. */
+    private static class CandidateMedia {
+        byte[] photo;
+        byte[] manifesto;
+    }
 
-    private BluetoothDevice selectedDevice = null;
-    private BluetoothSocket socket = null;
-    private boolean isConnected = false;
+    private volatile BluetoothDevice selectedDevice = null;
+    // Last teacher connected to, so the next launch can skip discovery
+    private SharedPreferences preferences;
+    private TeacherConnection connection;
+    // Votes waiting for the teacher's ack; sent and retried on outboxSender
+    private VoteOutbox outbox;
+    private ReceiptBook receipts;
+    private VoteBatcher batcher;
+    // Kiosk mode: votes go out in windowed batches and the screen never shows who voted
+    private volatile boolean kioskMode = false;
+    private final ScheduledExecutorService outboxSender = Executors.newSingleThreadScheduledExecutor();
 
     private final BroadcastReceiver receiver = new BroadcastReceiver() {
         public void onReceive(Context context, Intent intent) {
@@ -78,6 +156,27 @@ public class MainActivity extends AppCompatActivity {
         scanButton = findViewById(R.id.scanButton);
         voteButton = findViewById(R.id.voteButton);
         resultsTextView = findViewById(R.id.resultsTextView);
+        liveResultsLayout = findViewById(R.id.liveResultsLayout);
+        kioskCheckBox = findViewById(R.id.kioskCheckBox);
+        pendingTextView = findViewById(R.id.pendingTextView);
+        electionSpinner = findViewById(R.id.electionSpinner);
+        electionAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item);
+        electionAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        electionSpinner.setAdapter(electionAdapter);
+        electionSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (electionIds.get(position) != selectedElectionId) {
+                    selectedElectionId = electionIds.get(position);
+                    updateCandidateRadioGroup();
+                    updateResultRows();
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
 
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
 
@@ -87,6 +186,36 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
+        try {
+            outbox = new VoteOutbox(new File(getFilesDir(), "vote-outbox"), new SecureRandom());
+            batcher = new VoteBatcher(outbox, VoteBatcher.DEFAULT_BATCH_SIZE, VoteBatcher.DEFAULT_WINDOW);
+            mediaCache = new MediaCache(new File(getCacheDir(), "media"), MediaCache.DEFAULT_MAX_BYTES);
+            receipts = new ReceiptBook(new File(getFilesDir(), "vote-receipts"));
+            for (VoteOutbox.Entry entry : outbox.getEntries()) {
+                receipts.expect(entry);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            Toast.makeText(this, "Failed to load pending votes: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+        outboxSender.scheduleWithFixedDelay(this::flushOutbox, OUTBOX_POLL_MS, OUTBOX_POLL_MS, TimeUnit.MILLISECONDS);
+        connection = new TeacherConnection(this::openTeacherLink, connectionListener,
+                new Backoff(RECONNECT_BASE_MS, RECONNECT_MAX_MS, new SecureRandom()), TeacherConnection.DEFAULT_HEARTBEAT_MS);
+        preferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        String cachedAddress = preferences.getString(KEY_TEACHER_ADDRESS, null);
+        if (cachedAddress != null && BluetoothAdapter.checkBluetoothAddress(cachedAddress)) {
+            // Connect straight to the last teacher; scanning is only needed to find a new one
+            selectedDevice = bluetoothAdapter.getRemoteDevice(cachedAddress);
+            Toast.makeText(this, "Connecting to the last teacher...", Toast.LENGTH_SHORT).show();
+        }
+        connection.start();
+        kioskCheckBox.setOnCheckedChangeListener((button, checked) -> {
+            kioskMode = checked;
+            updatePendingCount();
+        });
+
         // Request necessary permissions
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED ||
@@ -121,11 +250,12 @@ public class MainActivity extends AppCompatActivity {
 
         deviceListView.setOnItemClickListener((parent, view, position, id) -> {
             selectedDevice = devices.get(position);
+            preferences.edit().putString(KEY_TEACHER_ADDRESS, selectedDevice.getAddress()).apply();
             if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
                 return;
             }
             Toast.makeText(MainActivity.this, "Selected: " + selectedDevice.getName(), Toast.LENGTH_SHORT).show();
-            connectToDevice();
+            connection.reconnectNow();
         });
 
         scanButton.setOnClickListener(v -> {
@@ -144,59 +274,227 @@ public class MainActivity extends AppCompatActivity {
         registerReceiver(receiver, filter);
     }
 
-    private void connectToDevice() {
-        new Thread(() -> {
-            try {
-                if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
-                    return;
-                }
-                socket = selectedDevice.createRfcommSocketToServiceRecord(MY_UUID);
-                socket.connect();
-                isConnected = true;
+    /** Opens an RFCOMM socket to the selected teacher. Runs on the connection's supervisor thread. */
+    private TeacherConnection.Link openTeacherLink() throws IOException {
+        BluetoothDevice device = selectedDevice;
+        if (device == null) {
+            return null;
+        }
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
+            throw new IOException("Bluetooth permission not granted");
+        }
+        // Discovery slows connecting down a lot, and we already know where to go
+        if (bluetoothAdapter.isDiscovering()) {
+            bluetoothAdapter.cancelDiscovery();
+        }
+        BluetoothSocket socket = device.createRfcommSocketToServiceRecord(MY_UUID);
+        try {
+            socket.connect();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return new TeacherConnection.Link() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return socket.getInputStream();
+            }
 
-                // Start listening for messages
-                startListening();
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return socket.getOutputStream();
+            }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Failed to connect: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+            @Override
+            public void close() throws IOException {
+                socket.close();
             }
-        }).start();
+        };
     }
 
-    private void startListening() {
-        new Thread(() -> {
-            try {
-                InputStream inputStream = socket.getInputStream();
-                byte[] buffer = new byte[1024];
-                int bytes;
+    private final TeacherConnection.Listener connectionListener = new TeacherConnection.Listener() {
+        @Override
+        public void onConnected() {
+            // Subscriptions belong to the old connection; each ballot that arrives subscribes again
+            runOnUiThread(subscribedElections::clear);
+            // Unfinished downloads resume from the cache when the media index arrives again
+            requestedBlobs.clear();
+            // Anything still unacknowledged goes out on the new connection straight away
+            outbox.resetBackoff();
+            outboxSender.execute(MainActivity.this::flushOutbox);
+        }
 
-                while (isConnected && (bytes = inputStream.read(buffer)) != -1) {
-                    String message = new String(buffer, 0, bytes);
-                    handleMessage(message);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                isConnected = false;
-                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Connection lost: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+        @Override
+        public void onFrame(int type, PayloadReader payload) throws IOException {
+            handleMessage(type, payload);
+        }
+
+        @Override
+        public void onDisconnected(Exception cause) {
+            if (cause != null) {
+                cause.printStackTrace();
             }
-        }).start();
-    }
+            runOnUiThread(() -> Toast.makeText(MainActivity.this, "Connection lost, reconnecting...", Toast.LENGTH_SHORT).show());
+            int missed = receipts.dropAcknowledged();
+            if (missed > 0) {
+                // They were counted; only the proof that they were is lost
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "No receipt received for " + missed
+                        + (missed == 1 ? " vote" : " votes"), Toast.LENGTH_LONG).show());
+            }
+        }
+    };
 
-    private void handleMessage(String message) {
-        if (message.startsWith("CANDIDATES:")) {
-            String[] candidateArray = message.substring(11).split(",");
-            candidates.clear();
-            for (String candidate : candidateArray) {
-                candidates.add(candidate.trim());
+    private void handleMessage(int type, PayloadReader payload) throws IOException {
+        if (type == MessageType.CANDIDATES) {
+            int electionId = payload.readUnsignedShort();
+            String title = payload.readString().trim();
+            int version = payload.readInt();
+            int count = payload.readUnsignedShort();
+            List<Integer> ids = new ArrayList<>(count);
+            List<String> snapshot = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ids.add(payload.readUnsignedShort());
+                snapshot.add(payload.readString().trim());
             }
 
             runOnUiThread(() -> {
-                updateCandidateRadioGroup();
-                Toast.makeText(MainActivity.this, "Connected to teacher's device", Toast.LENGTH_SHORT).show();
+                boolean first = ballots.isEmpty();
+                ballots.put(electionId, new Ballot(title, version, ids, snapshot));
+                if (subscribedElections.add(electionId)) {
+                    subscribeTally(electionId);
+                }
+                updateElections();
+                if (electionId == selectedElectionId) {
+                    updateCandidateRadioGroup();
+                }
+                if (first) {
+                    Toast.makeText(MainActivity.this, "Connected to teacher's device", Toast.LENGTH_SHORT).show();
+                }
             });
-        } else if (message.startsWith("RESULTS:")) {
-            final String results = message.substring(8);
+        } else if (type == MessageType.CANDIDATE_DELTA) {
+            int electionId = payload.readUnsignedShort();
+            int version = payload.readInt();
+            int op = payload.readUnsignedByte();
+            int id = payload.readUnsignedShort();
+            String candidate = payload.readString().trim();
+            runOnUiThread(() -> applyCandidateDelta(electionId, version, op, id, candidate));
+        } else if (type == MessageType.ELECTION_CLOSED) {
+            int electionId = payload.readUnsignedShort();
+            runOnUiThread(() -> {
+                Ballot closed = ballots.remove(electionId);
+                candidateMedia.remove(electionId);
+                if (closed != null) {
+                    updateElections();
+                    Toast.makeText(MainActivity.this, closed.title + " has closed", Toast.LENGTH_SHORT).show();
+                }
+            });
+        } else if (type == MessageType.MEDIA_INDEX) {
+            int electionId = payload.readUnsignedShort();
+            int count = payload.readUnsignedShort();
+            Map<Integer, CandidateMedia> index = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                int candidateId = payload.readUnsignedShort();
+                int kind = payload.readUnsignedByte();
+                byte[] hash = new byte[Messages.HASH_SIZE];
+                payload.readBytes(hash, 0, hash.length);
+                payload.readInt();
+                CandidateMedia media = index.get(candidateId);
+                if (media == null) {
+                    media = new CandidateMedia();
+                    index.put(candidateId, media);
+                }
+                if (kind == MessageType.MEDIA_PHOTO) {
+                    media.photo = hash;
+                } else if (kind == MessageType.MEDIA_MANIFESTO) {
+                    media.manifesto = hash;
+                }
+                fetchMedia(hash);
+            }
+            runOnUiThread(() -> {
+                candidateMedia.put(electionId, index);
+                if (electionId == selectedElectionId) {
+                    updateCandidateMedia();
+                }
+            });
+        } else if (type == MessageType.BLOB_CHUNK) {
+            byte[] hash = new byte[Messages.HASH_SIZE];
+            payload.readBytes(hash, 0, hash.length);
+            int size = payload.readInt();
+            int offset = payload.readInt();
+            int length = payload.readUnsignedShort();
+            byte[] data = new byte[length];
+            payload.readBytes(data, 0, length);
+            if (size == 0) {
+                // The teacher no longer has it; a later media index will say what replaced it
+                return;
+            }
+            try {
+                if (mediaCache.append(hash, size, offset, data, 0, length) != null) {
+                    runOnUiThread(this::updateCandidateMedia);
+                }
+            } catch (IOException e) {
+                // Corrupted download; it starts over when the media index next arrives
+                e.printStackTrace();
+                requestedBlobs.remove(MediaCache.hex(hash));
+            }
+        } else if (type == MessageType.TALLY_SNAPSHOT || type == MessageType.TALLY_DELTA) {
+            int electionId = payload.readUnsignedShort();
+            LiveTally tally = liveTallies.get(electionId);
+            if (tally == null) {
+                tally = new LiveTally();
+                liveTallies.put(electionId, tally);
+            }
+            List<String> changed = tally.apply(type, payload);
+            if (changed == null) {
+                // Missed a delta; pick up from the last version we have
+                subscribeTally(electionId);
+            } else if (!changed.isEmpty()) {
+                boolean snapshot = type == MessageType.TALLY_SNAPSHOT;
+                runOnUiThread(() -> showTallyChanges(electionId, snapshot, changed));
+            }
+        } else if (type == MessageType.VOTE_ACK) {
+            long voteId = payload.readLong();
+            int status = payload.readUnsignedByte();
+            if (status != MessageType.ACK_RETRY) {
+                if (status == MessageType.ACK_ACCEPTED) {
+                    receipts.acknowledge(voteId);
+                } else {
+                    receipts.forget(voteId);
+                }
+                VoteOutbox.Entry entry = outbox.acknowledge(voteId);
+                if (entry != null) {
+                    runOnUiThread(() -> showVoteOutcome(entry, status));
+                }
+            }
+            // ACK_RETRY: the entry stays in the outbox and is resent after its backoff
+        } else if (type == MessageType.VOTE_BATCH_ACK) {
+            int count = payload.readUnsignedShort();
+            List<Long> answered = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long voteId = payload.readLong();
+                int status = payload.readUnsignedByte();
+                if (status != MessageType.ACK_RETRY) {
+                    answered.add(voteId);
+                    if (status == MessageType.ACK_ACCEPTED) {
+                        receipts.acknowledge(voteId);
+                    } else {
+                        receipts.forget(voteId);
+                    }
+                }
+            }
+            outbox.acknowledgeAll(answered);
+            runOnUiThread(this::updatePendingCount);
+            // The window has room again
+            outboxSender.execute(this::flushOutbox);
+        } else if (type == MessageType.VOTE_RECEIPT) {
+            ReceiptBook.Receipt receipt = receipts.accept(payload);
+            if (receipt != null && !kioskMode) {
+                // In kiosk mode the next student is already at the device
+                runOnUiThread(() -> Toast.makeText(MainActivity.this,
+                        "Vote counted in batch " + receipt.batch, Toast.LENGTH_SHORT).show());
+            }
+        } else if (type == MessageType.RESULTS) {
+            final String results = payload.readString();
             runOnUiThread(() -> {
                 resultsTextView.setText(results);
                 Toast.makeText(MainActivity.this, "Results updated", Toast.LENGTH_SHORT).show();
@@ -204,53 +502,286 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void applyCandidateDelta(int electionId, int version, int op, int id, String candidate) {
+        Ballot ballot = ballots.get(electionId);
+        if (ballot == null || version <= ballot.version) {
+            // No snapshot yet (it is on its way), or this change is already part of ours
+            return;
+        }
+        if (version != ballot.version + 1) {
+            // Missed a change; ask for the whole list again
+            sendFrame(Messages.syncCandidates(electionId, ballot.version));
+            return;
+        }
+        ballot.version = version;
+        boolean shown = electionId == selectedElectionId;
+        if (op == MessageType.DELTA_ADD) {
+            ballot.ids.add(id);
+            ballot.names.add(candidate);
+            if (shown) {
+                candidateRadioGroup.addView(createCandidateButton(id, candidate));
+            }
+        } else if (op == MessageType.DELTA_REMOVE) {
+            int index = ballot.ids.indexOf(id);
+            if (index >= 0) {
+                ballot.ids.remove(index);
+                ballot.names.remove(index);
+                if (shown) {
+                    candidateRadioGroup.removeViewAt(index);
+                }
+            }
+        }
+    }
+
+    /** Asks for a blob that is not cached yet, resuming a partial download, once per connection. */
+    private void fetchMedia(byte[] hash) {
+        if (mediaCache.get(hash) == null && requestedBlobs.add(MediaCache.hex(hash))) {
+            sendFrame(Messages.fetchBlob(hash, mediaCache.partialLength(hash)));
+        }
+    }
+
+    /** Shows whatever photos and manifestos have arrived on the shown election's candidates. */
+    private void updateCandidateMedia() {
+        for (int i = 0; i < candidateRadioGroup.getChildCount(); i++) {
+            showCandidateMedia((RadioButton) candidateRadioGroup.getChildAt(i));
+        }
+    }
+
+    private void showCandidateMedia(RadioButton button) {
+        Map<Integer, CandidateMedia> index = candidateMedia.get(selectedElectionId);
+        CandidateMedia media = index == null ? null : index.get((Integer) button.getTag());
+        if (media == null) {
+            return;
+        }
+        File photo = media.photo == null ? null : mediaCache.get(media.photo);
+        if (photo != null) {
+            BitmapDrawable drawable = loadPhoto(photo);
+            if (drawable != null) {
+                button.setCompoundDrawablesWithIntrinsicBounds(drawable, null, null, null);
+                button.setCompoundDrawablePadding(16);
+            }
+        }
+        File manifesto = media.manifesto == null ? null : mediaCache.get(media.manifesto);
+        if (manifesto != null) {
+            button.setOnLongClickListener(v -> {
+                showManifesto(button.getText().toString(), manifesto);
+                return true;
+            });
+        }
+    }
+
+    /** Decodes a photo at roughly the size it is shown at, so large pictures do not exhaust memory. */
+    private BitmapDrawable loadPhoto(File file) {
+        int target = (int) (48 * getResources().getDisplayMetrics().density);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= target
+                && options.outHeight / (options.inSampleSize * 2) >= target) {
+            options.inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            return null;
+        }
+        return new BitmapDrawable(getResources(),
+                Bitmap.createScaledBitmap(bitmap, target, target * bitmap.getHeight() / bitmap.getWidth(), true));
+    }
+
+    private void showManifesto(String candidate, File file) {
+        try {
+            String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            new AlertDialog.Builder(this)
+                    .setTitle(candidate)
+                    .setMessage(text)
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show();
+        } catch (IOException e) {
+            e.printStackTrace();
+            Toast.makeText(this, "Failed to open manifesto: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void subscribeTally(int electionId) {
+        LiveTally tally = liveTallies.get(electionId);
+        sendFrame(tally == null ? Messages.subscribeTally(electionId, 0, 0)
+                : Messages.subscribeTally(electionId, tally.getStream(), tally.getVersion()));
+    }
+
+    /** Updates only the rows whose counts changed, unless a snapshot replaced the whole list. */
+    private void showTallyChanges(int electionId, boolean snapshot, List<String> changed) {
+        if (electionId != selectedElectionId) {
+            return;
+        }
+        if (snapshot) {
+            updateResultRows();
+            return;
+        }
+        LiveTally tally = liveTallies.get(electionId);
+        for (String candidate : changed) {
+            TextView row = resultRows.get(candidate);
+            if (row == null) {
+                row = new TextView(this);
+                resultRows.put(candidate, row);
+                liveResultsLayout.addView(row);
+            }
+            row.setText(candidate + ": " + tally.getVotes(candidate) + " votes");
+        }
+    }
+
+    /** Rebuilds the live results for the shown election. */
+    private void updateResultRows() {
+        liveResultsLayout.removeAllViews();
+        resultRows.clear();
+        LiveTally tally = liveTallies.get(selectedElectionId);
+        if (tally == null) {
+            return;
+        }
+        for (String candidate : tally.getCandidates()) {
+            TextView row = new TextView(this);
+            row.setText(candidate + ": " + tally.getVotes(candidate) + " votes");
+            resultRows.put(candidate, row);
+            liveResultsLayout.addView(row);
+        }
+    }
+
+    /** Lists the open elections, keeping the current one selected if it is still open. */
+    private void updateElections() {
+        electionIds.clear();
+        electionAdapter.clear();
+        int selected = 0;
+        for (Map.Entry<Integer, Ballot> election : ballots.entrySet()) {
+            if (election.getKey() == selectedElectionId) {
+                selected = electionIds.size();
+            }
+            electionIds.add(election.getKey());
+            electionAdapter.add(election.getValue().title);
+        }
+        electionSpinner.setVisibility(ballots.size() > 1 ? View.VISIBLE : View.GONE);
+        int previous = selectedElectionId;
+        selectedElectionId = electionIds.isEmpty() ? -1 : electionIds.get(selected);
+        electionSpinner.setSelection(selected);
+        if (selectedElectionId != previous) {
+            updateCandidateRadioGroup();
+            updateResultRows();
+        }
+    }
+
     private void updateCandidateRadioGroup() {
         candidateRadioGroup.removeAllViews();
-        for (String candidate : candidates) {
-            RadioButton radioButton = new RadioButton(this);
-            radioButton.setText(candidate);
-            radioButton.setPadding(0, 8, 0, 8);
-            candidateRadioGroup.addView(radioButton);
+        Ballot ballot = ballots.get(selectedElectionId);
+        if (ballot == null) {
+            return;
+        }
+        for (int i = 0; i < ballot.names.size(); i++) {
+            candidateRadioGroup.addView(createCandidateButton(ballot.ids.get(i), ballot.names.get(i)));
         }
     }
 
+    private RadioButton createCandidateButton(int id, String candidate) {
+        RadioButton radioButton = new RadioButton(this);
+        radioButton.setText(candidate);
+        // The teacher's candidate id travels with the vote instead of the name
+        radioButton.setTag(id);
+        radioButton.setPadding(0, 8, 0, 8);
+        showCandidateMedia(radioButton);
+        return radioButton;
+    }
+
+    private void sendFrame(byte[] frame) {
+        outboxSender.execute(() -> {
+            try {
+                connection.send(frame);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
     private void sendVote() {
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.BLUETOOTH_CONNECT}, REQUEST_PERMISSION);
             return;
         }
 
-        new Thread(() -> {
-            try {
-                String name = nameEditText.getText().toString().trim();
-                int selectedId = candidateRadioGroup.getCheckedRadioButtonId();
-                RadioButton selectedButton = findViewById(selectedId);
-                String candidate = selectedButton.getText().toString();
-
-                String voteData = "VOTE:" + name + "," + candidate;
+        String name = nameEditText.getText().toString().trim();
+        RadioButton selectedButton = findViewById(candidateRadioGroup.getCheckedRadioButtonId());
+        int candidateId = (Integer) selectedButton.getTag();
+        String candidate = selectedButton.getText().toString();
+        int electionId = selectedElectionId;
 
-                if (socket == null || !socket.isConnected()) {
-                    socket = selectedDevice.createRfcommSocketToServiceRecord(MY_UUID);
-                    socket.connect();
-                }
+        outboxSender.execute(() -> {
+            try {
+                // Saved before anything is sent, so the vote survives a crash or a lost connection
+                receipts.expect(outbox.add(name, electionId, candidateId, candidate));
+            } catch (IOException e) {
+                e.printStackTrace();
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Failed to save vote: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+                return;
+            }
+            runOnUiThread(() -> {
+                Toast.makeText(MainActivity.this, kioskMode ? "Vote saved. Next student, please."
+                        : "Vote queued, waiting for the teacher...", Toast.LENGTH_SHORT).show();
+                // Clear input fields so the next student can vote
+                nameEditText.setText("");
+                candidateRadioGroup.clearCheck();
+                updatePendingCount();
+            });
+            flushOutbox();
+        });
+    }
 
-                OutputStream outputStream = socket.getOutputStream();
-                outputStream.write(voteData.getBytes());
-                outputStream.flush();
+    /** Sends every vote whose retry is due. Runs on outboxSender. */
+    private void flushOutbox() {
+        if (!connection.isConnected()) {
+            // Nothing is taken, so no retry is used up while the connection comes back
+            return;
+        }
+        List<byte[]> frames = new ArrayList<>();
+        if (kioskMode) {
+            frames.addAll(batcher.nextFrames(System.currentTimeMillis()));
+        } else {
+            for (VoteOutbox.Entry entry : outbox.takeDue(System.currentTimeMillis())) {
+                frames.add(Messages.voteRequest(entry.voteId, entry.student, entry.electionId, entry.candidateId));
+            }
+        }
+        if (frames.isEmpty()) {
+            return;
+        }
+        try {
+            for (byte[] frame : frames) {
+                connection.send(frame);
+            }
+        } catch (IOException e) {
+            // Each entry has already been given its next, longer, retry time; TeacherConnection reconnects
+            e.printStackTrace();
+        }
+    }
 
-                runOnUiThread(() -> {
-                    Toast.makeText(MainActivity.this, "Vote Sent Successfully!", Toast.LENGTH_SHORT).show();
-                    // Clear input fields after successful vote
-                    nameEditText.setText("");
-                    candidateRadioGroup.clearCheck();
-                });
+    private void updatePendingCount() {
+        int pending = outbox.size();
+        pendingTextView.setText("Votes waiting for the teacher: " + pending);
+        pendingTextView.setVisibility(kioskMode ? View.VISIBLE : View.GONE);
+    }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                final String errorMessage = e.getMessage() != null ? e.getMessage() : "Failed to Send Vote!";
-                runOnUiThread(() -> Toast.makeText(MainActivity.this, errorMessage, Toast.LENGTH_SHORT).show());
-            }
-        }).start();
+    private void showVoteOutcome(VoteOutbox.Entry entry, int status) {
+        String message;
+        if (status == MessageType.ACK_ACCEPTED) {
+            message = "Vote recorded for " + entry.student;
+        } else if (status == MessageType.ACK_DUPLICATE) {
+            message = entry.student + " has already voted";
+        } else if (status == MessageType.ACK_ELECTION_CLOSED) {
+            message = "Voting has closed";
+        } else {
+            message = entry.candidateName + " is no longer on the ballot";
+        }
+        if (!kioskMode) {
+            // On a shared device the next student should not see who voted for whom
+            Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
+        }
+        updatePendingCount();
     }
 
     private boolean validateInput() {
@@ -304,15 +835,11 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        isConnected = false;
-        unregisterReceiver(receiver);
-        if (socket != null) {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        outboxSender.shutdownNow();
+        if (connection != null) {
+            connection.stop();
         }
+        unregisterReceiver(receiver);
     }
 
     @Override
@@ -340,7 +867,11 @@ public class MainActivity extends AppCompatActivity {
                 }
             }
             if (allPermissionsGranted) {
-                scanDevices();
+                if (selectedDevice == null) {
+                    scanDevices();
+                } else {
+                    connection.reconnectNow();
+                }
             } else {
                 Toast.makeText(this, "All permissions are required to use this app", Toast.LENGTH_SHORT).show();
                 finish();
@@ -0,0 +1,144 @@
+package com.example.studentapp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Candidate photos and manifestos on disk, one file per SHA-256, so a blob is downloaded once
+ * however many elections or reconnects show it. Downloads arrive in chunks into a {@code .part}
+ * file and can resume from {@link #partialLength} after the connection or the app restarts; a
+ * finished blob is only kept if its hash matches. Least recently used blobs are deleted once
+ * the cache holds more than {@code maxBytes}.
+ *
+ * <p>Plain Java so it can be tested on the JVM.
+ */
+public class MediaCache {
+
+    public static final long DEFAULT_MAX_BYTES = 20 * 1024 * 1024;
+    private static final String PART_SUFFIX = ".part";
+
+    private final File directory;
+    private final long maxBytes;
+    // Finished blobs by hex hash, least recently used first; guarded by this
+    private final LinkedHashMap<String, File> blobs = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public MediaCache(File directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File[] files = directory.listFiles();
+        List<File> finished = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().endsWith(PART_SUFFIX)) {
+                    finished.add(file);
+                }
+            }
+        }
+        // Modification times are touched on use, so they carry the order across restarts
+        finished.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : finished) {
+            blobs.put(file.getName(), file);
+            totalBytes += file.length();
+        }
+    }
+
+    /** Returns the cached blob and marks it as recently used, or null if it is not cached. */
+    public synchronized File get(byte[] hash) {
+        File file = blobs.get(hex(hash));
+        if (file != null) {
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return file;
+    }
+
+    /** Bytes of this blob already downloaded; where to resume. */
+    public synchronized int partialLength(byte[] hash) {
+        return (int) partFile(hash).length();
+    }
+
+    /**
+     * Appends one chunk. Chunks that do not continue the partial download, e.g. ones still in
+     * flight from before a resume, are ignored.
+     *
+     * @return the finished blob once the last chunk arrived, otherwise null
+     * @throws IOException if the finished blob does not match its hash; the download is discarded
+     */
+    public synchronized File append(byte[] hash, int size, int offset, byte[] data, int dataOffset, int length)
+            throws IOException {
+        File part = partFile(hash);
+        if (blobs.containsKey(hex(hash)) || offset != part.length() || offset + length > size) {
+            return null;
+        }
+        try (FileOutputStream out = new FileOutputStream(part, true)) {
+            out.write(data, dataOffset, length);
+        }
+        if (offset + length < size) {
+            return null;
+        }
+        byte[] content = Files.readAllBytes(part.toPath());
+        if (!Arrays.equals(sha256(content), hash)) {
+            part.delete();
+            throw new IOException("Media " + hex(hash) + " does not match its hash");
+        }
+        File file = new File(directory, hex(hash));
+        if (!part.renameTo(file)) {
+            throw new IOException("Could not finish " + file);
+        }
+        blobs.put(file.getName(), file);
+        totalBytes += file.length();
+        evict(file);
+        return file;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /** Deletes least recently used blobs, but never {@code keep}, until the cache fits. */
+    private void evict(File keep) {
+        for (Iterator<Map.Entry<String, File>> it = blobs.entrySet().iterator();
+             it.hasNext() && totalBytes > maxBytes; ) {
+            File file = it.next().getValue();
+            if (file.equals(keep)) {
+                continue;
+            }
+            totalBytes -= file.length();
+            file.delete();
+            it.remove();
+        }
+    }
+
+    private File partFile(byte[] hash) {
+        return new File(directory, hex(hash) + PART_SUFFIX);
+    }
+
+    static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
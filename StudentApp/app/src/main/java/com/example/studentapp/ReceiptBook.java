@@ -0,0 +1,169 @@
+package com.example.studentapp;
+
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.PayloadReader;
+import com.example.votingcore.protocol.ProtocolException;
+import com.example.votingcore.protocol.VoteReceipts;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Proof that this device's votes were counted. Each vote cast is registered with
+ * {@link #expect}; the teacher's {@code VOTE_RECEIPT} for it is hashed up from what was cast, and
+ * the batch and chain value it leads to are appended to a file that outlives the app. A receipt
+ * for anything but the vote cast leads to a chain value that is not in the teacher's published
+ * audit, so comparing the two is the check. Nothing in the file says who voted or for whom.
+ *
+ * <p>The teacher sends a receipt on the connection that carried the vote's acceptance, and a vote
+ * that has been accepted leaves the outbox and is never sent again. So once that connection is
+ * gone, {@link #dropAcknowledged} gives up on the accepted votes still without a receipt.
+ *
+ * <p>Plain Java so it can be tested on the JVM.
+ */
+public class ReceiptBook {
+
+    /** A checked receipt: the vote was counted in {@code batch}, which chains to {@code chain}. */
+    public static class Receipt {
+        public final long voteId;
+        public final int batch;
+        public final String chain;
+
+        Receipt(long voteId, int batch, String chain) {
+            this.voteId = voteId;
+            this.batch = batch;
+            this.chain = chain;
+        }
+    }
+
+    private final File file;
+    // Votes cast that have no receipt yet
+    private final Map<Long, VoteOutbox.Entry> expected = new HashMap<>();
+    // Expected votes the teacher has accepted; their receipt comes on this connection or not at all
+    private final Set<Long> acknowledged = new HashSet<>();
+    private final Map<Long, Receipt> receipts = new LinkedHashMap<>();
+
+    /** Loads the receipts kept by earlier runs. */
+    public ReceiptBook(File file) throws IOException {
+        this.file = file;
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields.length == 3) {
+                    long voteId = Long.parseLong(fields[0]);
+                    receipts.put(voteId, new Receipt(voteId, Integer.parseInt(fields[1]), fields[2]));
+                }
+            }
+        }
+    }
+
+    /** Waits for a receipt for {@code entry}. Call when the vote is cast, or for every outbox entry on start. */
+    public synchronized void expect(VoteOutbox.Entry entry) {
+        if (!receipts.containsKey(entry.voteId)) {
+            expected.put(entry.voteId, entry);
+        }
+    }
+
+    /** The vote was not accepted, so no receipt will come. */
+    public synchronized void forget(long voteId) {
+        expected.remove(voteId);
+        acknowledged.remove(voteId);
+    }
+
+    /** The teacher accepted the vote, so its receipt should follow on the same connection. */
+    public synchronized void acknowledge(long voteId) {
+        if (expected.containsKey(voteId)) {
+            acknowledged.add(voteId);
+        }
+    }
+
+    /**
+     * Stops waiting for the receipts of accepted votes; call when the connection drops. Votes not
+     * accepted yet are sent again, and the teacher answers those with their receipt.
+     *
+     * @return how many accepted votes will never get a receipt
+     */
+    public synchronized int dropAcknowledged() {
+        int dropped = acknowledged.size();
+        for (long voteId : acknowledged) {
+            expected.remove(voteId);
+        }
+        acknowledged.clear();
+        return dropped;
+    }
+
+    /**
+     * Checks a {@code VOTE_RECEIPT} payload and keeps it.
+     *
+     * @return the receipt, or null if it is for a vote this device is not waiting on or its proof
+     *     does not fit the size of its batch
+     */
+    public synchronized Receipt accept(PayloadReader payload) throws IOException {
+        long voteId = payload.readLong();
+        int batch = payload.readInt();
+        int index = payload.readInt();
+        int count = payload.readInt();
+        byte[] previous = readHash(payload);
+        int depth = payload.readUnsignedByte();
+        List<byte[]> proof = new ArrayList<>(depth);
+        for (int i = 0; i < depth; i++) {
+            proof.add(readHash(payload));
+        }
+        VoteOutbox.Entry entry = expected.get(voteId);
+        if (entry == null) {
+            return null;
+        }
+        byte[] root = VoteReceipts.rootFromProof(VoteReceipts.leaf(entry.electionId, entry.candidateId, entry.student),
+                index, count, proof);
+        if (root == null) {
+            return null;
+        }
+        Receipt receipt = new Receipt(voteId, batch, MediaCache.hex(VoteReceipts.chain(previous, batch, root)));
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            out.write(voteId + " " + batch + " " + receipt.chain + "\n");
+        }
+        expected.remove(voteId);
+        acknowledged.remove(voteId);
+        receipts.put(voteId, receipt);
+        return receipt;
+    }
+
+    /** Returns the checked receipt for a vote, or null. */
+    public synchronized Receipt get(long voteId) {
+        return receipts.get(voteId);
+    }
+
+    public synchronized int size() {
+        return receipts.size();
+    }
+
+    /** Votes cast that are still waiting for a receipt. */
+    public synchronized int getExpectedCount() {
+        return expected.size();
+    }
+
+    private static byte[] readHash(PayloadReader payload) throws ProtocolException {
+        byte[] hash = new byte[Messages.HASH_SIZE];
+        payload.readBytes(hash, 0, hash.length);
+        return hash;
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.studentapp;
+
+import com.example.votingcore.protocol.FrameDecoder;
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.PayloadReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One long-lived session with the teacher. A supervisor thread opens the link, reads frames until
+ * it drops and then reconnects after a jittered {@link Backoff}, so a class of students does not
+ * all reconnect at the same moment after the teacher's app restarts. While connected it sends a
+ * {@code PING} every heartbeat and closes the link if nothing has arrived for
+ * {@link #MISSED_HEARTBEATS} heartbeats, which catches links that died without an error.
+ *
+ * <p>Plain Java so it can be tested on the JVM; MainActivity supplies an RFCOMM {@link Connector}.
+ */
+public class TeacherConnection {
+
+    public static final long DEFAULT_HEARTBEAT_MS = 5000;
+    public static final int MISSED_HEARTBEATS = 3;
+
+    /** An open byte stream to the teacher. */
+    public interface Link extends Closeable {
+        InputStream getInputStream() throws IOException;
+
+        OutputStream getOutputStream() throws IOException;
+    }
+
+    public interface Connector {
+        /** Connects to the current teacher, or returns null if none is known yet. Blocks. */
+        Link open() throws IOException;
+    }
+
+    /** Callbacks run on the supervisor thread. */
+    public interface Listener {
+        void onConnected();
+
+        void onFrame(int type, PayloadReader payload) throws IOException;
+
+        /** {@code cause} is null when the teacher closed the connection. */
+        void onDisconnected(Exception cause);
+    }
+
+    private final Connector connector;
+    private final Listener listener;
+    private final Backoff backoff;
+    private final long heartbeatMillis;
+    private Thread supervisor;
+    private Thread heartbeat;
+    // Guarded by this
+    private boolean running;
+    private boolean wakeUp;
+    private Link link;
+    private OutputStream output;
+    private volatile long lastReceivedNanos;
+
+    public TeacherConnection(Connector connector, Listener listener, Backoff backoff, long heartbeatMillis) {
+        this.connector = connector;
+        this.listener = listener;
+        this.backoff = backoff;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        supervisor = new Thread(this::supervise, "teacher-connection");
+        supervisor.setDaemon(true);
+        supervisor.start();
+        heartbeat = new Thread(this::sendHeartbeats, "teacher-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+    }
+
+    /** Closes the link and stops reconnecting. */
+    public void stop() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        closeLink();
+        if (heartbeat != null) {
+            heartbeat.interrupt();
+        }
+    }
+
+    /**
+     * Drops the current link, if any, and connects again without waiting out the backoff, e.g.
+     * after the user picked a different teacher.
+     */
+    public void reconnectNow() {
+        Link current;
+        synchronized (this) {
+            wakeUp = true;
+            notifyAll();
+            // Only the link open now; the supervisor may connect again before we get to close it
+            current = detachLink();
+        }
+        close(current);
+    }
+
+    public synchronized boolean isConnected() {
+        return link != null;
+    }
+
+    /** Writes one frame. Throws if not connected; the caller keeps the data and tries again later. */
+    public void send(byte[] frame) throws IOException {
+        OutputStream out;
+        synchronized (this) {
+            out = output;
+        }
+        if (out == null) {
+            throw new IOException("Not connected to the teacher");
+        }
+        synchronized (out) {
+            out.write(frame);
+            out.flush();
+        }
+    }
+
+    private void supervise() {
+        int failures = 0;
+        while (isRunning()) {
+            Link opened;
+            try {
+                opened = connector.open();
+            } catch (IOException e) {
+                e.printStackTrace();
+                pause(backoff.delayMillis(failures++));
+                continue;
+            }
+            if (opened == null) {
+                // No teacher known yet; wait for reconnectNow
+                pause(Long.MAX_VALUE);
+                continue;
+            }
+            failures = 0;
+            Exception cause = session(opened);
+            if (isRunning()) {
+                listener.onDisconnected(cause);
+                // Everyone loses the teacher at once when it goes away; come back spread out
+                pause(backoff.delayMillis(0));
+            }
+        }
+    }
+
+    /** Runs one connection until it drops. Returns why, or null for a clean close. */
+    private Exception session(Link opened) {
+        try {
+            InputStream in = opened.getInputStream();
+            OutputStream out = opened.getOutputStream();
+            // Before the link is published, or the heartbeat would see a stale time and drop it
+            lastReceivedNanos = System.nanoTime();
+            synchronized (this) {
+                if (!running) {
+                    opened.close();
+                    return null;
+                }
+                link = opened;
+                output = out;
+            }
+            listener.onConnected();
+
+            FrameDecoder decoder = new FrameDecoder();
+            PayloadReader payload = new PayloadReader();
+            FrameDecoder.Listener frames = (type, buffer, offset, length) -> {
+                lastReceivedNanos = System.nanoTime();
+                if (type != MessageType.PONG) {
+                    listener.onFrame(type, payload.reset(buffer, offset, length));
+                }
+            };
+            while (decoder.readFrom(in, frames) != -1) {
+                // Frames are dispatched as they complete
+            }
+            return null;
+        } catch (Exception e) {
+            return e;
+        } finally {
+            closeLink();
+            try {
+                opened.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void sendHeartbeats() {
+        byte[] ping = Messages.ping();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis * MISSED_HEARTBEATS);
+        while (isRunning()) {
+            try {
+                Thread.sleep(heartbeatMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!isConnected()) {
+                continue;
+            }
+            if (System.nanoTime() - lastReceivedNanos > timeoutNanos) {
+                // Closing unblocks the supervisor's read, which then reconnects
+                closeLink();
+                continue;
+            }
+            try {
+                send(ping);
+            } catch (IOException e) {
+                closeLink();
+            }
+        }
+    }
+
+    private void closeLink() {
+        Link current;
+        synchronized (this) {
+            current = detachLink();
+        }
+        close(current);
+    }
+
+    private synchronized Link detachLink() {
+        Link current = link;
+        link = null;
+        output = null;
+        return current;
+    }
+
+    private static void close(Link current) {
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized boolean isRunning() {
+        return running;
+    }
+
+    /** Sleeps up to {@code millis}, returning early on {@link #reconnectNow} or {@link #stop}. */
+    private synchronized void pause(long millis) {
+        long deadline = System.currentTimeMillis() + Math.min(millis, Long.MAX_VALUE / 2);
+        while (running && !wakeUp) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        wakeUp = false;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.studentapp;
+
+import com.example.votingcore.protocol.Frames;
+import com.example.votingcore.protocol.Messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kiosk mode sender: packs due {@link VoteOutbox} entries into {@code VOTE_BATCH} frames and
+ * keeps at most {@code window} votes unacknowledged, so one device passed around the class keeps
+ * several batches in flight on a single connection without flooding the teacher.
+ *
+ * <p>Plain Java so it can be tested on the JVM.
+ */
+public class VoteBatcher {
+
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    public static final int DEFAULT_WINDOW = 128;
+
+    private final VoteOutbox outbox;
+    private final int batchSize;
+    private final int window;
+
+    public VoteBatcher(VoteOutbox outbox, int batchSize, int window) {
+        this.outbox = outbox;
+        this.batchSize = batchSize;
+        this.window = window;
+    }
+
+    /** Frames to send now; empty if nothing is due or the window is full. */
+    public List<byte[]> nextFrames(long nowMillis) {
+        int room = window - outbox.inFlightCount(nowMillis);
+        List<byte[]> frames = new ArrayList<>();
+        if (room <= 0) {
+            return frames;
+        }
+        List<VoteOutbox.Entry> due = outbox.takeDue(nowMillis, room);
+        int start = 0;
+        int payload = 2;
+        for (int i = 0; i < due.size(); i++) {
+            // u64 id + u16 length + UTF-8 (at most 3 bytes per char) + u16 election + u16 candidate
+            int size = 14 + due.get(i).student.length() * 3;
+            if (i - start == batchSize || payload + size > Frames.MAX_PAYLOAD_SIZE) {
+                frames.add(encode(due.subList(start, i)));
+                start = i;
+                payload = 2;
+            }
+            payload += size;
+        }
+        if (start < due.size()) {
+            frames.add(encode(due.subList(start, due.size())));
+        }
+        return frames;
+    }
+
+    private static byte[] encode(List<VoteOutbox.Entry> batch) {
+        long[] voteIds = new long[batch.size()];
+        String[] students = new String[batch.size()];
+        int[] electionIds = new int[batch.size()];
+        int[] candidateIds = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            VoteOutbox.Entry entry = batch.get(i);
+            voteIds[i] = entry.voteId;
+            students[i] = entry.student;
+            electionIds[i] = entry.electionId;
+            candidateIds[i] = entry.candidateId;
+        }
+        return Messages.voteBatch(voteIds, students, electionIds, candidateIds);
+    }
+}
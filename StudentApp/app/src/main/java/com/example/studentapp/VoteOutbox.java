@@ -0,0 +1,194 @@
+package com.example.studentapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Votes that have been cast on this device but not yet acknowledged by the teacher. Entries are
+ * saved to a file on every change, so a vote survives the app being killed, and are resent with
+ * jittered exponential backoff until a final {@code VOTE_ACK} arrives.
+ *
+ * <p>Plain Java so it can be tested on the JVM.
+ */
+public class VoteOutbox {
+
+    static final long BASE_BACKOFF_MS = 1000;
+    static final long MAX_BACKOFF_MS = 30_000;
+    // 2 added the election id; version 1 files load into election 0
+    private static final int FORMAT_VERSION = 2;
+
+    public static class Entry {
+        public final long voteId;
+        public final String student;
+        public final int electionId;
+        public final int candidateId;
+        public final String candidateName;
+        int attempts;
+        long nextAttemptMillis;
+
+        Entry(long voteId, String student, int electionId, int candidateId, String candidateName) {
+            this.voteId = voteId;
+            this.student = student;
+            this.electionId = electionId;
+            this.candidateId = candidateId;
+            this.candidateName = candidateName;
+        }
+    }
+
+    private final File file;
+    private final Random random;
+    private final Backoff backoff;
+    private final Map<Long, Entry> entries = new LinkedHashMap<>();
+
+    /** Loads any votes left over from a previous run; they are due immediately. */
+    public VoteOutbox(File file, Random random) throws IOException {
+        this.file = file;
+        this.random = random;
+        this.backoff = new Backoff(BASE_BACKOFF_MS, MAX_BACKOFF_MS, random);
+        if (file.exists()) {
+            load();
+        }
+    }
+
+    /** Adds a vote with a fresh id and saves it before returning. */
+    public synchronized Entry add(String student, int electionId, int candidateId, String candidateName)
+            throws IOException {
+        long voteId;
+        do {
+            voteId = random.nextLong();
+        } while (entries.containsKey(voteId));
+        Entry entry = new Entry(voteId, student, electionId, candidateId, candidateName);
+        entries.put(voteId, entry);
+        save();
+        return entry;
+    }
+
+    /** Returns the entries due at {@code nowMillis} and schedules each one's next attempt. */
+    public List<Entry> takeDue(long nowMillis) {
+        return takeDue(nowMillis, Integer.MAX_VALUE);
+    }
+
+    /** Like {@link #takeDue(long)}, oldest first, but returns at most {@code max} entries. */
+    public synchronized List<Entry> takeDue(long nowMillis, int max) {
+        List<Entry> due = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (due.size() >= max) {
+                break;
+            }
+            if (entry.nextAttemptMillis <= nowMillis) {
+                entry.nextAttemptMillis = nowMillis + backoffMillis(entry.attempts);
+                entry.attempts++;
+                due.add(entry);
+            }
+        }
+        return due;
+    }
+
+    /** Removes a vote after a final answer. Returns null if it was not (or no longer) pending. */
+    public synchronized Entry acknowledge(long voteId) throws IOException {
+        Entry entry = entries.remove(voteId);
+        if (entry != null) {
+            save();
+        }
+        return entry;
+    }
+
+    /** Removes several votes with one save. Returns how many were still pending. */
+    public synchronized int acknowledgeAll(List<Long> voteIds) throws IOException {
+        int removed = 0;
+        for (long voteId : voteIds) {
+            if (entries.remove(voteId) != null) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            save();
+        }
+        return removed;
+    }
+
+    /** Entries that have been sent and are still waiting for an answer before their retry is due. */
+    public synchronized int inFlightCount(long nowMillis) {
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.attempts > 0 && entry.nextAttemptMillis > nowMillis) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Makes every entry due now, e.g. after reconnecting. */
+    public synchronized void resetBackoff() {
+        for (Entry entry : entries.values()) {
+            entry.attempts = 0;
+            entry.nextAttemptMillis = 0;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Every pending vote, oldest first. */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    long backoffMillis(int attempts) {
+        return backoff.delayMillis(attempts);
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION && version != 1) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long voteId = in.readLong();
+                String student = in.readUTF();
+                int electionId = version == 1 ? 0 : in.readUnsignedShort();
+                Entry entry = new Entry(voteId, student, electionId, in.readInt(), in.readUTF());
+                entries.put(entry.voteId, entry);
+            }
+        } catch (EOFException e) {
+            // Truncated by a crash mid-save; keep what was read
+        }
+    }
+
+    /** Writes a temporary file and renames it over the old one, so a crash never leaves half a file. */
+    private void save() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                out.writeLong(entry.voteId);
+                out.writeUTF(entry.student);
+                out.writeShort(entry.electionId);
+                out.writeInt(entry.candidateId);
+                out.writeUTF(entry.candidateName);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+}
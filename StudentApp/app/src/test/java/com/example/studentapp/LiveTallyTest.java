@@ -0,0 +1,58 @@
+package com.example.studentapp;
+
+import com.example.votingcore.protocol.FrameDecoder;
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.PayloadReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LiveTallyTest {
+
+    private final LiveTally tally = new LiveTally();
+
+    @Test
+    public void appliesDeltasInOrderAndAsksAgainAfterAGap() throws Exception {
+        assertEquals(Arrays.asList("Ravi", "Meera"), apply(MessageType.TALLY_SNAPSHOT, 9, 4,
+                Arrays.asList("Ravi", "Meera"), Arrays.asList(3L, 1L)));
+        assertEquals(Collections.singletonList("Meera"), apply(MessageType.TALLY_DELTA, 9, 5,
+                Collections.singletonList("Meera"), Collections.singletonList(2L)));
+        assertEquals(2, tally.getVotes("Meera"));
+        assertEquals(3, tally.getVotes("Ravi"));
+
+        // Redelivered after a resume: already applied
+        assertTrue(apply(MessageType.TALLY_DELTA, 9, 5, Collections.singletonList("Meera"),
+                Collections.singletonList(2L)).isEmpty());
+        // Version 6 went missing
+        assertNull(apply(MessageType.TALLY_DELTA, 9, 7, Collections.singletonList("Ravi"),
+                Collections.singletonList(5L)));
+        assertEquals(5, tally.getVersion());
+        // The teacher restarted
+        assertNull(apply(MessageType.TALLY_DELTA, 10, 6, Collections.singletonList("Ravi"),
+                Collections.singletonList(5L)));
+
+        apply(MessageType.TALLY_SNAPSHOT, 10, 2, Collections.singletonList("Kiran"), Collections.singletonList(1L));
+        assertEquals(10, tally.getStream());
+        assertEquals(Collections.singletonList("Kiran"), tally.getCandidates());
+    }
+
+    private List<String> apply(int type, int stream, int version, List<String> candidates, List<Long> votes)
+            throws Exception {
+        byte[] frame = Messages.tally(type, 0, stream, version, candidates, votes);
+        AtomicReference<List<String>> changed = new AtomicReference<>();
+        new FrameDecoder().readFrom(new ByteArrayInputStream(frame), (frameType, buffer, offset, length) -> {
+            PayloadReader payload = new PayloadReader().reset(buffer, offset, length);
+            assertEquals(0, payload.readUnsignedShort());
+            changed.set(tally.apply(frameType, payload));
+        });
+        return changed.get();
+    }
+}
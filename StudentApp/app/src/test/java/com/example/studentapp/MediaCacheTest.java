@@ -0,0 +1,81 @@
+package com.example.studentapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MediaCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumesChunkedDownloadsAndKeepsThemAcrossRestarts() throws Exception {
+        File directory = new File(folder.getRoot(), "media");
+        byte[] photo = randomBytes(10_000, 1);
+        byte[] hash = MediaCache.sha256(photo);
+        MediaCache cache = new MediaCache(directory, MediaCache.DEFAULT_MAX_BYTES);
+        assertNull(cache.get(hash));
+        assertNull(cache.append(hash, photo.length, 0, photo, 0, 4096));
+        // A stale chunk from before a resume does not continue the download
+        assertNull(cache.append(hash, photo.length, 0, photo, 0, 4096));
+
+        MediaCache restarted = new MediaCache(directory, MediaCache.DEFAULT_MAX_BYTES);
+        assertEquals(4096, restarted.partialLength(hash));
+        assertNull(restarted.append(hash, photo.length, 4096, photo, 4096, 4096));
+        File finished = restarted.append(hash, photo.length, 8192, photo, 8192, photo.length - 8192);
+        assertArrayEquals(photo, Files.readAllBytes(finished.toPath()));
+
+        assertEquals(finished, new MediaCache(directory, MediaCache.DEFAULT_MAX_BYTES).get(hash));
+    }
+
+    @Test
+    public void discardsBlobsThatDoNotMatchTheirHash() throws Exception {
+        MediaCache cache = new MediaCache(folder.getRoot(), MediaCache.DEFAULT_MAX_BYTES);
+        byte[] photo = randomBytes(100, 2);
+        byte[] hash = MediaCache.sha256(randomBytes(100, 3));
+        try {
+            cache.append(hash, photo.length, 0, photo, 0, photo.length);
+            fail();
+        } catch (IOException expected) {
+            // Corrupted or spoofed
+        }
+        assertNull(cache.get(hash));
+        assertEquals(0, cache.partialLength(hash));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedBlob() throws Exception {
+        MediaCache cache = new MediaCache(folder.getRoot(), 250);
+        byte[] first = randomBytes(100, 4);
+        byte[] second = randomBytes(100, 5);
+        byte[] third = randomBytes(100, 6);
+        store(cache, first);
+        store(cache, second);
+        // Reading the first makes the second the least recently used
+        assertNotNull(cache.get(MediaCache.sha256(first)));
+        store(cache, third);
+
+        assertNotNull(cache.get(MediaCache.sha256(first)));
+        assertNull(cache.get(MediaCache.sha256(second)));
+        assertNotNull(cache.get(MediaCache.sha256(third)));
+        assertEquals(200, cache.getTotalBytes());
+    }
+
+    private static void store(MediaCache cache, byte[] blob) throws IOException {
+        assertNotNull(cache.append(MediaCache.sha256(blob), blob.length, 0, blob, 0, blob.length));
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
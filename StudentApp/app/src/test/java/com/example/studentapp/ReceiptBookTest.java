@@ -0,0 +1,102 @@
+package com.example.studentapp;
+
+import com.example.votingcore.protocol.FrameDecoder;
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.PayloadReader;
+import com.example.votingcore.protocol.VoteReceipts;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ReceiptBookTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsReceiptsWhoseProofLeadsFromTheVoteCast() throws Exception {
+        VoteOutbox outbox = new VoteOutbox(folder.newFile("outbox"), new Random(1));
+        VoteOutbox.Entry asha = outbox.add("Asha", 0, 1, "Ravi");
+        VoteOutbox.Entry dev = outbox.add("Dev", 0, 2, "Meena");
+        File file = new File(folder.getRoot(), "receipts");
+        ReceiptBook book = new ReceiptBook(file);
+        book.expect(asha);
+        book.expect(dev);
+
+        List<byte[]> leaves = Arrays.asList(VoteReceipts.leaf(0, 1, "Asha"), VoteReceipts.leaf(0, 2, "Dev"),
+                VoteReceipts.leaf(0, 1, "Kiran"));
+        List<byte[][]> levels = VoteReceipts.levels(leaves);
+        byte[] root = levels.get(levels.size() - 1)[0];
+        byte[] previous = VoteReceipts.chain(VoteReceipts.genesis(), 0, root);
+
+        // Too few siblings for a tree of three
+        assertNull(accept(book, Messages.voteReceipt(dev.voteId, 1, 1, 3, previous,
+                VoteReceipts.proof(levels, 1).subList(0, 1))));
+        ReceiptBook.Receipt receipt = accept(book,
+                Messages.voteReceipt(asha.voteId, 1, 0, 3, previous, VoteReceipts.proof(levels, 0)));
+        assertNotNull(receipt);
+        assertEquals(1, receipt.batch);
+        assertEquals(MediaCache.hex(VoteReceipts.chain(previous, 1, root)), receipt.chain);
+        // Already have it
+        assertNull(accept(book, Messages.voteReceipt(asha.voteId, 1, 0, 3, previous, VoteReceipts.proof(levels, 0))));
+        // A proof that is not for Dev's vote leads somewhere other than the published chain
+        ReceiptBook.Receipt forged = accept(book,
+                Messages.voteReceipt(dev.voteId, 1, 1, 3, previous, VoteReceipts.proof(levels, 0)));
+        assertNotEquals(receipt.chain, forged.chain);
+
+        ReceiptBook restarted = new ReceiptBook(file);
+        assertEquals(2, restarted.size());
+        assertEquals(receipt.chain, restarted.get(asha.voteId).chain);
+    }
+
+    @Test
+    public void ignoresReceiptsForVotesItDidNotCast() throws Exception {
+        ReceiptBook book = new ReceiptBook(new File(folder.getRoot(), "receipts"));
+        List<byte[][]> levels = VoteReceipts.levels(Collections.singletonList(VoteReceipts.leaf(0, 0, "Asha")));
+        assertNull(accept(book, Messages.voteReceipt(42, 0, 0, 1, VoteReceipts.genesis(), VoteReceipts.proof(levels, 0))));
+        assertEquals(0, book.size());
+    }
+
+    @Test
+    public void dropsAcceptedVotesStillWithoutAReceiptWhenTheConnectionIsLost() throws Exception {
+        VoteOutbox outbox = new VoteOutbox(folder.newFile("outbox"), new Random(1));
+        VoteOutbox.Entry asha = outbox.add("Asha", 0, 1, "Ravi");
+        VoteOutbox.Entry dev = outbox.add("Dev", 0, 2, "Meena");
+        VoteOutbox.Entry kiran = outbox.add("Kiran", 0, 1, "Ravi");
+        ReceiptBook book = new ReceiptBook(new File(folder.getRoot(), "receipts"));
+        book.expect(asha);
+        book.expect(dev);
+        book.expect(kiran);
+
+        book.acknowledge(asha.voteId);
+        book.acknowledge(dev.voteId);
+        List<byte[][]> levels = VoteReceipts.levels(Collections.singletonList(VoteReceipts.leaf(0, 1, "Asha")));
+        assertNotNull(accept(book, Messages.voteReceipt(asha.voteId, 0, 0, 1, VoteReceipts.genesis(),
+                VoteReceipts.proof(levels, 0))));
+
+        // Dev's receipt never came; Kiran's vote is still in the outbox and will be answered on resend
+        assertEquals(1, book.dropAcknowledged());
+        assertEquals(1, book.getExpectedCount());
+        assertEquals(0, book.dropAcknowledged());
+    }
+
+    private static ReceiptBook.Receipt accept(ReceiptBook book, byte[] frame) throws IOException {
+        AtomicReference<ReceiptBook.Receipt> receipt = new AtomicReference<>();
+        new FrameDecoder().readFrom(new ByteArrayInputStream(frame), (type, buffer, offset, length) -> {
+            receipt.set(book.accept(new PayloadReader().reset(buffer, offset, length)));
+        });
+        return receipt.get();
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.studentapp;
+
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.PayloadReader;
+import com.example.votingcore.server.InMemoryVoteStore;
+import com.example.votingcore.server.VoteResult;
+import com.example.votingcore.server.VotingServer;
+import com.example.votingcore.server.transport.TcpServerTransport;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TeacherConnectionTest {
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final AtomicInteger port = new AtomicInteger();
+    private TeacherConnection connection;
+
+    private final TeacherConnection.Listener listener = new TeacherConnection.Listener() {
+        @Override
+        public void onConnected() {
+            events.add("connected");
+        }
+
+        @Override
+        public void onFrame(int type, PayloadReader payload) {
+            events.add("frame:" + type);
+        }
+
+        @Override
+        public void onDisconnected(Exception cause) {
+            events.add("disconnected");
+        }
+    };
+
+    /** Connects to whatever is listening on {@link #port}, or nothing while it is 0. */
+    private TeacherConnection.Link openLoopback() throws IOException {
+        if (port.get() == 0) {
+            return null;
+        }
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port.get());
+        return new TeacherConnection.Link() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return socket.getOutputStream();
+            }
+
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        if (connection != null) {
+            connection.stop();
+        }
+    }
+
+    private static VotingServer startServer(TcpServerTransport transport) throws Exception {
+        VotingServer server = new VotingServer(new InMemoryVoteStore(), new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+        });
+        server.addCandidate("Ravi");
+        server.start(transport);
+        return server;
+    }
+
+    @Test
+    public void waitsForATeacherThenReconnectsWhenItComesBack() throws Exception {
+        connection = new TeacherConnection(this::openLoopback, listener, new Backoff(20, 100, new Random(1)), 1000);
+        connection.start();
+        assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+
+        TcpServerTransport transport = new TcpServerTransport(0);
+        VotingServer server = startServer(transport);
+        port.set(transport.getPort());
+        connection.reconnectNow();
+        assertEquals("connected", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("frame:" + MessageType.CANDIDATES, events.poll(5, TimeUnit.SECONDS));
+        assertTrue(connection.isConnected());
+
+        server.stop();
+        assertEquals("disconnected", events.poll(5, TimeUnit.SECONDS));
+
+        TcpServerTransport restarted = new TcpServerTransport(0);
+        server = startServer(restarted);
+        port.set(restarted.getPort());
+        // No reconnectNow this time: the backoff loop finds the teacher on its own
+        assertEquals("connected", events.poll(5, TimeUnit.SECONDS));
+        server.stop();
+    }
+
+    @Test
+    public void dropsALinkThatStopsAnsweringHeartbeats() throws Exception {
+        try (ServerSocket silent = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port.set(silent.getLocalPort());
+            connection = new TeacherConnection(this::openLoopback, listener, new Backoff(1000, 1000, new Random(2)), 50);
+            connection.start();
+
+            assertEquals("connected", events.poll(5, TimeUnit.SECONDS));
+            // Accepted by the backlog but never read from or answered
+            assertEquals("disconnected", events.poll(5, TimeUnit.SECONDS));
+            assertFalse(connection.isConnected());
+        }
+    }
+}
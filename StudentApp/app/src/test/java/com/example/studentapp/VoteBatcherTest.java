@@ -0,0 +1,66 @@
+package com.example.studentapp;
+
+import com.example.votingcore.protocol.FrameDecoder;
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.PayloadReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VoteBatcherTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void splitsDueVotesIntoBatchesWithinTheWindow() throws Exception {
+        VoteOutbox outbox = new VoteOutbox(new File(folder.getRoot(), "outbox"), new Random(1));
+        List<Long> voteIds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            voteIds.add(outbox.add("student" + i, 0, i % 2, "Candidate " + i % 2).voteId);
+        }
+        VoteBatcher batcher = new VoteBatcher(outbox, 3, 7);
+
+        List<byte[]> frames = batcher.nextFrames(0);
+        assertEquals(Arrays.asList(3, 3, 1), batchSizes(frames));
+        assertEquals(voteIds.get(0).longValue(), firstVoteId(frames.get(0)));
+        // Window is full until something is acknowledged
+        assertTrue(batcher.nextFrames(1).isEmpty());
+
+        assertEquals(3, outbox.acknowledgeAll(voteIds.subList(0, 3)));
+        assertEquals(Arrays.asList(3), batchSizes(batcher.nextFrames(2)));
+    }
+
+    private static List<Integer> batchSizes(List<byte[]> frames) throws Exception {
+        List<Integer> sizes = new ArrayList<>();
+        for (byte[] frame : frames) {
+            sizes.add(decode(frame).readUnsignedShort());
+        }
+        return sizes;
+    }
+
+    private static long firstVoteId(byte[] frame) throws Exception {
+        PayloadReader payload = decode(frame);
+        payload.readUnsignedShort();
+        return payload.readLong();
+    }
+
+    private static PayloadReader decode(byte[] frame) throws Exception {
+        PayloadReader payload = new PayloadReader();
+        new FrameDecoder().readFrom(new ByteArrayInputStream(frame), (type, buffer, offset, length) -> {
+            assertEquals(MessageType.VOTE_BATCH, type);
+            payload.reset(Arrays.copyOf(buffer, offset + length), offset, length);
+        });
+        return payload;
+    }
+}
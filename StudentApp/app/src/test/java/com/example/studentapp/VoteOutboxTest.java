@@ -0,0 +1,81 @@
+package com.example.studentapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VoteOutboxTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsUnacknowledgedVotesAcrossRestarts() throws Exception {
+        File file = new File(folder.getRoot(), "outbox");
+        VoteOutbox outbox = new VoteOutbox(file, new Random(1));
+        VoteOutbox.Entry asha = outbox.add("Asha", 0, 0, "Ravi");
+        VoteOutbox.Entry dev = outbox.add("Dev", 3, 1, "Meera");
+        assertNotNull(outbox.acknowledge(asha.voteId));
+        assertNull(outbox.acknowledge(asha.voteId));
+
+        VoteOutbox reloaded = new VoteOutbox(file, new Random(2));
+        List<VoteOutbox.Entry> due = reloaded.takeDue(0);
+        assertEquals(1, due.size());
+        assertEquals(dev.voteId, due.get(0).voteId);
+        assertEquals("Dev", due.get(0).student);
+        assertEquals(3, due.get(0).electionId);
+        assertEquals("Meera", due.get(0).candidateName);
+    }
+
+    @Test
+    public void readsVersionOneFilesIntoTheDefaultElection() throws Exception {
+        File file = new File(folder.getRoot(), "outbox");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(1);
+            out.writeInt(1);
+            out.writeLong(42);
+            out.writeUTF("Asha");
+            out.writeInt(2);
+            out.writeUTF("Ravi");
+        }
+
+        List<VoteOutbox.Entry> due = new VoteOutbox(file, new Random(5)).takeDue(0);
+        assertEquals(1, due.size());
+        assertEquals(42, due.get(0).voteId);
+        assertEquals(0, due.get(0).electionId);
+        assertEquals(2, due.get(0).candidateId);
+    }
+
+    @Test
+    public void backsOffUntilReset() throws Exception {
+        VoteOutbox outbox = new VoteOutbox(new File(folder.getRoot(), "outbox"), new Random(3));
+        outbox.add("Asha", 0, 0, "Ravi");
+
+        assertEquals(1, outbox.takeDue(0).size());
+        // First retry is 0.5-1 s out, the next 1-2 s after that
+        assertTrue(outbox.takeDue(499).isEmpty());
+        assertEquals(1, outbox.takeDue(1000).size());
+        assertTrue(outbox.takeDue(1999).isEmpty());
+
+        outbox.resetBackoff();
+        assertEquals(1, outbox.takeDue(2000).size());
+    }
+
+    @Test
+    public void capsBackoffWithJitter() throws Exception {
+        VoteOutbox outbox = new VoteOutbox(new File(folder.getRoot(), "outbox"), new Random(4));
+        for (int attempts = 0; attempts < 40; attempts++) {
+            long delay = outbox.backoffMillis(attempts);
+            assertTrue(delay >= Math.min(VoteOutbox.MAX_BACKOFF_MS, VoteOutbox.BASE_BACKOFF_MS << Math.min(attempts, 16)) / 2);
+            assertTrue(delay <= VoteOutbox.MAX_BACKOFF_MS);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.teacherapp;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Candidates with their live counts. Lists are diffed off the main thread, so a new frame only
+ * rebinds the rows whose counts changed.
+ */
+public class CandidateAdapter extends ListAdapter<DashboardState.CandidateRow, CandidateAdapter.ViewHolder> {
+
+    public interface OnRemoveListener {
+        void onRemove(String candidate);
+    }
+
+    public interface OnAttachListener {
+        void onAttach(String candidate);
+    }
+
+    private static final DiffUtil.ItemCallback<DashboardState.CandidateRow> DIFF =
+            new DiffUtil.ItemCallback<DashboardState.CandidateRow>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull DashboardState.CandidateRow oldRow,
+                                               @NonNull DashboardState.CandidateRow newRow) {
+                    return oldRow.name.equals(newRow.name);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull DashboardState.CandidateRow oldRow,
+                                                  @NonNull DashboardState.CandidateRow newRow) {
+                    return oldRow.sameContents(newRow);
+                }
+            };
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView nameTextView;
+        final TextView votesTextView;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            nameTextView = itemView.findViewById(R.id.candidateNameTextView);
+            votesTextView = itemView.findViewById(R.id.candidateVotesTextView);
+        }
+    }
+
+    private final OnRemoveListener removeListener;
+    private final OnAttachListener attachListener;
+
+    public CandidateAdapter(OnRemoveListener removeListener, OnAttachListener attachListener) {
+        super(DIFF);
+        this.removeListener = removeListener;
+        this.attachListener = attachListener;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_candidate, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        DashboardState.CandidateRow row = getItem(position);
+        holder.nameTextView.setText(row.onBallot ? row.name : row.name + " (removed)");
+        holder.votesTextView.setText(row.votes + " votes");
+        holder.itemView.setOnClickListener(v -> {
+            if (row.onBallot) {
+                attachListener.onAttach(row.name);
+            }
+        });
+        holder.itemView.setOnLongClickListener(v -> {
+            if (row.onBallot) {
+                removeListener.onRemove(row.name);
+            }
+            return true;
+        });
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.teacherapp;
+
+import android.view.Choreographer;
+
+/**
+ * Runs dashboard frames on vsync. Must be created on the main thread; {@link #schedule} may be
+ * called from any thread.
+ */
+public class ChoreographerFrameScheduler implements DashboardModel.FrameScheduler {
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+
+    @Override
+    public void schedule(Runnable frame, long delayMillis) {
+        choreographer.postFrameCallbackDelayed(frameTimeNanos -> frame.run(), delayMillis);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.teacherapp;
+
+import com.example.votingcore.server.Election;
+import com.example.votingcore.server.VoteResult;
+import com.example.votingcore.server.VotingServer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects server events on the threads they happen on and publishes at most one
+ * {@link DashboardState} per frame, however many votes arrive in between.
+ *
+ * <p>Events only bump counters and request a frame; the state is built once, when the frame
+ * runs. Kept free of Android classes so it can be tested on the JVM.
+ */
+public class DashboardModel implements VotingServer.Listener {
+
+    /** Runs a frame on the UI thread after {@code delayMillis}, or on the next vsync if 0. */
+    public interface FrameScheduler {
+        void schedule(Runnable frame, long delayMillis);
+    }
+
+    public interface Observer {
+        void onState(DashboardState state);
+    }
+
+    private final FrameScheduler scheduler;
+    private final Observer observer;
+    private final long minIntervalMillis;
+    private final AtomicBoolean framePending = new AtomicBoolean();
+    private final AtomicInteger accepted = new AtomicInteger();
+    private final AtomicInteger duplicates = new AtomicInteger();
+    private final AtomicInteger invalid = new AtomicInteger();
+    private volatile String status = "Waiting for votes...";
+    private volatile VotingServer server;
+    private volatile int electionId = Election.DEFAULT_ID;
+    // Only touched by the frame itself
+    private long lastFrameMillis = Long.MIN_VALUE / 2;
+
+    /**
+     * @param minIntervalMillis lower bound between two published states; 0 publishes once per frame
+     */
+    public DashboardModel(FrameScheduler scheduler, Observer observer, long minIntervalMillis) {
+        this.scheduler = scheduler;
+        this.observer = observer;
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    /** Sets the server whose candidates, tally and clients are shown. */
+    public void bind(VotingServer server) {
+        this.server = server;
+        invalidate();
+    }
+
+    /** Picks which election's candidates and tally are shown. Counters cover all elections. */
+    public void showElection(int electionId) {
+        this.electionId = electionId;
+        invalidate();
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+        invalidate();
+    }
+
+    /** Asks for a new state to be published. Safe from any thread; repeated calls coalesce. */
+    public void invalidate() {
+        if (!framePending.compareAndSet(false, true)) {
+            return;
+        }
+        long wait = lastFrameMillis + minIntervalMillis - System.currentTimeMillis();
+        scheduler.schedule(this::publish, Math.max(0, wait));
+    }
+
+    @Override
+    public void onVote(String student, String candidate, VoteResult result) {
+        if (result == VoteResult.ACCEPTED) {
+            accepted.incrementAndGet();
+            status = "Vote received from " + student;
+        } else if (result == VoteResult.DUPLICATE) {
+            duplicates.incrementAndGet();
+            status = "Duplicate vote from " + student;
+        } else if (result == VoteResult.ELECTION_CLOSED) {
+            invalid.incrementAndGet();
+            status = "Vote for a closed election from " + student;
+        } else {
+            invalid.incrementAndGet();
+            status = "Invalid candidate from " + student;
+        }
+        invalidate();
+    }
+
+    @Override
+    public void onError(Exception e) {
+        e.printStackTrace();
+        setStatus("Error handling vote: " + e.getMessage());
+    }
+
+    private void publish() {
+        lastFrameMillis = System.currentTimeMillis();
+        // Cleared before reading so an event during the snapshot schedules the next frame
+        framePending.set(false);
+        observer.onState(snapshot());
+    }
+
+    DashboardState snapshot() {
+        VotingServer current = server;
+        List<DashboardState.CandidateRow> rows = new ArrayList<>();
+        int connected = 0;
+        Election election = current == null ? null : current.getElection(electionId);
+        if (election != null) {
+            Map<String, Long> results = new LinkedHashMap<>(election.getResults());
+            for (String candidate : election.getCandidates()) {
+                Long votes = results.remove(candidate);
+                rows.add(new DashboardState.CandidateRow(candidate, votes == null ? 0 : votes, true));
+            }
+            for (Map.Entry<String, Long> removed : results.entrySet()) {
+                rows.add(new DashboardState.CandidateRow(removed.getKey(), removed.getValue(), false));
+            }
+        }
+        if (current != null) {
+            connected = current.getConnectedCount();
+        }
+        return new DashboardState(status, accepted.get(), duplicates.get(), invalid.get(), connected, rows);
+    }
+}
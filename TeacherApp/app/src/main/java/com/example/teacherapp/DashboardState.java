@@ -0,0 +1,45 @@
+package com.example.teacherapp;
+
+import java.util.List;
+
+/**
+ * Everything the dashboard shows, captured at one instant. Immutable, so it can be handed to the
+ * UI thread and diffed against the previous frame.
+ */
+public class DashboardState {
+
+    /** One row of the candidate list. */
+    public static class CandidateRow {
+        public final String name;
+        public final long votes;
+        // False for candidates who were removed after receiving votes
+        public final boolean onBallot;
+
+        public CandidateRow(String name, long votes, boolean onBallot) {
+            this.name = name;
+            this.votes = votes;
+            this.onBallot = onBallot;
+        }
+
+        boolean sameContents(CandidateRow other) {
+            return votes == other.votes && onBallot == other.onBallot;
+        }
+    }
+
+    public final String status;
+    public final int accepted;
+    public final int duplicates;
+    public final int invalid;
+    public final int connected;
+    public final List<CandidateRow> candidates;
+
+    public DashboardState(String status, int accepted, int duplicates, int invalid, int connected,
+                          List<CandidateRow> candidates) {
+        this.status = status;
+        this.accepted = accepted;
+        this.duplicates = duplicates;
+        this.invalid = invalid;
+        this.connected = connected;
+        this.candidates = candidates;
+    }
+}
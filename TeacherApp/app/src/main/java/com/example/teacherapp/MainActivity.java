@@ -2,31 +2,52 @@ package com.example.teacherapp;
 
 import android.Manifest;
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothServerSocket;
-import android.bluetooth.BluetoothSocket;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
-import android.widget.LinearLayout;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.server.CandidateRegistry;
+import com.example.votingcore.server.Election;
+import com.example.votingcore.server.IngestLimiter;
+import com.example.votingcore.server.JournaledVoteStore;
+import com.example.votingcore.server.MediaLibrary;
+import com.example.votingcore.server.ReceiptLog;
+import com.example.votingcore.server.TallyPublisher;
+import com.example.votingcore.server.VotingServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -34,17 +55,47 @@ public class MainActivity extends AppCompatActivity {
     private static final UUID MY_UUID = UUID.fromString("8ce255c0-200a-11e0-ac64-0800200c9a66");
     private static final int REQUEST_PERMISSION = 1;
     private static final int REQUEST_DISCOVERABLE = 2;
+    private static final int REQUEST_MEDIA = 3;
+    // Elections other than the default one; ids are never reused, since students may still
+    // hold unacknowledged votes for a closed election
+    private static final String PREFS_ELECTIONS = "elections";
+    private static final String KEY_NEXT_ID = "next_id";
+    private static final String KEY_TITLE = "title_";
+    private static final String KEY_CLOSED = "closed_";
 
+    // Startup times in the metrics count from here
+    private final long launchNanos = System.nanoTime();
     private BluetoothAdapter bluetoothAdapter;
     private VoteDatabaseHelper dbHelper;
+    private volatile JournaledVoteStore voteStore;
+    // Opens storage and rebuilds the tallies while the permission prompts are up
+    private Thread warmStart;
+    private volatile Exception warmStartError;
+    // Set by onDestroy; warm start stops early and the server is not started, and storage is closed in the background
+    private volatile boolean destroyed;
+    // Set on the main thread once warm start has finished; until then votingServer may be null or half restored
+    private boolean warm;
+    // Saves ballots in the order they changed
+    private final ExecutorService ballotSaver = Executors.newSingleThreadExecutor();
+    // Per-election storage, opened and closed off the main thread
+    private final Map<Integer, VoteDatabaseHelper> electionHelpers = new ConcurrentHashMap<>();
+    private final Map<Integer, JournaledVoteStore> electionStores = new ConcurrentHashMap<>();
+    private SharedPreferences electionPrefs;
+    // The candidate whose photo or manifesto is being picked
+    private int mediaElectionId;
+    private String mediaCandidate;
+    private int mediaKind;
+    private final List<Integer> electionIds = new ArrayList<>();
+    private ArrayAdapter<String> electionAdapter;
+    private int selectedElectionId = Election.DEFAULT_ID;
+    private volatile VotingServer votingServer;
+    private DashboardModel dashboard;
+    private CandidateAdapter candidateAdapter;
     private TextView statusTextView, resultsTextView;
-    private Button showResultsButton, addCandidateButton;
-    private EditText candidateNameEditText;
-    private LinearLayout candidatesLayout;
-    private Handler handler = new Handler(Looper.getMainLooper());
-    private BluetoothServerSocket serverSocket;
-    private List<String> candidates = new ArrayList<>();
-    private ConcurrentHashMap<BluetoothSocket, OutputStream> connectedClients = new ConcurrentHashMap<>();
+    private Button showResultsButton, addCandidateButton, metricsButton, newElectionButton, closeElectionButton;
+    private EditText candidateNameEditText, electionTitleEditText;
+    private Spinner electionSpinner;
+    private RecyclerView candidatesRecyclerView;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -55,18 +106,36 @@ public class MainActivity extends AppCompatActivity {
         resultsTextView = findViewById(R.id.resultsTextView);
         showResultsButton = findViewById(R.id.showResultsButton);
         addCandidateButton = findViewById(R.id.addCandidateButton);
+        metricsButton = findViewById(R.id.metricsButton);
         candidateNameEditText = findViewById(R.id.candidateNameEditText);
-        candidatesLayout = findViewById(R.id.candidatesLayout);
+        electionTitleEditText = findViewById(R.id.electionTitleEditText);
+        newElectionButton = findViewById(R.id.newElectionButton);
+        closeElectionButton = findViewById(R.id.closeElectionButton);
+        electionSpinner = findViewById(R.id.electionSpinner);
+        electionAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item);
+        electionAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        electionSpinner.setAdapter(electionAdapter);
+        electionPrefs = getSharedPreferences(PREFS_ELECTIONS, MODE_PRIVATE);
+        candidatesRecyclerView = findViewById(R.id.candidatesRecyclerView);
+        candidateAdapter = new CandidateAdapter(this::removeCandidate, this::chooseMedia);
+        candidatesRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        candidatesRecyclerView.setAdapter(candidateAdapter);
 
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-        dbHelper = new VoteDatabaseHelper(this);
-
         if (bluetoothAdapter == null) {
             Toast.makeText(this, "Bluetooth not supported", Toast.LENGTH_SHORT).show();
             finish();
             return;
         }
 
+        dbHelper = new VoteDatabaseHelper(this);
+        // Votes only bump counters; the dashboard redraws at most once per frame
+        dashboard = new DashboardModel(new ChoreographerFrameScheduler(), this::render, 0);
+        dashboard.setStatus("Loading votes...");
+        setControlsEnabled(false);
+        warmStart = new Thread(this::warmStart, "warm-start");
+        warmStart.start();
+
         // Request necessary permissions
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED ||
@@ -91,8 +160,28 @@ public class MainActivity extends AppCompatActivity {
 
         addCandidateButton.setOnClickListener(v -> addCandidate());
         showResultsButton.setOnClickListener(v -> {
-            showResults();
-            broadcastResults();
+            if (isWarm()) {
+                showResults();
+                broadcastResults();
+            }
+        });
+        metricsButton.setOnClickListener(v -> {
+            if (isWarm()) {
+                new MetricsDialog(this, votingServer).show();
+            }
+        });
+        newElectionButton.setOnClickListener(v -> newElection());
+        closeElectionButton.setOnClickListener(v -> closeElection());
+        electionSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                selectedElectionId = electionIds.get(position);
+                dashboard.showElection(selectedElectionId);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
         });
 
         // Make device discoverable
@@ -115,6 +204,8 @@ public class MainActivity extends AppCompatActivity {
                 Toast.makeText(this, "Device must be discoverable to accept votes", Toast.LENGTH_SHORT).show();
                 finish();
             }
+        } else if (requestCode == REQUEST_MEDIA && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            attachMedia(mediaElectionId, mediaCandidate, mediaKind, data.getData());
         }
     }
 
@@ -155,132 +246,334 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void addCandidate() {
-        String candidateName = candidateNameEditText.getText().toString().trim();
-        if (!candidateName.isEmpty() && !candidates.contains(candidateName)) {
-            candidates.add(candidateName);
-            updateCandidatesDisplay();
-            candidateNameEditText.setText("");
-            broadcastCandidateList();
+    /**
+     * Opens every election's storage with its statements compiled, restores the ballots and
+     * rebuilds the tallies and voter indexes, leaving {@link #startServer} only the socket to open.
+     */
+    private void warmStart() {
+        try {
+            // Opening the database and compiling statements here keeps both off the first vote
+            dbHelper.prepare();
+            // Votes are acknowledged once journaled; SQLite catches up in the background.
+            // Opening replays anything a crash left unfolded.
+            voteStore = new JournaledVoteStore(dbHelper, new File(getFilesDir(), "votes.journal"));
+            if (destroyed) {
+                // Nothing else is opened; the shutdown thread closes what is
+                return;
+            }
+            VotingServer server = new VotingServer(voteStore, dashboard);
+            server.getMetrics().setLaunchNanos(launchNanos);
+            // Students who subscribe see the counts move without waiting for Show Results
+            server.enableTallyStreaming(TallyPublisher.DEFAULT_INTERVAL_MS);
+            // Students get a Merkle proof that their vote was counted
+            server.enableReceipts();
+            // One misbehaving device must not flood the journal or the dashboard
+            server.enableAdmissionControl(IngestLimiter.DEFAULT_VOTES_PER_SECOND, IngestLimiter.DEFAULT_BURST,
+                    IngestLimiter.DEFAULT_MAX_QUEUED_VOTES);
+            votingServer = server;
+            restoreBallot(Election.DEFAULT_ID, dbHelper);
+            restoreElections();
+            if (destroyed) {
+                return;
+            }
+            server.load();
+            dashboard.bind(server);
+            if (voteStore.getRecoveredCount() > 0) {
+                dashboard.setStatus("Recovered " + voteStore.getRecoveredCount() + " votes from the journal");
+            } else {
+                dashboard.setStatus("Loaded in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launchNanos) + " ms");
+            }
+            runOnUiThread(() -> {
+                warm = true;
+                refreshElections();
+                setControlsEnabled(true);
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+            warmStartError = e;
+            runOnUiThread(() -> {
+                Toast.makeText(this, "Failed to open votes: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                finish();
+            });
         }
     }
 
-    private void updateCandidatesDisplay() {
-        candidatesLayout.removeAllViews();
-        for (String candidate : candidates) {
-            TextView candidateView = new TextView(this);
-            candidateView.setText(candidate);
-            candidateView.setPadding(0, 8, 0, 8);
-            candidatesLayout.addView(candidateView);
+    /** Whether the server is ready for the controls; the buttons are disabled until then, but clicks can be queued. */
+    private boolean isWarm() {
+        if (!warm) {
+            Toast.makeText(this, "Still loading votes", Toast.LENGTH_SHORT).show();
         }
+        return warm;
     }
 
-    private void broadcastCandidateList() {
-        String candidateList = String.join(",", candidates);
-        String message = "CANDIDATES:" + candidateList;
-        broadcastMessage(message);
+    private void setControlsEnabled(boolean enabled) {
+        addCandidateButton.setEnabled(enabled);
+        showResultsButton.setEnabled(enabled);
+        metricsButton.setEnabled(enabled);
+        newElectionButton.setEnabled(enabled);
+        closeElectionButton.setEnabled(enabled);
+        electionSpinner.setEnabled(enabled);
     }
 
-    private void broadcastResults() {
-        String results = resultsTextView.getText().toString();
-        broadcastMessage("RESULTS:" + results);
+    /**
+     * Puts back the candidates an election had before the app restarted, with the same ids, and
+     * their photos and manifestos. Runs before the server starts, so nothing is broadcast.
+     */
+    private void restoreBallot(int electionId, VoteDatabaseHelper helper) throws Exception {
+        VoteDatabaseHelper.SavedBallot saved = helper.loadBallot();
+        if (!saved.registered.isEmpty()) {
+            votingServer.restoreBallot(electionId, saved.registered, saved.ballotIds);
+        }
+        for (VoteDatabaseHelper.SavedMedia media : helper.loadMedia()) {
+            File blob = new File(getMediaDir(), media.hash);
+            if (blob.exists()) {
+                byte[] data = Files.readAllBytes(blob.toPath());
+                votingServer.setCandidateMedia(electionId, media.candidate, media.kind, data);
+            }
+        }
+    }
+
+    private VoteDatabaseHelper helperFor(int electionId) {
+        return electionId == Election.DEFAULT_ID ? dbHelper : electionHelpers.get(electionId);
+    }
+
+    /** Blobs shared by every election, each in a file named by its hex SHA-256. */
+    private File getMediaDir() {
+        return new File(getFilesDir(), "media");
     }
 
-    private void broadcastMessage(String message) {
-        for (OutputStream outputStream : connectedClients.values()) {
+    /** Saves an election's ballot in the background, so a restart keeps its candidates and ids. */
+    private void saveBallot(int electionId) {
+        Election election = votingServer.getElection(electionId);
+        VoteDatabaseHelper helper = helperFor(electionId);
+        CandidateRegistry.Snapshot ballot = election.getBallot();
+        List<String> registered = election.getRegisteredCandidates();
+        ballotSaver.execute(() -> {
             try {
-                outputStream.write(message.getBytes());
-                outputStream.flush();
+                helper.saveBallot(registered, ballot);
             } catch (Exception e) {
                 e.printStackTrace();
+                dashboard.setStatus("Error saving candidates: " + e.getMessage());
             }
+        });
+    }
+
+    private void addCandidate() {
+        if (!isWarm()) {
+            return;
+        }
+        String candidateName = candidateNameEditText.getText().toString().trim();
+        if (votingServer.addCandidate(selectedElectionId, candidateName)) {
+            saveBallot(selectedElectionId);
+            dashboard.invalidate();
+            candidateNameEditText.setText("");
         }
     }
 
-    private void startServer() {
+    private void removeCandidate(String candidate) {
+        if (!isWarm()) {
+            return;
+        }
+        if (votingServer.removeCandidate(selectedElectionId, candidate)) {
+            saveBallot(selectedElectionId);
+            dashboard.invalidate();
+            Toast.makeText(this, "Removed " + candidate, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /** Asks whether to attach a photo or a manifesto, then opens the system picker for it. */
+    private void chooseMedia(String candidate) {
+        if (!isWarm()) {
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(candidate)
+                .setItems(new String[]{"Attach photo", "Attach manifesto"}, (dialog, which) -> {
+                    mediaElectionId = selectedElectionId;
+                    mediaCandidate = candidate;
+                    mediaKind = which == 0 ? MessageType.MEDIA_PHOTO : MessageType.MEDIA_MANIFESTO;
+                    Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+                    intent.setType(which == 0 ? "image/*" : "text/plain");
+                    startActivityForResult(intent, REQUEST_MEDIA);
+                })
+                .show();
+    }
+
+    /** Reads the picked file off the main thread, saves it with the ballot and announces it to students. */
+    private void attachMedia(int electionId, String candidate, int kind, Uri uri) {
         new Thread(() -> {
-            try {
-                if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
-                    return;
+            try (InputStream in = getContentResolver().openInputStream(uri)) {
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    data.write(buffer, 0, read);
                 }
-                serverSocket = bluetoothAdapter.listenUsingRfcommWithServiceRecord(APP_NAME, MY_UUID);
-                handler.post(() -> statusTextView.setText("Server Started. Waiting for votes..."));
-
-                while (true) {
-                    BluetoothSocket socket = serverSocket.accept();
-                    if (socket != null) {
-                        OutputStream outputStream = socket.getOutputStream();
-                        connectedClients.put(socket, outputStream);
-                        // Send current candidate list to new client
-                        broadcastCandidateList();
-                        // Start a new thread to handle this client
-                        new Thread(() -> handleClient(socket)).start();
-                    }
+                byte[] bytes = data.toByteArray();
+                if (bytes.length > 0 && votingServer.setCandidateMedia(electionId, candidate, kind, bytes)) {
+                    saveMedia(electionId, candidate, kind, bytes);
+                    dashboard.setStatus("Attached " + (kind == MessageType.MEDIA_PHOTO ? "photo" : "manifesto")
+                            + " to " + candidate);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
-                handler.post(() -> statusTextView.setText("Error Starting Server: " + e.getMessage()));
+                dashboard.setStatus("Error attaching media: " + e.getMessage());
             }
         }).start();
     }
 
-    private void handleClient(BluetoothSocket socket) {
-        try {
-            InputStream inputStream = socket.getInputStream();
-            byte[] buffer = new byte[1024];
-            int bytes;
-
-            while ((bytes = inputStream.read(buffer)) != -1) {
-                String message = new String(buffer, 0, bytes);
-                if (message.startsWith("VOTE:")) {
-                    String[] parts = message.substring(5).split(",");
-                    if (parts.length == 2) {
-                        String student = parts[0].trim();
-                        String candidate = parts[1].trim();
-
-                        if (candidates.contains(candidate)) {
-                            boolean success = dbHelper.addVote(student, candidate);
-                            handler.post(() -> {
-                                if (success) {
-                                    statusTextView.setText("Vote received from " + student);
-                                } else {
-                                    statusTextView.setText("Duplicate vote from " + student);
-                                }
-                            });
-                        } else {
-                            handler.post(() -> statusTextView.setText("Invalid candidate from " + student));
-                        }
-                    }
-                }
+    /** Writes the blob unless an earlier attachment already did, then points the candidate at it. Blocks on storage. */
+    private void saveMedia(int electionId, String candidate, int kind, byte[] data) throws Exception {
+        String hash = MediaLibrary.hex(MediaLibrary.sha256(data));
+        File dir = getMediaDir();
+        File blob = new File(dir, hash);
+        if (!blob.exists()) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            handler.post(() -> statusTextView.setText("Error handling vote: " + e.getMessage()));
-        } finally {
-            connectedClients.remove(socket);
+            // Renamed into place, so a crash never leaves a truncated blob under the hash
+            File partial = new File(dir, hash + ".tmp");
+            Files.write(partial.toPath(), data);
+            Files.move(partial.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        helperFor(electionId).saveMedia(candidate, kind, hash);
+    }
+
+    private void newElection() {
+        if (!isWarm()) {
+            return;
+        }
+        String title = electionTitleEditText.getText().toString().trim();
+        if (title.isEmpty()) {
+            return;
+        }
+        int id = electionPrefs.getInt(KEY_NEXT_ID, Election.DEFAULT_ID + 1);
+        if (id > Election.MAX_ID) {
+            Toast.makeText(this, "No election ids left", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        electionPrefs.edit().putInt(KEY_NEXT_ID, id + 1).putString(KEY_TITLE + id, title).apply();
+        electionTitleEditText.setText("");
+        new Thread(() -> {
             try {
-                socket.close();
+                openElection(id, title);
+                runOnUiThread(this::refreshElections);
             } catch (Exception e) {
                 e.printStackTrace();
+                dashboard.setStatus("Error opening " + title + ": " + e.getMessage());
             }
+        }).start();
+    }
+
+    /** Opens an election with its own database and journal. Blocks on storage. */
+    private void openElection(int id, String title) throws Exception {
+        VoteDatabaseHelper helper = new VoteDatabaseHelper(this, "election-" + id + ".db");
+        helper.prepare();
+        JournaledVoteStore store = new JournaledVoteStore(helper, new File(getFilesDir(), "election-" + id + ".journal"));
+        electionHelpers.put(id, helper);
+        electionStores.put(id, store);
+        votingServer.openElection(id, title, store);
+    }
+
+    private void closeElection() {
+        if (!isWarm()) {
+            return;
         }
+        int id = selectedElectionId;
+        if (id == Election.DEFAULT_ID) {
+            Toast.makeText(this, "The main election stays open", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        electionPrefs.edit().putBoolean(KEY_CLOSED + id, true).apply();
+        // Closing waits for the election's queued votes to commit
+        new Thread(() -> {
+            if (votingServer.closeElection(id)) {
+                runOnUiThread(this::refreshElections);
+            }
+        }).start();
     }
 
-    private void showResults() {
-        Cursor cursor = dbHelper.getAllVotes();
-        HashMap<String, Integer> voteCounts = new HashMap<>();
-
-        if (cursor.moveToFirst()) {
-            do {
-                String candidate = cursor.getString(1);
-                voteCounts.put(candidate, voteCounts.getOrDefault(candidate, 0) + 1);
-            } while (cursor.moveToNext());
+    /** Reopens elections created in earlier sessions, so their ids keep mapping to their votes. */
+    private void restoreElections() throws Exception {
+        Set<Integer> ids = new TreeSet<>();
+        for (String key : electionPrefs.getAll().keySet()) {
+            if (key.startsWith(KEY_TITLE)) {
+                ids.add(Integer.parseInt(key.substring(KEY_TITLE.length())));
+            }
+        }
+        for (int id : ids) {
+            openElection(id, electionPrefs.getString(KEY_TITLE + id, ""));
+            restoreBallot(id, electionHelpers.get(id));
+            if (electionPrefs.getBoolean(KEY_CLOSED + id, false)) {
+                votingServer.closeElection(id);
+            }
         }
-        cursor.close();
+    }
+
+    private void refreshElections() {
+        electionIds.clear();
+        electionAdapter.clear();
+        int selected = 0;
+        for (Election election : votingServer.getElections()) {
+            if (election.getId() == selectedElectionId) {
+                selected = electionIds.size();
+            }
+            electionIds.add(election.getId());
+            electionAdapter.add(election.getTitle() + (election.isOpen() ? "" : " (closed)"));
+        }
+        electionSpinner.setSelection(selected);
+    }
+
+    private void render(DashboardState state) {
+        statusTextView.setText(state.status + "\nAccepted: " + state.accepted
+                + "  Duplicate: " + state.duplicates + "  Invalid: " + state.invalid
+                + "  Connected: " + state.connected);
+        candidateAdapter.submitList(state.candidates);
+    }
 
+    private void broadcastResults() {
+        String results = resultsTextView.getText().toString();
+        votingServer.broadcastResults(results);
+    }
+
+    private void startServer() {
+        new Thread(() -> {
+            try {
+                if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
+                    return;
+                }
+                // Usually finished by now; it ran while the user answered the prompts
+                warmStart.join();
+                if (warmStartError != null) {
+                    return;
+                }
+                // The shutdown thread stops the server under the same lock, so it is never started once stopped
+                synchronized (MainActivity.this) {
+                    if (destroyed) {
+                        return;
+                    }
+                    votingServer.start(new RfcommServerTransport(
+                            bluetoothAdapter.listenUsingRfcommWithServiceRecord(APP_NAME, MY_UUID)));
+                }
+                dashboard.setStatus("Server started " + votingServer.getMetrics().getStartupMillis()
+                        + " ms after launch. Waiting for votes...");
+            } catch (Exception e) {
+                e.printStackTrace();
+                dashboard.setStatus("Error Starting Server: " + e.getMessage());
+            }
+        }).start();
+    }
+
+    private void showResults() {
         StringBuilder results = new StringBuilder();
-        for (String candidate : voteCounts.keySet()) {
-            results.append(candidate).append(": ").append(voteCounts.get(candidate)).append(" votes\n");
+        for (Map.Entry<String, Long> entry : votingServer.getElection(selectedElectionId).getResults().entrySet()) {
+            results.append(entry.getKey()).append(": ").append(entry.getValue()).append(" votes\n");
+        }
+        ReceiptLog receipts = votingServer.getReceiptLog();
+        if (receipts != null) {
+            // Each receipt chains forward to this value; the audit file saved from Metrics replays to it
+            results.append("Receipt chain: ").append(MediaLibrary.hex(receipts.getChainHead())).append('\n');
         }
 
         resultsTextView.setText(results.toString());
@@ -289,20 +582,48 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (serverSocket != null) {
+        if (warmStart == null) {
+            return;
+        }
+        destroyed = true;
+        // Waiting for warm start and folding the journal can take seconds, too long for the main thread
+        new Thread(this::shutDown, "shutdown").start();
+    }
+
+    /** Stops the server and closes every election's storage once warm start has let go of it. */
+    private void shutDown() {
+        try {
+            // Storage must not be closed while it is still being opened; warm start stops early once destroyed
+            warmStart.join();
+            ballotSaver.shutdown();
+            ballotSaver.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Disconnects clients and flushes any votes still waiting for a batch
+        synchronized (this) {
+            if (votingServer != null) {
+                votingServer.stop();
+            }
+        }
+        if (voteStore != null) {
             try {
-                serverSocket.close();
+                // Folds the remaining journal into SQLite
+                voteStore.close();
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
-        for (BluetoothSocket socket : connectedClients.keySet()) {
+        dbHelper.close();
+        for (JournaledVoteStore store : electionStores.values()) {
             try {
-                socket.close();
+                store.close();
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
-        connectedClients.clear();
+        for (VoteDatabaseHelper helper : electionHelpers.values()) {
+            helper.close();
+        }
     }
 }
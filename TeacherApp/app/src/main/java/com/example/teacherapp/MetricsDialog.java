@@ -0,0 +1,98 @@
+package com.example.teacherapp;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.example.votingcore.server.ReceiptLog;
+import com.example.votingcore.server.VotingServer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Debug screen with the server's live counters, refreshed every second while open, and a button
+ * that dumps them, along with the vote receipt audit, to files in the app's external files
+ * directory for post-election analysis.
+ */
+public class MetricsDialog {
+
+    private static final long REFRESH_MS = 1000;
+
+    private final Context context;
+    private final VotingServer votingServer;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private TextView metricsTextView;
+
+    public MetricsDialog(Context context, VotingServer votingServer) {
+        this.context = context;
+        this.votingServer = votingServer;
+    }
+
+    public void show() {
+        metricsTextView = new TextView(context);
+        metricsTextView.setTypeface(Typeface.MONOSPACE);
+        metricsTextView.setPadding(32, 16, 32, 16);
+        ScrollView scrollView = new ScrollView(context);
+        scrollView.addView(metricsTextView);
+
+        AlertDialog dialog = new AlertDialog.Builder(context)
+                .setTitle("Server Metrics")
+                .setView(scrollView)
+                .setPositiveButton("Close", null)
+                .setNeutralButton("Dump to File", null)
+                .create();
+        dialog.setOnDismissListener(d -> handler.removeCallbacks(refresh));
+        dialog.show();
+        // Set here rather than on the builder so dumping does not dismiss the dialog
+        dialog.getButton(AlertDialog.BUTTON_NEUTRAL).setOnClickListener(v -> dump());
+        refresh.run();
+    }
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            StringBuilder text = new StringBuilder();
+            try {
+                votingServer.writeMetrics(text);
+            } catch (IOException e) {
+                // StringBuilder does not throw
+            }
+            metricsTextView.setText(text);
+            handler.postDelayed(this, REFRESH_MS);
+        }
+    };
+
+    private void dump() {
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(dir, "metrics-" + stamp + ".txt");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("time=" + stamp + "\n");
+            votingServer.writeMetrics(writer);
+            ReceiptLog receipts = votingServer.getReceiptLog();
+            if (receipts != null) {
+                try (Writer audit = new FileWriter(new File(dir, "receipts-" + stamp + ".txt"))) {
+                    receipts.writeAudit(audit);
+                }
+            }
+            Toast.makeText(context, "Saved " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            e.printStackTrace();
+            Toast.makeText(context, "Failed to save metrics: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+}
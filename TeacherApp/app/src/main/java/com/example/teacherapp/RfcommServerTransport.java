@@ -0,0 +1,65 @@
+package com.example.teacherapp;
+
+import android.bluetooth.BluetoothServerSocket;
+import android.bluetooth.BluetoothSocket;
+
+import com.example.votingcore.server.transport.Connection;
+import com.example.votingcore.server.transport.ServerTransport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Bluetooth RFCOMM implementation of the server transport.
+ */
+public class RfcommServerTransport implements ServerTransport {
+
+    private final BluetoothServerSocket serverSocket;
+
+    public RfcommServerTransport(BluetoothServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+    }
+
+    @Override
+    public Connection accept() throws IOException {
+        BluetoothSocket socket;
+        do {
+            socket = serverSocket.accept();
+        } while (socket == null);
+        return new RfcommConnection(socket);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private static final class RfcommConnection implements Connection {
+        private final BluetoothSocket socket;
+
+        RfcommConnection(BluetoothSocket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
+        @Override
+        public String getRemoteName() {
+            return socket.getRemoteDevice().getAddress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -3,46 +3,392 @@ package com.example.teacherapp;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.content.ContentValues;
+import android.database.sqlite.SQLiteStatement;
 import android.database.Cursor;
 
-public class VoteDatabaseHelper extends SQLiteOpenHelper {
+import com.example.votingcore.server.CandidateRegistry;
+import com.example.votingcore.server.Vote;
+import com.example.votingcore.server.VoteStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public class VoteDatabaseHelper extends SQLiteOpenHelper implements VoteStore {
 
     private static final String DATABASE_NAME = "voting.db";
-    private static final int DATABASE_VERSION = 1;
-    private static final String TABLE_NAME = "votes";
+    private static final int DATABASE_VERSION = 5;
+
+    private static final String TABLE_CANDIDATES = "candidates";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_NAME = "name";
+
+    private static final String TABLE_VOTES = "votes";
     private static final String COLUMN_STUDENT = "student";
-    private static final String COLUMN_CANDIDATE = "candidate";
+    private static final String COLUMN_CANDIDATE_ID = "candidate_id";
+    // The device's id for the request that cast the vote; null for votes without one
+    private static final String COLUMN_VOTE_ID = "vote_id";
+    private static final String INDEX_VOTES_CANDIDATE = "idx_votes_candidate";
+
+    // The server's candidate ids, which differ from the candidates table's
+    private static final String TABLE_BALLOT = "ballot";
+    private static final String COLUMN_POSITION = "position";
+
+    // Which blob each candidate's photo and manifesto are; the blobs are files named by hash
+    private static final String TABLE_MEDIA = "media";
+    private static final String COLUMN_KIND = "kind";
+    private static final String COLUMN_HASH = "hash";
+
+    // Version 1 stored the candidate name on every vote row
+    private static final String V1_COLUMN_CANDIDATE = "candidate";
+
+    // Only used from the GroupCommitWriter thread
+    private SQLiteStatement insertVoteStatement;
+    private SQLiteStatement insertCandidateStatement;
+    private SQLiteStatement selectCandidateStatement;
+    // Read by the ingest thread while the journal compactor uses the insert statements
+    private SQLiteStatement countVoterStatement;
+    private final Map<String, Long> candidateIds = new HashMap<>();
+
+    /** A ballot as {@link #loadBallot()} read it back. */
+    public static class SavedBallot {
+        /** Every name ever registered, in candidate id order. */
+        public final List<String> registered;
+        /** Ids on the ballot, in ballot order. */
+        public final int[] ballotIds;
+
+        SavedBallot(List<String> registered, int[] ballotIds) {
+            this.registered = registered;
+            this.ballotIds = ballotIds;
+        }
+    }
+
+    /** One attachment as {@link #loadMedia()} read it back. */
+    public static class SavedMedia {
+        public final String candidate;
+        public final int kind;
+        /** Hex SHA-256 of the blob. */
+        public final String hash;
+
+        SavedMedia(String candidate, int kind, String hash) {
+            this.candidate = candidate;
+            this.kind = kind;
+            this.hash = hash;
+        }
+    }
 
     public VoteDatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /** A separate database, e.g. one per election so their votes never share a table. */
+    public VoteDatabaseHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        // WAL lets readers (results) run alongside the batch writer and makes commits cheaper
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        String createTable = "CREATE TABLE " + TABLE_NAME + "("
-                + COLUMN_STUDENT + " TEXT PRIMARY KEY,"
-                + COLUMN_CANDIDATE + " TEXT)";
-        db.execSQL(createTable);
+        createCandidatesTable(db);
+        createVotesTable(db, TABLE_VOTES);
+        addVoteIdColumn(db);
+        createVotesIndex(db);
+        createBallotTable(db);
+        createMediaTable(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Not needed now
+        if (oldVersion < 2) {
+            // Move candidate names into their own table and point votes at them by id
+            createCandidatesTable(db);
+            db.execSQL("INSERT INTO " + TABLE_CANDIDATES + "(" + COLUMN_NAME + ")"
+                    + " SELECT DISTINCT " + V1_COLUMN_CANDIDATE + " FROM " + TABLE_VOTES
+                    + " WHERE " + V1_COLUMN_CANDIDATE + " IS NOT NULL");
+            createVotesTable(db, "votes_v2");
+            db.execSQL("INSERT INTO votes_v2(" + COLUMN_STUDENT + ", " + COLUMN_CANDIDATE_ID + ")"
+                    + " SELECT v." + COLUMN_STUDENT + ", c." + COLUMN_ID
+                    + " FROM " + TABLE_VOTES + " v JOIN " + TABLE_CANDIDATES + " c"
+                    + " ON c." + COLUMN_NAME + " = v." + V1_COLUMN_CANDIDATE);
+            db.execSQL("DROP TABLE " + TABLE_VOTES);
+            db.execSQL("ALTER TABLE votes_v2 RENAME TO " + TABLE_VOTES);
+            createVotesIndex(db);
+        }
+        if (oldVersion < 3) {
+            createBallotTable(db);
+        }
+        if (oldVersion < 4) {
+            createMediaTable(db);
+        }
+        if (oldVersion < 5) {
+            addVoteIdColumn(db);
+        }
     }
 
-    public boolean addVote(String student, String candidate) {
+    private static void createCandidatesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_CANDIDATES + "("
+                + COLUMN_ID + " INTEGER PRIMARY KEY,"
+                + COLUMN_NAME + " TEXT NOT NULL UNIQUE)");
+    }
+
+    private static void createVotesTable(SQLiteDatabase db, String tableName) {
+        // WITHOUT ROWID keeps one copy of each row, clustered on the student key
+        db.execSQL("CREATE TABLE " + tableName + "("
+                + COLUMN_STUDENT + " TEXT PRIMARY KEY,"
+                + COLUMN_CANDIDATE_ID + " INTEGER NOT NULL REFERENCES " + TABLE_CANDIDATES + "(" + COLUMN_ID + ")"
+                + ") WITHOUT ROWID");
+    }
+
+    // Added by version 5, after the version 2 migration has rebuilt the table
+    private static void addVoteIdColumn(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_VOTES + " ADD COLUMN " + COLUMN_VOTE_ID + " INTEGER");
+    }
+
+    private static void createVotesIndex(SQLiteDatabase db) {
+        // Covers GROUP BY candidate_id counting without touching the table
+        db.execSQL("CREATE INDEX " + INDEX_VOTES_CANDIDATE + " ON " + TABLE_VOTES + "(" + COLUMN_CANDIDATE_ID + ")");
+    }
+
+    private static void createBallotTable(SQLiteDatabase db) {
+        // Position is null for candidates taken off the ballot, whose ids stay reserved
+        db.execSQL("CREATE TABLE " + TABLE_BALLOT + "("
+                + COLUMN_ID + " INTEGER PRIMARY KEY,"
+                + COLUMN_NAME + " TEXT NOT NULL,"
+                + COLUMN_POSITION + " INTEGER)");
+    }
+
+    private static void createMediaTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_MEDIA + "("
+                + COLUMN_NAME + " TEXT NOT NULL,"
+                + COLUMN_KIND + " INTEGER NOT NULL,"
+                + COLUMN_HASH + " TEXT NOT NULL,"
+                + "PRIMARY KEY(" + COLUMN_NAME + ", " + COLUMN_KIND + "))");
+    }
+
+    /**
+     * Opens the database, running any upgrade, and compiles the vote statements, so the first
+     * batch does not pay for either. Call off the main thread before votes can arrive.
+     */
+    public synchronized void prepare() {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_STUDENT, student);
-        values.put(COLUMN_CANDIDATE, candidate);
+        if (insertVoteStatement == null) {
+            compileInsertStatements(db);
+        }
+        if (countVoterStatement == null) {
+            compileCountVoterStatement(db);
+        }
+    }
+
+    private void compileInsertStatements(SQLiteDatabase db) {
+        insertVoteStatement = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_VOTES
+                + "(" + COLUMN_STUDENT + ", " + COLUMN_CANDIDATE_ID + ", " + COLUMN_VOTE_ID + ") VALUES (?, ?, ?)");
+        insertCandidateStatement = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_CANDIDATES
+                + "(" + COLUMN_NAME + ") VALUES (?)");
+        selectCandidateStatement = db.compileStatement("SELECT " + COLUMN_ID + " FROM " + TABLE_CANDIDATES
+                + " WHERE " + COLUMN_NAME + " = ?");
+    }
 
-        long result = db.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
-        return result != -1;
+    private void compileCountVoterStatement(SQLiteDatabase db) {
+        countVoterStatement = db.compileStatement("SELECT COUNT(*) FROM " + TABLE_VOTES
+                + " WHERE " + COLUMN_STUDENT + " = ?");
     }
 
-    public Cursor getAllVotes() {
+    @Override
+    public void insertBatch(List<Vote> votes, boolean[] accepted) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        if (insertVoteStatement == null) {
+            compileInsertStatements(db);
+        }
+
+        db.beginTransactionNonExclusive();
+        boolean committed = false;
+        try {
+            for (int i = 0; i < votes.size(); i++) {
+                Vote vote = votes.get(i);
+                insertVoteStatement.bindString(1, vote.student);
+                insertVoteStatement.bindLong(2, candidateId(vote.candidate));
+                if (vote.voteId == Vote.NO_ID) {
+                    insertVoteStatement.bindNull(3);
+                } else {
+                    insertVoteStatement.bindLong(3, vote.voteId);
+                }
+                // Row count is 0 when OR IGNORE skipped a duplicate student
+                accepted[i] = insertVoteStatement.executeUpdateDelete() == 1;
+            }
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            db.endTransaction();
+            if (!committed) {
+                // Ids assigned inside the rolled back transaction are gone
+                candidateIds.clear();
+            }
+        }
+    }
+
+    private long candidateId(String name) {
+        Long id = candidateIds.get(name);
+        if (id == null) {
+            insertCandidateStatement.bindString(1, name);
+            insertCandidateStatement.executeInsert();
+            selectCandidateStatement.bindString(1, name);
+            id = selectCandidateStatement.simpleQueryForLong();
+            candidateIds.put(name, id);
+        }
+        return id;
+    }
+
+    /** Votes per candidate, counted inside SQLite from the candidate index. */
+    @Override
+    public Map<String, Long> loadVoteCounts() {
         SQLiteDatabase db = this.getReadableDatabase();
-        return db.rawQuery("SELECT * FROM " + TABLE_NAME, null);
+        Map<String, Long> counts = new HashMap<>();
+        try (Cursor cursor = db.rawQuery("SELECT c." + COLUMN_NAME + ", t.votes FROM"
+                + " (SELECT " + COLUMN_CANDIDATE_ID + ", COUNT(*) AS votes FROM " + TABLE_VOTES
+                + " GROUP BY " + COLUMN_CANDIDATE_ID + ") t"
+                + " JOIN " + TABLE_CANDIDATES + " c ON c." + COLUMN_ID + " = t." + COLUMN_CANDIDATE_ID, null)) {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getString(0), cursor.getLong(1));
+            }
+        }
+        return counts;
+    }
+
+    /** Point lookups on the primary key; with WAL these read alongside a running fold. */
+    @Override
+    public synchronized void findVoters(List<Vote> votes, boolean[] found) {
+        if (countVoterStatement == null) {
+            compileCountVoterStatement(this.getWritableDatabase());
+        }
+        for (int i = 0; i < votes.size(); i++) {
+            countVoterStatement.bindString(1, votes.get(i).student);
+            found[i] = countVoterStatement.simpleQueryForLong() > 0;
+        }
+    }
+
+    /** The vote id stored with {@code student}'s vote, read off the primary key. */
+    @Override
+    public long findVoteId(String student) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT " + COLUMN_VOTE_ID + " FROM " + TABLE_VOTES
+                + " WHERE " + COLUMN_STUDENT + " = ?", new String[]{student})) {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return Vote.NO_ID;
+            }
+            return cursor.getLong(0);
+        }
+    }
+
+    /** Streams voters straight off the primary key so the index never holds the full list twice. */
+    @Override
+    public void forEachVoter(Consumer<String> voter) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT " + COLUMN_STUDENT + " FROM " + TABLE_VOTES, null)) {
+            while (cursor.moveToNext()) {
+                voter.accept(cursor.getString(0));
+            }
+        }
+    }
+
+    /**
+     * Replaces the saved ballot. Small enough to rewrite whole on every change.
+     *
+     * @param registered every name ever registered, in candidate id order
+     */
+    public synchronized void saveBallot(List<String> registered, CandidateRegistry.Snapshot ballot) {
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int position = 0; position < ballot.size(); position++) {
+            positions.put(ballot.idAt(position), position);
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try (SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_BALLOT
+                + "(" + COLUMN_ID + ", " + COLUMN_NAME + ", " + COLUMN_POSITION + ") VALUES (?, ?, ?)")) {
+            db.execSQL("DELETE FROM " + TABLE_BALLOT);
+            for (int id = 0; id < registered.size(); id++) {
+                insert.bindLong(1, id);
+                insert.bindString(2, registered.get(id));
+                Integer position = positions.get(id);
+                if (position == null) {
+                    insert.bindNull(3);
+                } else {
+                    insert.bindLong(3, position);
+                }
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** The ballot last saved by {@link #saveBallot}; empty if there is none. */
+    public SavedBallot loadBallot() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<String> registered = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT " + COLUMN_NAME + " FROM " + TABLE_BALLOT
+                + " ORDER BY " + COLUMN_ID, null)) {
+            while (cursor.moveToNext()) {
+                registered.add(cursor.getString(0));
+            }
+        }
+        List<Integer> ids = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + " FROM " + TABLE_BALLOT
+                + " WHERE " + COLUMN_POSITION + " IS NOT NULL ORDER BY " + COLUMN_POSITION, null)) {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        }
+        int[] ballotIds = new int[ids.size()];
+        for (int i = 0; i < ballotIds.length; i++) {
+            ballotIds[i] = ids.get(i);
+        }
+        return new SavedBallot(registered, ballotIds);
+    }
+
+    /** Records that {@code candidate}'s media of {@code kind} is the blob with {@code hash}. */
+    public synchronized void saveMedia(String candidate, int kind, String hash) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        try (SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_MEDIA
+                + "(" + COLUMN_NAME + ", " + COLUMN_KIND + ", " + COLUMN_HASH + ") VALUES (?, ?, ?)")) {
+            insert.bindString(1, candidate);
+            insert.bindLong(2, kind);
+            insert.bindString(3, hash);
+            insert.executeInsert();
+        }
+    }
+
+    /** Every attachment saved by {@link #saveMedia}. */
+    public List<SavedMedia> loadMedia() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<SavedMedia> media = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT " + COLUMN_NAME + ", " + COLUMN_KIND + ", " + COLUMN_HASH
+                + " FROM " + TABLE_MEDIA, null)) {
+            while (cursor.moveToNext()) {
+                media.add(new SavedMedia(cursor.getString(0), cursor.getInt(1), cursor.getString(2)));
+            }
+        }
+        return media;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (insertVoteStatement != null) {
+            insertVoteStatement.close();
+            insertCandidateStatement.close();
+            selectCandidateStatement.close();
+            insertVoteStatement = null;
+            insertCandidateStatement = null;
+            selectCandidateStatement = null;
+        }
+        if (countVoterStatement != null) {
+            countVoterStatement.close();
+            countVoterStatement = null;
+        }
+        candidateIds.clear();
+        super.close();
     }
 }
@@ -0,0 +1,83 @@
+package com.example.teacherapp;
+
+import com.example.votingcore.server.InMemoryVoteStore;
+import com.example.votingcore.server.VoteResult;
+import com.example.votingcore.server.VotingServer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DashboardModelTest {
+
+    private final List<Runnable> frames = new ArrayList<>();
+    private final List<DashboardState> published = new ArrayList<>();
+    private final DashboardModel model = new DashboardModel((frame, delay) -> frames.add(frame), published::add, 0);
+
+    @Test
+    public void coalescesABurstIntoOneFrame() {
+        for (int i = 0; i < 500; i++) {
+            model.onVote("student-" + i, "Ravi", i % 10 == 0 ? VoteResult.DUPLICATE : VoteResult.ACCEPTED);
+        }
+
+        assertEquals(1, frames.size());
+        frames.remove(0).run();
+
+        assertEquals(1, published.size());
+        DashboardState state = published.get(0);
+        assertEquals(450, state.accepted);
+        assertEquals(50, state.duplicates);
+        assertEquals("Vote received from student-499", state.status);
+    }
+
+    @Test
+    public void schedulesAgainAfterAFrameRuns() {
+        model.onVote("Asha", "Ravi", VoteResult.ACCEPTED);
+        frames.remove(0).run();
+        model.onVote("Dev", "Nobody", VoteResult.INVALID_CANDIDATE);
+
+        assertEquals(1, frames.size());
+        frames.remove(0).run();
+        assertEquals(1, published.get(1).invalid);
+    }
+
+    @Test
+    public void listsBallotThenRemovedCandidatesWithCounts() {
+        VotingServer server = new VotingServer(new InMemoryVoteStore(), model);
+        server.addCandidate("Ravi");
+        server.addCandidate("Meera");
+        server.getTally().add("Ravi", 3);
+        server.getTally().add("Kiran", 2);
+        model.bind(server);
+        frames.remove(0).run();
+
+        List<DashboardState.CandidateRow> rows = published.get(0).candidates;
+        assertEquals(3, rows.size());
+        assertEquals("Ravi", rows.get(0).name);
+        assertEquals(3, rows.get(0).votes);
+        assertEquals("Meera", rows.get(1).name);
+        assertEquals(0, rows.get(1).votes);
+        assertEquals("Kiran", rows.get(2).name);
+        assertFalse(rows.get(2).onBallot);
+    }
+
+    @Test
+    public void showsOnlyTheSelectedElection() throws Exception {
+        VotingServer server = new VotingServer(new InMemoryVoteStore(), model);
+        server.addCandidate("Ravi");
+        server.openElection(1, "House captain", new InMemoryVoteStore());
+        server.addCandidate(1, "Kiran");
+        server.getElection(1).getTally().add("Kiran", 4);
+        model.bind(server);
+        model.showElection(1);
+        frames.remove(0).run();
+
+        List<DashboardState.CandidateRow> rows = published.get(0).candidates;
+        assertEquals(1, rows.size());
+        assertEquals("Kiran", rows.get(0).name);
+        assertEquals(4, rows.get(0).votes);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.votingcore.benchmarks;
+
+import com.example.votingcore.server.CandidateRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Candidate validation with {@code candidates.contains}, as done for every incoming vote.
+ * Looks up the last candidate (worst case for a list) and a write-in that is not on the ballot,
+ * against the lists the apps used to keep and the {@link CandidateRegistry} that replaced them.
+ * The {@code *Ballots} methods validate every vote of {@code voters} students, one in ten of them a
+ * write-in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CandidateLookupBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int candidates;
+
+    @Param({"1000", "100000"})
+    public int voters;
+
+    private List<String> arrayList;
+    private List<String> copyOnWriteList;
+    private CandidateRegistry registry;
+    private String lastCandidate;
+    private String writeIn;
+    private String[] ballots;
+
+    @Setup
+    public void setUp() {
+        arrayList = new ArrayList<>();
+        for (int i = 0; i < candidates; i++) {
+            arrayList.add("Candidate " + i);
+        }
+        copyOnWriteList = new CopyOnWriteArrayList<>(arrayList);
+        registry = new CandidateRegistry();
+        for (String candidate : arrayList) {
+            registry.add(candidate);
+        }
+        // Fresh instances so equals() cannot short-circuit on identity
+        lastCandidate = new String("Candidate " + (candidates - 1));
+        writeIn = "Write-in";
+        ballots = new String[voters];
+        for (int i = 0; i < voters; i++) {
+            ballots[i] = i % 10 == 9 ? new String(writeIn) : new String("Candidate " + i % candidates);
+        }
+    }
+
+    @Benchmark
+    public boolean arrayListHit() {
+        return arrayList.contains(lastCandidate);
+    }
+
+    @Benchmark
+    public boolean arrayListMiss() {
+        return arrayList.contains(writeIn);
+    }
+
+    @Benchmark
+    public boolean copyOnWriteListHit() {
+        return copyOnWriteList.contains(lastCandidate);
+    }
+
+    @Benchmark
+    public int registryHit() {
+        return registry.snapshot().idOf(lastCandidate);
+    }
+
+    @Benchmark
+    public int registryMiss() {
+        return registry.snapshot().idOf(writeIn);
+    }
+
+    @Benchmark
+    public String registryById() {
+        return registry.snapshot().nameOf(candidates - 1);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int arrayListBallots() {
+        int valid = 0;
+        for (String ballot : ballots) {
+            if (arrayList.contains(ballot)) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int registryBallots() {
+        // One snapshot for the whole class; each vote is then a single hash lookup
+        CandidateRegistry.Snapshot snapshot = registry.snapshot();
+        int valid = 0;
+        for (String ballot : ballots) {
+            if (snapshot.idOf(ballot) != CandidateRegistry.NO_ID) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+}
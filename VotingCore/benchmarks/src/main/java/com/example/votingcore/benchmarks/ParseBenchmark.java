@@ -0,0 +1,91 @@
+package com.example.votingcore.benchmarks;
+
+import com.example.votingcore.protocol.FrameDecoder;
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.PayloadReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning received bytes into (student, candidate) pairs: the original text protocol parsed as
+ * {@code handleClient} used to, against the binary frame decoder. The messages are spread over
+ * {@code voters} students and {@code candidates} candidates, which sets how long the names are.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    private static final int VOTES = 100;
+
+    @Param({"4", "32"})
+    public int candidates;
+
+    @Param({"1000", "100000"})
+    public int voters;
+
+    private byte[][] textMessages;
+    private byte[] frameStream;
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final PayloadReader payload = new PayloadReader();
+
+    @Setup
+    public void setUp() throws IOException {
+        textMessages = new byte[VOTES][];
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (int i = 0; i < VOTES; i++) {
+            String student = "Student Number " + (long) i * voters / VOTES;
+            String candidate = "Candidate " + (i % candidates);
+            textMessages[i] = ("VOTE:" + student + "," + candidate).getBytes();
+            frames.write(Messages.vote(student, candidate));
+        }
+        frameStream = frames.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VOTES)
+    public void legacyText(Blackhole blackhole) {
+        for (byte[] buffer : textMessages) {
+            String message = new String(buffer, 0, buffer.length);
+            if (message.startsWith("VOTE:")) {
+                String[] parts = message.substring(5).split(",");
+                if (parts.length == 2) {
+                    blackhole.consume(parts[0].trim());
+                    blackhole.consume(parts[1].trim());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VOTES)
+    public void binaryFrames(Blackhole blackhole) throws IOException {
+        decoder.feed(frameStream, 0, frameStream.length, (type, buffer, offset, length) -> {
+            if (type == MessageType.VOTE) {
+                payload.reset(buffer, offset, length);
+                blackhole.consume(payload.readString());
+                blackhole.consume(payload.readString());
+            }
+        });
+    }
+}
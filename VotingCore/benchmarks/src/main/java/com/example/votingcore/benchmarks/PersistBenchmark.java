@@ -0,0 +1,139 @@
+package com.example.votingcore.benchmarks;
+
+import com.example.votingcore.server.Vote;
+import com.example.votingcore.server.VoteJournal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing a vote and rejecting repeats on the student primary key, using the same SQLite schema
+ * and statements as {@code VoteDatabaseHelper}: one autocommit insert per vote (the original
+ * {@code addVote}) against one transaction per batch ({@code insertBatch}), and the synced
+ * append of a batch to the memory-mapped {@link VoteJournal} that now acknowledges votes.
+ *
+ * <p>Students are drawn from a fixed pool of {@code voters}, so once the pool is used up every
+ * further insert is a duplicate, just like a class resending votes. The commit mode each method
+ * needs is set up per iteration, so only the inserts and commits are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistBenchmark {
+
+    private static final int BATCH = 64;
+
+    @Param({"1000", "10000"})
+    public int voters;
+
+    @Param({"4", "32"})
+    public int candidates;
+
+    private File file;
+    private Connection connection;
+    private PreparedStatement insert;
+    private int next;
+    private File journalFile;
+    private VoteJournal journal;
+    private final List<Vote> batch = new ArrayList<>(BATCH);
+
+    @Setup(Level.Iteration)
+    public void setUp(BenchmarkParams params) throws Exception {
+        file = File.createTempFile("votes", ".db");
+        connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("CREATE TABLE candidates(id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)");
+            statement.execute("CREATE TABLE votes(student TEXT PRIMARY KEY,"
+                    + " candidate_id INTEGER NOT NULL REFERENCES candidates(id)) WITHOUT ROWID");
+            statement.execute("CREATE INDEX idx_votes_candidate ON votes(candidate_id)");
+            for (int i = 0; i < candidates; i++) {
+                statement.execute("INSERT INTO candidates(name) VALUES ('Candidate " + i + "')");
+            }
+        }
+        insert = connection.prepareStatement("INSERT OR IGNORE INTO votes(student, candidate_id) VALUES (?, ?)");
+        connection.setAutoCommit(!params.getBenchmark().endsWith(".groupCommit"));
+        next = 0;
+        journalFile = File.createTempFile("votes", ".journal");
+        journal = new VoteJournal(journalFile, VoteJournal.DEFAULT_CAPACITY);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        insert.close();
+        connection.close();
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+        file.delete();
+        journal.close();
+        journalFile.delete();
+    }
+
+    private boolean insertOne() throws SQLException {
+        int student = next++ % voters;
+        insert.setString(1, "student-" + student);
+        insert.setInt(2, 1 + student % candidates);
+        return insert.executeUpdate() == 1;
+    }
+
+    @Benchmark
+    public boolean autocommitPerVote() throws SQLException {
+        return insertOne();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int groupCommit() throws SQLException {
+        int accepted = 0;
+        for (int i = 0; i < BATCH; i++) {
+            if (insertOne()) {
+                accepted++;
+            }
+        }
+        connection.commit();
+        return accepted;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int journalAppend() {
+        batch.clear();
+        for (int i = 0; i < BATCH; i++) {
+            int student = next++ % voters;
+            batch.add(new Vote("student-" + student, "Candidate " + student % candidates));
+        }
+        if (!journal.append(batch)) {
+            // The compactor would have folded and reset it by now
+            journal.reset();
+            journal.append(batch);
+        }
+        journal.sync();
+        return journal.size();
+    }
+}
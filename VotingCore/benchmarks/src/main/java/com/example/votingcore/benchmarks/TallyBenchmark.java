@@ -0,0 +1,82 @@
+package com.example.votingcore.benchmarks;
+
+import com.example.votingcore.server.VoteTally;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producing results: the original {@code showResults} walk over every vote row into a fresh
+ * HashMap, against reading a {@link VoteTally} snapshot, plus the cost of recording a vote in the
+ * tally from several client threads at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TallyBenchmark {
+
+    @Param({"4", "32"})
+    public int candidates;
+
+    @Param({"1000", "100000"})
+    public int voters;
+
+    /** Stand-in for the rows a Cursor over the votes table would return. */
+    private String[][] rows;
+    private VoteTally tally;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        names = new String[candidates];
+        for (int i = 0; i < candidates; i++) {
+            names[i] = "Candidate " + i;
+        }
+        rows = new String[voters][];
+        tally = new VoteTally();
+        for (int i = 0; i < voters; i++) {
+            String candidate = names[i % candidates];
+            rows[i] = new String[]{"student-" + i, candidate};
+            tally.increment(candidate);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Integer> legacyFullScan() {
+        HashMap<String, Integer> voteCounts = new HashMap<>();
+        for (String[] row : rows) {
+            String candidate = row[1];
+            voteCounts.put(candidate, voteCounts.getOrDefault(candidate, 0) + 1);
+        }
+        return voteCounts;
+    }
+
+    @Benchmark
+    public Map<String, Long> tallySnapshot() {
+        return tally.snapshot();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void tallyIncrementContended() {
+        tally.increment(names[0]);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.votingcore.loadgen;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Matches each {@code VOTE_ACK} a device reads to the send time of the vote with the same id and
+ * records the difference.
+ */
+class LatencyRecorder {
+
+    private final ConcurrentHashMap<Long, Long> inFlight = new ConcurrentHashMap<>();
+    private final long[] latenciesNanos;
+    private final AtomicInteger recorded = new AtomicInteger();
+    private final CountDownLatch completed;
+    private volatile long lastAnswerNanos;
+
+    LatencyRecorder(int expectedVotes) {
+        latenciesNanos = new long[expectedVotes];
+        completed = new CountDownLatch(expectedVotes);
+    }
+
+    void sent(long voteId) {
+        inFlight.put(voteId, System.nanoTime());
+    }
+
+    void answered(long voteId) {
+        long now = System.nanoTime();
+        Long sentAt = inFlight.remove(voteId);
+        if (sentAt != null) {
+            int index = recorded.getAndIncrement();
+            if (index < latenciesNanos.length) {
+                latenciesNanos[index] = now - sentAt;
+            }
+        }
+        lastAnswerNanos = now;
+        completed.countDown();
+    }
+
+    long lastAnswerNanos() {
+        return lastAnswerNanos;
+    }
+
+    /** Waits until the vote with {@code voteId} has been answered. */
+    void awaitAnswered(long voteId) throws InterruptedException {
+        while (inFlight.containsKey(voteId)) {
+            Thread.sleep(1);
+        }
+    }
+
+    boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        return completed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void awaitCompletion() throws InterruptedException {
+        completed.await();
+    }
+
+    int answeredCount() {
+        return Math.min(recorded.get(), latenciesNanos.length);
+    }
+
+    /** Returns the given percentile (0-100) in microseconds. */
+    long percentileMicros(double percentile) {
+        int count = answeredCount();
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latenciesNanos, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, Math.min(index, count - 1))]);
+    }
+}
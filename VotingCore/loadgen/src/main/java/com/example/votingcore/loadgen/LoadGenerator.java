@@ -0,0 +1,171 @@
+package com.example.votingcore.loadgen;
+
+import com.example.votingcore.server.InMemoryVoteStore;
+import com.example.votingcore.server.VoteResult;
+import com.example.votingcore.server.VotingServer;
+import com.example.votingcore.server.transport.TcpServerTransport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates a class or school voting at once against a {@link VotingServer} running in this JVM
+ * over loopback TCP, and reports throughput, accept latency and whether every duplicate and
+ * invalid vote was caught.
+ *
+ * <pre>
+ * gradle :loadgen:run --args="--students 5000 --devices 60 --duplicates 0.2"
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private final LoadProfile profile;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public LoadGenerator(LoadProfile profile) {
+        this.profile = profile;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile = LoadProfile.parse(args);
+        System.out.println("Profile: " + profile);
+        LoadReport report = new LoadGenerator(profile).run();
+        System.out.println(report);
+        System.exit(report.isCorrect() ? 0 : 1);
+    }
+
+    public LoadReport run() throws Exception {
+        List<String> candidates = new ArrayList<>();
+        for (int i = 0; i < profile.candidates; i++) {
+            candidates.add("Candidate " + i);
+        }
+
+        Random random = new Random(profile.seed);
+        List<List<SimulatedDevice.Ballot>> perDevice = new ArrayList<>();
+        for (int i = 0; i < profile.devices; i++) {
+            perDevice.add(new ArrayList<>());
+        }
+        Map<String, Long> expectedTally = new HashMap<>();
+        long expectedAccepted = 0;
+        long expectedDuplicates = 0;
+        long expectedInvalid = 0;
+        long nextVoteId = 1;
+
+        for (int s = 0; s < profile.students; s++) {
+            String student = "student-" + s;
+            List<SimulatedDevice.Ballot> device = perDevice.get(s % profile.devices);
+            boolean slow = random.nextDouble() < profile.slowFraction;
+            boolean reconnect = random.nextDouble() < profile.reconnectFraction;
+            // Candidates get ids in the order they are added to the server below
+            int candidateId;
+            if (random.nextDouble() < profile.invalidFraction) {
+                // The next id, which nobody registered
+                candidateId = candidates.size();
+                expectedInvalid++;
+            } else {
+                candidateId = random.nextInt(candidates.size());
+                String candidate = candidates.get(candidateId);
+                Long count = expectedTally.get(candidate);
+                expectedTally.put(candidate, count == null ? 1 : count + 1);
+                expectedAccepted++;
+            }
+            device.add(new SimulatedDevice.Ballot(nextVoteId++, student, candidateId, slow, reconnect));
+            if (random.nextDouble() < profile.duplicateFraction) {
+                // A second vote, under its own id, for the same candidate so the expected tally does
+                // not depend on arrival order
+                device.add(new SimulatedDevice.Ballot(nextVoteId++, student, candidateId, false, false));
+                if (candidateId == candidates.size()) {
+                    expectedInvalid++;
+                } else {
+                    expectedDuplicates++;
+                }
+            }
+        }
+
+        int totalVotes = 0;
+        for (List<SimulatedDevice.Ballot> ballots : perDevice) {
+            totalVotes += ballots.size();
+        }
+        LatencyRecorder recorder = new LatencyRecorder(totalVotes);
+
+        VotingServer server = new VotingServer(new InMemoryVoteStore(), new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+                if (result == VoteResult.ACCEPTED) {
+                    accepted.incrementAndGet();
+                } else if (result == VoteResult.DUPLICATE) {
+                    duplicates.incrementAndGet();
+                } else {
+                    invalid.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                errors.incrementAndGet();
+            }
+        }, profile.serverMaxClients, VotingServer.DEFAULT_IDLE_TIMEOUT_MS, VotingServer.DEFAULT_BATCH_SIZE,
+                VotingServer.DEFAULT_BATCH_DELAY_MS);
+        for (String candidate : candidates) {
+            server.addCandidate(candidate);
+        }
+        if (profile.receipts) {
+            server.enableReceipts();
+        }
+        TcpServerTransport transport = new TcpServerTransport(0);
+        server.start(transport);
+
+        ExecutorService executor = Executors.newFixedThreadPool(profile.devices);
+        List<SimulatedDevice> devices = new ArrayList<>();
+        long start = System.nanoTime();
+        for (List<SimulatedDevice.Ballot> ballots : perDevice) {
+            SimulatedDevice device = new SimulatedDevice(transport.getPort(), ballots, recorder);
+            devices.add(device);
+            executor.execute(device);
+        }
+        boolean finished = recorder.awaitCompletion(profile.timeoutMillis);
+        long elapsedNanos = recorder.lastAnswerNanos() - start;
+
+        // Devices still waiting after a timeout are interrupted, not counted as failures
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        server.stop();
+
+        int deviceFailures = 0;
+        for (SimulatedDevice device : devices) {
+            if (device.getFailure() != null && !(device.getFailure() instanceof InterruptedException)) {
+                deviceFailures++;
+            }
+        }
+
+        LoadReport report = new LoadReport();
+        report.finished = finished;
+        report.votesSent = totalVotes;
+        report.votesAnswered = recorder.answeredCount();
+        report.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        report.votesPerSecond = elapsedNanos > 0 ? recorder.answeredCount() * 1e9 / elapsedNanos : 0;
+        report.p50Micros = recorder.percentileMicros(50);
+        report.p99Micros = recorder.percentileMicros(99);
+        report.maxMicros = recorder.percentileMicros(100);
+        report.accepted = accepted.get();
+        report.expectedAccepted = expectedAccepted;
+        report.duplicates = duplicates.get();
+        report.expectedDuplicates = expectedDuplicates;
+        report.invalid = invalid.get();
+        report.expectedInvalid = expectedInvalid;
+        report.serverErrors = errors.get();
+        report.deviceFailures = deviceFailures;
+        report.tallyMatches = expectedTally.equals(server.getResults());
+        return report;
+    }
+}
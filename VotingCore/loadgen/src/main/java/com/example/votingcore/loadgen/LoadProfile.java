@@ -0,0 +1,84 @@
+package com.example.votingcore.loadgen;
+
+/**
+ * Shape of a simulated election. Fractions are of the student population and are applied
+ * deterministically from {@link #seed}, so a run can be repeated exactly.
+ */
+public class LoadProfile {
+
+    public int students = 2000;
+    /** Student devices connected at once; students are spread across them. */
+    public int devices = 40;
+    public int candidates = 4;
+    /** Students whose device trickles each frame out a few bytes at a time. */
+    public double slowFraction = 0.05;
+    /** Students who open a fresh connection for their vote, as sendVote does after a drop. */
+    public double reconnectFraction = 0.10;
+    /** Students who send their vote a second time. */
+    public double duplicateFraction = 0.10;
+    /** Students who vote for a name that is not on the ballot. */
+    public double invalidFraction = 0.02;
+    /** Connection limit of the server under test; rejected connections lose their votes. */
+    public int serverMaxClients = 4096;
+    /** Whether the server builds Merkle receipts for every committed batch. */
+    public boolean receipts = false;
+    public long seed = 42;
+    public long timeoutMillis = 60_000;
+
+    public static LoadProfile parse(String[] args) {
+        LoadProfile profile = new LoadProfile();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--students":
+                    profile.students = Integer.parseInt(value);
+                    break;
+                case "--devices":
+                    profile.devices = Integer.parseInt(value);
+                    break;
+                case "--candidates":
+                    profile.candidates = Integer.parseInt(value);
+                    break;
+                case "--slow":
+                    profile.slowFraction = Double.parseDouble(value);
+                    break;
+                case "--reconnect":
+                    profile.reconnectFraction = Double.parseDouble(value);
+                    break;
+                case "--duplicates":
+                    profile.duplicateFraction = Double.parseDouble(value);
+                    break;
+                case "--invalid":
+                    profile.invalidFraction = Double.parseDouble(value);
+                    break;
+                case "--server-max-clients":
+                    profile.serverMaxClients = Integer.parseInt(value);
+                    break;
+                case "--receipts":
+                    profile.receipts = Boolean.parseBoolean(value);
+                    break;
+                case "--seed":
+                    profile.seed = Long.parseLong(value);
+                    break;
+                case "--timeout-ms":
+                    profile.timeoutMillis = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        return profile;
+    }
+
+    @Override
+    public String toString() {
+        return students + " students on " + devices + " devices, " + candidates + " candidates"
+                + " (slow " + slowFraction + ", reconnect " + reconnectFraction
+                + ", duplicate " + duplicateFraction + ", invalid " + invalidFraction + ")"
+                + (receipts ? " with receipts" : "");
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.votingcore.loadgen;
+
+/**
+ * Outcome of one {@link LoadGenerator} run.
+ */
+public class LoadReport {
+
+    public boolean finished;
+    public int votesSent;
+    public int votesAnswered;
+    public long elapsedMillis;
+    public double votesPerSecond;
+    public long p50Micros;
+    public long p99Micros;
+    public long maxMicros;
+    public long accepted;
+    public long expectedAccepted;
+    public long duplicates;
+    public long expectedDuplicates;
+    public long invalid;
+    public long expectedInvalid;
+    public long serverErrors;
+    public int deviceFailures;
+    public boolean tallyMatches;
+
+    /** True when every vote was answered and classified exactly as expected. */
+    public boolean isCorrect() {
+        return finished
+                && accepted == expectedAccepted
+                && duplicates == expectedDuplicates
+                && invalid == expectedInvalid
+                && tallyMatches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "Votes answered:   %d / %d in %d ms%n"
+                        + "Throughput:       %.0f votes/s%n"
+                        + "Accept latency:   p50 %.2f ms, p99 %.2f ms, max %.2f ms%n"
+                        + "Accepted:         %d (expected %d)%n"
+                        + "Duplicates:       %d (expected %d)%n"
+                        + "Invalid:          %d (expected %d)%n"
+                        + "Tally matches:    %s%n"
+                        + "Errors:           %d server, %d device%n"
+                        + "Result:           %s",
+                votesAnswered, votesSent, elapsedMillis,
+                votesPerSecond,
+                p50Micros / 1000.0, p99Micros / 1000.0, maxMicros / 1000.0,
+                accepted, expectedAccepted,
+                duplicates, expectedDuplicates,
+                invalid, expectedInvalid,
+                tallyMatches,
+                serverErrors, deviceFailures,
+                isCorrect() ? "PASS" : "FAIL");
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.votingcore.loadgen;
+
+import com.example.votingcore.protocol.FrameDecoder;
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.PayloadReader;
+import com.example.votingcore.server.Election;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * One student device. Like StudentApp it keeps a socket open, sends each vote as a
+ * {@code VOTE_REQUEST} carrying its vote id and flushes, and only reconnects when told to. A vote
+ * is answered when the device reads its {@code VOTE_ACK}.
+ */
+class SimulatedDevice implements Runnable {
+
+    /** One vote to cast, prepared up front so the hot loop only writes bytes. */
+    static final class Ballot {
+        final long voteId;
+        final byte[] frame;
+        final boolean slow;
+        final boolean reconnect;
+
+        Ballot(long voteId, String student, int candidateId, boolean slow, boolean reconnect) {
+            this.voteId = voteId;
+            this.frame = Messages.voteRequest(voteId, student, Election.DEFAULT_ID, candidateId);
+            this.slow = slow;
+            this.reconnect = reconnect;
+        }
+    }
+
+    private final int port;
+    private final List<Ballot> ballots;
+    private final LatencyRecorder recorder;
+    private volatile Exception failure;
+
+    SimulatedDevice(int port, List<Ballot> ballots, LatencyRecorder recorder) {
+        this.port = port;
+        this.ballots = ballots;
+        this.recorder = recorder;
+    }
+
+    Exception getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void run() {
+        Socket socket = null;
+        long lastVoteId = 0;
+        try {
+            for (Ballot ballot : ballots) {
+                if (socket == null || ballot.reconnect) {
+                    if (socket != null) {
+                        // The link drops after the previous vote was acknowledged, not mid-frame
+                        recorder.awaitAnswered(lastVoteId);
+                    }
+                    close(socket);
+                    socket = connect();
+                }
+                OutputStream out = socket.getOutputStream();
+                recorder.sent(ballot.voteId);
+                if (ballot.slow) {
+                    // Trickle the frame out so the server sees it split across many reads
+                    for (int i = 0; i < ballot.frame.length; i += 3) {
+                        out.write(ballot.frame, i, Math.min(3, ballot.frame.length - i));
+                        out.flush();
+                        Thread.sleep(2);
+                    }
+                } else {
+                    out.write(ballot.frame);
+                    out.flush();
+                }
+                lastVoteId = ballot.voteId;
+            }
+            // Stay connected until the server has answered everything this device sent
+            recorder.awaitCompletion();
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            close(socket);
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        // Reads acks, and drains everything else so the server never blocks writing to us
+        InputStream in = socket.getInputStream();
+        Thread reader = new Thread(() -> {
+            FrameDecoder decoder = new FrameDecoder();
+            PayloadReader payload = new PayloadReader();
+            FrameDecoder.Listener frames = (type, buffer, offset, length) -> {
+                if (type == MessageType.VOTE_ACK) {
+                    long voteId = payload.reset(buffer, offset, length).readLong();
+                    // A vote told to retry stays unanswered and the run times out
+                    if (payload.readUnsignedByte() != MessageType.ACK_RETRY) {
+                        recorder.answered(voteId);
+                    }
+                }
+            };
+            try {
+                while (decoder.readFrom(in, frames) != -1) {
+                    // Frames are dispatched as they complete
+                }
+            } catch (IOException e) {
+                // Socket closed
+            }
+        }, "loadgen-reader");
+        reader.setDaemon(true);
+        reader.start();
+        return socket;
+    }
+
+    private static void close(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.votingcore.loadgen;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void smallClassVotesCorrectly() throws Exception {
+        LoadProfile profile = new LoadProfile();
+        profile.students = 300;
+        profile.devices = 12;
+        profile.duplicateFraction = 0.2;
+        profile.invalidFraction = 0.05;
+        profile.timeoutMillis = 20_000;
+
+        LoadReport report = new LoadGenerator(profile).run();
+
+        assertTrue(report.toString(), report.isCorrect());
+        // Every vote's latency is timed from the ack its device read
+        assertEquals(report.votesSent, report.votesAnswered);
+        assertTrue(report.expectedDuplicates > 0);
+        assertTrue(report.expectedInvalid > 0);
+    }
+}
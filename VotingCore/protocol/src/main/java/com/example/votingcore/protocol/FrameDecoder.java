@@ -0,0 +1,105 @@
+package com.example.votingcore.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Re-assembles frames from a byte stream. One decoder is kept per connection and reused for its
+ * whole lifetime; decoding itself does not allocate.
+ *
+ * <p>Listeners receive a view into the decoder's internal buffer which is only valid for the
+ * duration of the callback.
+ */
+public final class FrameDecoder {
+
+    public interface Listener {
+        void onFrame(int type, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final byte[] buffer;
+    private int start;
+    private int end;
+
+    public FrameDecoder() {
+        this(Frames.HEADER_SIZE + Frames.MAX_PAYLOAD_SIZE);
+    }
+
+    public FrameDecoder(int capacity) {
+        if (capacity <= Frames.HEADER_SIZE) {
+            throw new IllegalArgumentException("Capacity too small: " + capacity);
+        }
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * Performs one blocking read from {@code in} directly into the decoder buffer and dispatches
+     * every frame that became complete.
+     *
+     * @return the number of bytes read, or -1 at end of stream
+     */
+    public int readFrom(InputStream in, Listener listener) throws IOException {
+        makeRoom();
+        int bytes = in.read(buffer, end, buffer.length - end);
+        if (bytes < 0) {
+            return -1;
+        }
+        end += bytes;
+        drain(listener);
+        return bytes;
+    }
+
+    /** Feeds bytes obtained elsewhere and dispatches every frame that became complete. */
+    public void feed(byte[] src, int offset, int length, Listener listener) throws IOException {
+        while (length > 0) {
+            makeRoom();
+            int n = Math.min(length, buffer.length - end);
+            System.arraycopy(src, offset, buffer, end, n);
+            end += n;
+            offset += n;
+            length -= n;
+            drain(listener);
+        }
+    }
+
+    /** Number of buffered bytes belonging to a frame that has not fully arrived yet. */
+    public int pending() {
+        return end - start;
+    }
+
+    public void reset() {
+        start = 0;
+        end = 0;
+    }
+
+    private void makeRoom() {
+        if (end == buffer.length && start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+    }
+
+    private void drain(Listener listener) throws IOException {
+        while (end - start >= Frames.HEADER_SIZE) {
+            int version = buffer[start] & 0xFF;
+            if (version != Frames.VERSION) {
+                throw new ProtocolException("Unsupported protocol version " + version);
+            }
+            int type = buffer[start + 1] & 0xFF;
+            int length = ((buffer[start + 2] & 0xFF) << 8) | (buffer[start + 3] & 0xFF);
+            if (Frames.HEADER_SIZE + length > buffer.length) {
+                throw new ProtocolException("Frame of " + length + " bytes exceeds decoder capacity");
+            }
+            if (end - start < Frames.HEADER_SIZE + length) {
+                break;
+            }
+            int payloadOffset = start + Frames.HEADER_SIZE;
+            start = payloadOffset + length;
+            listener.onFrame(type, buffer, payloadOffset, length);
+        }
+        if (start == end) {
+            start = 0;
+            end = 0;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.votingcore.protocol;
+
+/**
+ * Wire layout of a single protocol frame.
+ *
+ * <pre>
+ * +---------+------+----------------+-----------------+
+ * | version | type | length (u16BE) | payload         |
+ * | 1 byte  | 1 b  | 2 bytes        | length bytes    |
+ * +---------+------+----------------+-----------------+
+ * </pre>
+ *
+ * RFCOMM is a byte stream, so a single {@code read} may return part of a frame or several
+ * frames at once. The explicit length lets {@link FrameDecoder} re-assemble them.
+ */
+public final class Frames {
+
+    /**
+     * 2: candidate lists and deltas carry candidate ids.
+     * 3: candidate lists, deltas, syncs and vote requests name their election.
+     */
+    public static final int VERSION = 3;
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_PAYLOAD_SIZE = 0xFFFF;
+
+    private Frames() {
+    }
+
+    /** Writes a frame header for {@code payloadLength} bytes at {@code offset}. */
+    public static void writeHeader(byte[] buffer, int offset, int type, int payloadLength) {
+        if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Payload too large: " + payloadLength);
+        }
+        buffer[offset] = (byte) VERSION;
+        buffer[offset + 1] = (byte) type;
+        buffer[offset + 2] = (byte) (payloadLength >>> 8);
+        buffer[offset + 3] = (byte) payloadLength;
+    }
+
+    /** Returns a complete frame wrapping a copy of the given payload bytes. */
+    public static byte[] encode(int type, byte[] payload, int offset, int length) {
+        byte[] frame = new byte[HEADER_SIZE + length];
+        writeHeader(frame, 0, type, length);
+        System.arraycopy(payload, offset, frame, HEADER_SIZE, length);
+        return frame;
+    }
+}
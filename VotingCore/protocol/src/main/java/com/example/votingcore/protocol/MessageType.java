@@ -0,0 +1,135 @@
+package com.example.votingcore.protocol;
+
+/**
+ * Frame type codes. Values are part of the wire format and must never be reused.
+ */
+public final class MessageType {
+
+    /** Student to teacher: {@code string student, string candidate}, in the default election. */
+    public static final int VOTE = 1;
+    /**
+     * Teacher to student: {@code u16 electionId, string title, u32 version, u16 count,
+     * (u16 id, string candidate) * count}. Sent for every open election on connect, and for a
+     * new election when it opens.
+     */
+    public static final int CANDIDATES = 2;
+    /** Teacher to student: {@code string results}. */
+    public static final int RESULTS = 3;
+    /**
+     * Teacher to student: {@code u16 electionId, u32 version, u8 op, u16 id, string candidate}.
+     * Applies on top of {@code version - 1} of that election's ballot; {@code op} is
+     * {@link #DELTA_ADD} or {@link #DELTA_REMOVE}.
+     */
+    public static final int CANDIDATE_DELTA = 4;
+    /**
+     * Student to teacher: {@code u16 electionId, u32 knownVersion}. Asks for a fresh
+     * {@link #CANDIDATES} snapshot of one election.
+     */
+    public static final int SYNC_CANDIDATES = 5;
+    /**
+     * Student to teacher: {@code string student, u16 candidateId}, using an id from the default
+     * election's {@link #CANDIDATES}.
+     */
+    public static final int VOTE_BY_ID = 6;
+    /**
+     * Student to teacher: {@code u64 voteId, string student, u16 electionId, u16 candidateId}. Answered with a
+     * {@link #VOTE_ACK}. {@code voteId} is chosen by the student and stays the same across retries,
+     * so a redelivered request gets the original answer instead of being counted again.
+     */
+    public static final int VOTE_REQUEST = 7;
+    /** Teacher to student: {@code u64 voteId, u8 status}, one of the {@code ACK_*} codes. */
+    public static final int VOTE_ACK = 8;
+
+    /**
+     * Student to teacher: {@code u16 count, (u64 voteId, string student, u16 electionId,
+     * u16 candidateId) * count}. Several {@link #VOTE_REQUEST}s committed in one transaction per
+     * election and answered with one {@link #VOTE_BATCH_ACK}; a student may have several batches
+     * in flight.
+     */
+    public static final int VOTE_BATCH = 9;
+    /** Teacher to student: {@code u16 count, (u64 voteId, u8 status) * count}, in request order. */
+    public static final int VOTE_BATCH_ACK = 10;
+
+    /** Student to teacher, empty. Sent while otherwise idle; answered with {@link #PONG}. */
+    public static final int PING = 11;
+    /** Teacher to student, empty. */
+    public static final int PONG = 12;
+
+    /**
+     * Teacher to teacher: changes to the sharded tally since the sender's last sync, in the layout
+     * documented on {@code ShardTally.Delta} in the server module, ending in a MAC under a key the
+     * teachers share. Not answered; a delta without a valid MAC closes the connection.
+     */
+    public static final int SHARD_DELTA = 13;
+
+    /** Teacher to student: {@code u16 electionId}. The election no longer takes votes. */
+    public static final int ELECTION_CLOSED = 14;
+
+    /**
+     * Student to teacher: {@code u16 electionId, u32 stream, u32 knownVersion}. Asks for live
+     * results of one election. A client that still holds version {@code knownVersion} of
+     * {@code stream} gets only the {@link #TALLY_DELTA}s after it when the teacher still has them;
+     * otherwise, or with stream 0, it gets a {@link #TALLY_SNAPSHOT} first.
+     */
+    public static final int SUBSCRIBE_TALLY = 15;
+    /**
+     * Teacher to student: {@code u16 electionId, u32 stream, u32 version, u16 count,
+     * (string candidate, u64 votes) * count}. Every candidate's count. {@code stream} changes when
+     * the teacher restarts, and versions only compare within one stream.
+     */
+    public static final int TALLY_SNAPSHOT = 16;
+    /**
+     * Teacher to student: same layout as {@link #TALLY_SNAPSHOT}, but only the candidates whose
+     * count changed, with their new totals. Applies on top of {@code version - 1}.
+     */
+    public static final int TALLY_DELTA = 17;
+
+    /**
+     * Teacher to student: {@code u16 electionId, u16 count, (u16 candidateId, u8 kind,
+     * byte[32] sha256, u32 size) * count}. The photos and manifestos of one election's candidates,
+     * by content hash; sent after its {@link #CANDIDATES} and whenever they change. The content
+     * itself only travels on request, see {@link #FETCH_BLOB}.
+     */
+    public static final int MEDIA_INDEX = 18;
+    /**
+     * Student to teacher: {@code byte[32] sha256, u32 offset}. Asks for a blob from
+     * {@code offset} on, so an interrupted download resumes where it stopped. Answered with
+     * {@link #BLOB_CHUNK}s, paced so they never hold up votes.
+     */
+    public static final int FETCH_BLOB = 19;
+    /**
+     * Teacher to student: {@code byte[32] sha256, u32 size, u32 offset, u16 length,
+     * byte[length] data}. A {@code size} of 0 means the teacher does not have the blob.
+     */
+    public static final int BLOB_CHUNK = 20;
+    /**
+     * Teacher to student: {@code u64 voteId, u32 batch, u32 leafIndex, u32 leafCount,
+     * byte[32] previousChain, u8 depth, byte[32] * depth}. Proves an accepted
+     * {@link #VOTE_REQUEST} or {@link #VOTE_BATCH} entry was counted in receipt batch
+     * {@code batch}; checked with {@link VoteReceipts}. Built after the commit, so it may arrive
+     * after the ack.
+     */
+    public static final int VOTE_RECEIPT = 21;
+
+    /** {@link #CANDIDATE_DELTA} operations. */
+    public static final int DELTA_ADD = 1;
+    public static final int DELTA_REMOVE = 2;
+
+    /** {@link #MEDIA_INDEX} kinds. A manifesto is UTF-8 text. */
+    public static final int MEDIA_PHOTO = 1;
+    public static final int MEDIA_MANIFESTO = 2;
+
+    /** {@link #VOTE_ACK} and {@link #VOTE_BATCH_ACK} statuses. All but {@link #ACK_RETRY} are final. */
+    public static final int ACK_ACCEPTED = 1;
+    public static final int ACK_DUPLICATE = 2;
+    public static final int ACK_INVALID_CANDIDATE = 3;
+    /**
+     * The teacher could not store the vote right now, is too busy, or the student is over its rate
+     * limit; send the same request again later.
+     */
+    public static final int ACK_RETRY = 4;
+    public static final int ACK_ELECTION_CLOSED = 5;
+
+    private MessageType() {
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.votingcore.protocol;
+
+import java.util.List;
+
+/**
+ * Encoders for the messages exchanged between TeacherApp and StudentApp.
+ */
+public final class Messages {
+
+    /** Bytes in the SHA-256 content hashes that name media blobs. */
+    public static final int HASH_SIZE = 32;
+
+    private Messages() {
+    }
+
+    public static byte[] vote(String student, String candidate) {
+        return new PayloadWriter()
+                .writeString(student)
+                .writeString(candidate)
+                .toFrame(MessageType.VOTE);
+    }
+
+    public static byte[] voteById(String student, int candidateId) {
+        return new PayloadWriter()
+                .writeString(student)
+                .writeShort(candidateId)
+                .toFrame(MessageType.VOTE_BY_ID);
+    }
+
+    public static byte[] voteRequest(long voteId, String student, int electionId, int candidateId) {
+        return new PayloadWriter()
+                .writeLong(voteId)
+                .writeString(student)
+                .writeShort(electionId)
+                .writeShort(candidateId)
+                .toFrame(MessageType.VOTE_REQUEST);
+    }
+
+    public static byte[] voteAck(long voteId, int status) {
+        return new PayloadWriter(9)
+                .writeLong(voteId)
+                .writeByte(status)
+                .toFrame(MessageType.VOTE_ACK);
+    }
+
+    /** Entry {@code i} of each array describes the same vote. */
+    public static byte[] voteBatch(long[] voteIds, String[] students, int[] electionIds, int[] candidateIds) {
+        PayloadWriter writer = new PayloadWriter(2 + voteIds.length * 30);
+        writer.writeShort(voteIds.length);
+        for (int i = 0; i < voteIds.length; i++) {
+            writer.writeLong(voteIds[i]);
+            writer.writeString(students[i]);
+            writer.writeShort(electionIds[i]);
+            writer.writeShort(candidateIds[i]);
+        }
+        return writer.toFrame(MessageType.VOTE_BATCH);
+    }
+
+    public static byte[] voteBatchAck(long[] voteIds, int[] statuses) {
+        PayloadWriter writer = new PayloadWriter(2 + voteIds.length * 9);
+        writer.writeShort(voteIds.length);
+        for (int i = 0; i < voteIds.length; i++) {
+            writer.writeLong(voteIds[i]);
+            writer.writeByte(statuses[i]);
+        }
+        return writer.toFrame(MessageType.VOTE_BATCH_ACK);
+    }
+
+    public static byte[] electionClosed(int electionId) {
+        return new PayloadWriter(2)
+                .writeShort(electionId)
+                .toFrame(MessageType.ELECTION_CLOSED);
+    }
+
+    public static byte[] ping() {
+        return new PayloadWriter(0).toFrame(MessageType.PING);
+    }
+
+    public static byte[] pong() {
+        return new PayloadWriter(0).toFrame(MessageType.PONG);
+    }
+
+    /** {@code ids.get(i)} is the id of {@code candidates.get(i)}. */
+    public static byte[] candidates(int electionId, String title, int version, List<Integer> ids,
+                                    List<String> candidates) {
+        PayloadWriter writer = new PayloadWriter(10 + title.length() + candidates.size() * 18);
+        writer.writeShort(electionId);
+        writer.writeString(title);
+        writer.writeInt(version);
+        writer.writeShort(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            writer.writeShort(ids.get(i));
+            writer.writeString(candidates.get(i));
+        }
+        return writer.toFrame(MessageType.CANDIDATES);
+    }
+
+    public static byte[] candidateDelta(int electionId, int version, int op, int id, String candidate) {
+        return new PayloadWriter()
+                .writeShort(electionId)
+                .writeInt(version)
+                .writeByte(op)
+                .writeShort(id)
+                .writeString(candidate)
+                .toFrame(MessageType.CANDIDATE_DELTA);
+    }
+
+    public static byte[] syncCandidates(int electionId, int knownVersion) {
+        return new PayloadWriter(6)
+                .writeShort(electionId)
+                .writeInt(knownVersion)
+                .toFrame(MessageType.SYNC_CANDIDATES);
+    }
+
+    public static byte[] subscribeTally(int electionId, int stream, int knownVersion) {
+        return new PayloadWriter(10)
+                .writeShort(electionId)
+                .writeInt(stream)
+                .writeInt(knownVersion)
+                .toFrame(MessageType.SUBSCRIBE_TALLY);
+    }
+
+    /**
+     * Encodes a {@link MessageType#TALLY_SNAPSHOT} or {@link MessageType#TALLY_DELTA};
+     * {@code votes.get(i)} is the count of {@code candidates.get(i)}.
+     */
+    public static byte[] tally(int type, int electionId, int stream, int version, List<String> candidates,
+                               List<Long> votes) {
+        PayloadWriter writer = new PayloadWriter(12 + candidates.size() * 24);
+        writer.writeShort(electionId);
+        writer.writeInt(stream);
+        writer.writeInt(version);
+        writer.writeShort(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            writer.writeString(candidates.get(i));
+            writer.writeLong(votes.get(i));
+        }
+        return writer.toFrame(type);
+    }
+
+    /**
+     * {@code hashes.get(i)} is the SHA-256 of the blob of {@code kinds[i]} for
+     * {@code candidateIds[i]}, which is {@code sizes[i]} bytes long.
+     */
+    public static byte[] mediaIndex(int electionId, int[] candidateIds, int[] kinds, List<byte[]> hashes,
+                                    int[] sizes) {
+        PayloadWriter writer = new PayloadWriter(4 + candidateIds.length * 39);
+        writer.writeShort(electionId);
+        writer.writeShort(candidateIds.length);
+        for (int i = 0; i < candidateIds.length; i++) {
+            writer.writeShort(candidateIds[i]);
+            writer.writeByte(kinds[i]);
+            writer.writeBytes(hashes.get(i), 0, HASH_SIZE);
+            writer.writeInt(sizes[i]);
+        }
+        return writer.toFrame(MessageType.MEDIA_INDEX);
+    }
+
+    public static byte[] fetchBlob(byte[] hash, int offset) {
+        return new PayloadWriter(HASH_SIZE + 4)
+                .writeBytes(hash, 0, HASH_SIZE)
+                .writeInt(offset)
+                .toFrame(MessageType.FETCH_BLOB);
+    }
+
+    /** Carries {@code data[offset, offset + length)} of a blob {@code data.length} bytes long. */
+    public static byte[] blobChunk(byte[] hash, byte[] data, int offset, int length) {
+        return new PayloadWriter(HASH_SIZE + 10 + length)
+                .writeBytes(hash, 0, HASH_SIZE)
+                .writeInt(data.length)
+                .writeInt(offset)
+                .writeShort(length)
+                .writeBytes(data, offset, length)
+                .toFrame(MessageType.BLOB_CHUNK);
+    }
+
+    public static byte[] voteReceipt(long voteId, int batch, int leafIndex, int leafCount, byte[] previousChain,
+                                     List<byte[]> proof) {
+        PayloadWriter writer = new PayloadWriter(8 + 12 + HASH_SIZE + 1 + proof.size() * HASH_SIZE)
+                .writeLong(voteId)
+                .writeInt(batch)
+                .writeInt(leafIndex)
+                .writeInt(leafCount)
+                .writeBytes(previousChain, 0, HASH_SIZE)
+                .writeByte(proof.size());
+        for (byte[] hash : proof) {
+            writer.writeBytes(hash, 0, HASH_SIZE);
+        }
+        return writer.toFrame(MessageType.VOTE_RECEIPT);
+    }
+
+    public static byte[] results(String results) {
+        return new PayloadWriter(results.length() + 2)
+                .writeString(results)
+                .toFrame(MessageType.RESULTS);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.votingcore.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor over a frame payload. Reset it for each frame instead of creating a new one.
+ */
+public final class PayloadReader {
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    public PayloadReader reset(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+        return this;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+
+    public int readUnsignedByte() throws ProtocolException {
+        require(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    public int readUnsignedShort() throws ProtocolException {
+        require(2);
+        int value = ((buffer[position] & 0xFF) << 8) | (buffer[position + 1] & 0xFF);
+        position += 2;
+        return value;
+    }
+
+    public int readInt() throws ProtocolException {
+        require(4);
+        int value = ((buffer[position] & 0xFF) << 24)
+                | ((buffer[position + 1] & 0xFF) << 16)
+                | ((buffer[position + 2] & 0xFF) << 8)
+                | (buffer[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+
+    public long readLong() throws ProtocolException {
+        long high = readInt() & 0xFFFFFFFFL;
+        long low = readInt() & 0xFFFFFFFFL;
+        return (high << 32) | low;
+    }
+
+    /** Reads a {@code u16} length-prefixed UTF-8 string. */
+    public String readString() throws ProtocolException {
+        int length = readUnsignedShort();
+        require(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /** Copies the next {@code length} bytes into {@code dst}. */
+    public void readBytes(byte[] dst, int offset, int length) throws ProtocolException {
+        require(length);
+        System.arraycopy(buffer, position, dst, offset, length);
+        position += length;
+    }
+
+    private void require(int bytes) throws ProtocolException {
+        if (limit - position < bytes) {
+            throw new ProtocolException("Truncated payload");
+        }
+    }
+}
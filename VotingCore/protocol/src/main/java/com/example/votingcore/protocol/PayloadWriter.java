@@ -0,0 +1,87 @@
+package com.example.votingcore.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Builds a frame in a growable buffer. The header is reserved up front so {@link #toFrame(int)}
+ * only has to fill it in. Call {@link #reset()} to reuse the writer for the next frame.
+ */
+public final class PayloadWriter {
+
+    private byte[] buffer;
+    private int position = Frames.HEADER_SIZE;
+
+    public PayloadWriter() {
+        this(64);
+    }
+
+    public PayloadWriter(int initialPayloadCapacity) {
+        buffer = new byte[Frames.HEADER_SIZE + initialPayloadCapacity];
+    }
+
+    public PayloadWriter reset() {
+        position = Frames.HEADER_SIZE;
+        return this;
+    }
+
+    public int payloadLength() {
+        return position - Frames.HEADER_SIZE;
+    }
+
+    public PayloadWriter writeByte(int value) {
+        ensure(1);
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    public PayloadWriter writeShort(int value) {
+        ensure(2);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    public PayloadWriter writeInt(int value) {
+        ensure(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    public PayloadWriter writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        return writeInt((int) value);
+    }
+
+    /** Writes a {@code u16} length-prefixed UTF-8 string. */
+    public PayloadWriter writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long: " + bytes.length + " bytes");
+        }
+        writeShort(bytes.length);
+        return writeBytes(bytes, 0, bytes.length);
+    }
+
+    public PayloadWriter writeBytes(byte[] src, int offset, int length) {
+        ensure(length);
+        System.arraycopy(src, offset, buffer, position, length);
+        position += length;
+        return this;
+    }
+
+    /** Returns a copy of the finished frame; the writer can be reset and reused afterwards. */
+    public byte[] toFrame(int type) {
+        Frames.writeHeader(buffer, 0, type, payloadLength());
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensure(int bytes) {
+        if (position + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+        }
+    }
+}
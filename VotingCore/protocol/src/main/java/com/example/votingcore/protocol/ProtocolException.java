@@ -0,0 +1,16 @@
+package com.example.votingcore.protocol;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a peer sends bytes that cannot be a valid frame. The connection should be closed,
+ * since the stream can no longer be re-synchronised.
+ */
+public class ProtocolException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ProtocolException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.votingcore.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The hashes behind {@link MessageType#VOTE_RECEIPT}. The accepted votes of each committed batch
+ * are the leaves of a SHA-256 Merkle tree, and every batch root is chained onto the chain value
+ * before it, so the last chain value commits to every counted vote in order. A student checks a
+ * receipt with {@link #rootFromProof} and {@link #chain}; an auditor replays the chain from the
+ * teacher's published batches and compares it with the final value.
+ *
+ * <p>Leaves, inner nodes and chain links hash under different prefixes so none can pass for
+ * another. A node without a sibling is carried up to the next level unchanged.
+ */
+public final class VoteReceipts {
+
+    private static final byte LEAF = 0;
+    private static final byte NODE = 1;
+    private static final byte CHAIN = 2;
+
+    private VoteReceipts() {
+    }
+
+    /** The chain value before the first batch. */
+    public static byte[] genesis() {
+        return new byte[Messages.HASH_SIZE];
+    }
+
+    public static byte[] leaf(int electionId, int candidateId, String student) {
+        MessageDigest digest = sha256();
+        digest.update(LEAF);
+        digest.update(new byte[]{(byte) (electionId >>> 8), (byte) electionId,
+                (byte) (candidateId >>> 8), (byte) candidateId});
+        digest.update(student.getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    public static byte[] node(byte[] left, byte[] right) {
+        MessageDigest digest = sha256();
+        digest.update(NODE);
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    public static byte[] chain(byte[] previous, int batch, byte[] root) {
+        MessageDigest digest = sha256();
+        digest.update(CHAIN);
+        digest.update(previous);
+        digest.update(new byte[]{(byte) (batch >>> 24), (byte) (batch >>> 16), (byte) (batch >>> 8), (byte) batch});
+        digest.update(root);
+        return digest.digest();
+    }
+
+    /** Every level of the tree over {@code leaves}, leaves first; the last level is the root alone. */
+    public static List<byte[][]> levels(List<byte[]> leaves) {
+        if (leaves.isEmpty()) {
+            throw new IllegalArgumentException("No leaves");
+        }
+        List<byte[][]> levels = new ArrayList<>();
+        byte[][] level = leaves.toArray(new byte[0][]);
+        levels.add(level);
+        while (level.length > 1) {
+            byte[][] up = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < up.length; i++) {
+                up[i] = 2 * i + 1 < level.length ? node(level[2 * i], level[2 * i + 1]) : level[2 * i];
+            }
+            levels.add(up);
+            level = up;
+        }
+        return levels;
+    }
+
+    /** The siblings on the way from leaf {@code index} to the root, lowest first. */
+    public static List<byte[]> proof(List<byte[][]> levels, int index) {
+        List<byte[]> proof = new ArrayList<>();
+        for (int depth = 0; depth < levels.size() - 1; depth++) {
+            byte[][] level = levels.get(depth);
+            int sibling = index ^ 1;
+            if (sibling < level.length) {
+                proof.add(level[sibling]);
+            }
+            index /= 2;
+        }
+        return proof;
+    }
+
+    /**
+     * Hashes {@code leaf} up to the root of a tree of {@code count} leaves, or returns null if the
+     * proof does not have one sibling for every level that has one.
+     */
+    public static byte[] rootFromProof(byte[] leaf, int index, int count, List<byte[]> proof) {
+        if (index < 0 || index >= count) {
+            return null;
+        }
+        byte[] hash = leaf;
+        int used = 0;
+        for (int size = count; size > 1; size = (size + 1) / 2) {
+            if ((index & 1) == 1) {
+                if (used == proof.size()) {
+                    return null;
+                }
+                hash = node(proof.get(used++), hash);
+            } else if (index + 1 < size) {
+                if (used == proof.size()) {
+                    return null;
+                }
+                hash = node(hash, proof.get(used++));
+            }
+            index /= 2;
+        }
+        return used == proof.size() ? hash : null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
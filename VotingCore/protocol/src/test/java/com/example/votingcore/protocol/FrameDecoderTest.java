@@ -0,0 +1,112 @@
+package com.example.votingcore.protocol;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameDecoderTest {
+
+    private final List<String> votes = new ArrayList<>();
+    private final PayloadReader reader = new PayloadReader();
+    private final FrameDecoder.Listener collector = (type, buffer, offset, length) -> {
+        assertEquals(MessageType.VOTE, type);
+        reader.reset(buffer, offset, length);
+        votes.add(reader.readString() + "," + reader.readString());
+    };
+
+    @Test
+    public void decodesBackToBackFramesFromOneRead() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 50; i++) {
+            out.write(Messages.vote("student" + i, "candidate" + (i % 3)));
+        }
+
+        FrameDecoder decoder = new FrameDecoder();
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        while (decoder.readFrom(in, collector) != -1) {
+            // keep reading
+        }
+
+        assertEquals(50, votes.size());
+        assertEquals("student0,candidate0", votes.get(0));
+        assertEquals("student49,candidate1", votes.get(49));
+        assertEquals(0, decoder.pending());
+    }
+
+    @Test
+    public void reassemblesFramesSplitAcrossReads() throws IOException {
+        byte[] first = Messages.vote("Asha", "Ravi");
+        byte[] second = Messages.vote("Dev", "Meera");
+        byte[] stream = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, stream, first.length, second.length);
+
+        FrameDecoder decoder = new FrameDecoder();
+        for (byte b : stream) {
+            decoder.feed(new byte[]{b}, 0, 1, collector);
+        }
+
+        assertEquals(Arrays.asList("Asha,Ravi", "Dev,Meera"), votes);
+    }
+
+    @Test
+    public void compactsSmallBufferBetweenFrames() throws IOException {
+        byte[] frame = Messages.vote("Asha", "Ravi");
+        FrameDecoder decoder = new FrameDecoder(frame.length + 3);
+        for (int i = 0; i < 10; i++) {
+            decoder.feed(frame, 0, frame.length, collector);
+        }
+
+        assertEquals(10, votes.size());
+    }
+
+    @Test
+    public void decodesUnicodeCandidateList() throws IOException {
+        byte[] frame = Messages.candidates(3, "House captain", 7, Arrays.asList(0, 2, 5),
+                Arrays.asList("Ananya", "Zoë", "अर्जुन"));
+        List<Integer> ids = new ArrayList<>();
+        List<String> decoded = new ArrayList<>();
+
+        new FrameDecoder().feed(frame, 0, frame.length, (type, buffer, offset, length) -> {
+            assertEquals(MessageType.CANDIDATES, type);
+            reader.reset(buffer, offset, length);
+            assertEquals(3, reader.readUnsignedShort());
+            assertEquals("House captain", reader.readString());
+            assertEquals(7, reader.readInt());
+            int count = reader.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                ids.add(reader.readUnsignedShort());
+                decoded.add(reader.readString());
+            }
+        });
+
+        assertEquals(Arrays.asList(0, 2, 5), ids);
+        assertEquals(Arrays.asList("Ananya", "Zoë", "अर्जुन"), decoded);
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void rejectsUnknownVersion() throws IOException {
+        byte[] frame = Messages.vote("Asha", "Ravi");
+        frame[0] = 9;
+        new FrameDecoder().feed(frame, 0, frame.length, collector);
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void rejectsFrameLargerThanCapacity() throws IOException {
+        byte[] frame = Messages.results(new String(new char[200]).replace('\0', 'x'));
+        new FrameDecoder(64).feed(frame, 0, frame.length, collector);
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void rejectsTruncatedPayload() throws IOException {
+        byte[] frame = new PayloadWriter().writeString("Asha").toFrame(MessageType.VOTE);
+        new FrameDecoder().feed(frame, 0, frame.length, collector);
+    }
+}
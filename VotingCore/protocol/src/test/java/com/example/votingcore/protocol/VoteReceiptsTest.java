@@ -0,0 +1,55 @@
+package com.example.votingcore.protocol;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VoteReceiptsTest {
+
+    @Test
+    public void everyLeafProvesItsWayToTheRootForAnyTreeSize() {
+        for (int count = 1; count <= 33; count++) {
+            List<byte[]> leaves = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                leaves.add(VoteReceipts.leaf(0, i % 4, "student" + i));
+            }
+            List<byte[][]> levels = VoteReceipts.levels(leaves);
+            byte[] root = levels.get(levels.size() - 1)[0];
+            for (int i = 0; i < count; i++) {
+                List<byte[]> proof = VoteReceipts.proof(levels, i);
+                // O(log n) siblings
+                assertTrue(proof.size() <= 32 - Integer.numberOfLeadingZeros(count));
+                assertArrayEquals(root, VoteReceipts.rootFromProof(leaves.get(i), i, count, proof));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsProofsForOtherVotesOrPositions() {
+        List<byte[]> leaves = Arrays.asList(VoteReceipts.leaf(0, 1, "Asha"), VoteReceipts.leaf(0, 2, "Dev"),
+                VoteReceipts.leaf(0, 1, "Kiran"));
+        List<byte[][]> levels = VoteReceipts.levels(leaves);
+        byte[] root = levels.get(levels.size() - 1)[0];
+        List<byte[]> proof = VoteReceipts.proof(levels, 0);
+
+        assertFalse(Arrays.equals(root, VoteReceipts.rootFromProof(VoteReceipts.leaf(0, 2, "Asha"), 0, 3, proof)));
+        assertFalse(Arrays.equals(root, VoteReceipts.rootFromProof(leaves.get(0), 1, 3, proof)));
+        assertNull(VoteReceipts.rootFromProof(leaves.get(0), 0, 3, proof.subList(0, 1)));
+        assertNull(VoteReceipts.rootFromProof(leaves.get(0), 3, 3, proof));
+    }
+
+    @Test
+    public void chainDependsOnEveryEarlierBatch() {
+        byte[] first = VoteReceipts.leaf(0, 0, "Asha");
+        byte[] second = VoteReceipts.leaf(0, 1, "Dev");
+        byte[] chained = VoteReceipts.chain(VoteReceipts.chain(VoteReceipts.genesis(), 0, first), 1, second);
+
+        assertFalse(Arrays.equals(chained,
+                VoteReceipts.chain(VoteReceipts.chain(VoteReceipts.genesis(), 0, second), 1, second)));
+        assertFalse(Arrays.equals(chained, VoteReceipts.chain(VoteReceipts.genesis(), 1, second)));
+    }
+}
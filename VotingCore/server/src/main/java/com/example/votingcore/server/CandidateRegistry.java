@@ -0,0 +1,182 @@
+package com.example.votingcore.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ballot: candidate names mapped to small integer ids that stay stable for the life of the
+ * registry, so votes can name a candidate with two bytes instead of the full string.
+ *
+ * <p>Changes copy the ballot into a new immutable {@link Snapshot} and publish it through a
+ * volatile field. Readers grab {@link #snapshot()} once and validate against it without locks.
+ */
+public class CandidateRegistry {
+
+    public static final int NO_ID = -1;
+    /** Ids travel as u16 on the wire. */
+    public static final int MAX_ID = 0xFFFF;
+
+    /** An immutable view of the ballot at one version. */
+    public static final class Snapshot {
+        private final int version;
+        private final int[] ids;
+        private final String[] names;
+        private final Map<String, Integer> idsByName;
+        // Indexed by id; null for ids that are not on this ballot
+        private final String[] namesById;
+
+        private Snapshot(int version, int[] ids, String[] names, int idLimit) {
+            this.version = version;
+            this.ids = ids;
+            this.names = names;
+            this.idsByName = new HashMap<>(ids.length * 2);
+            this.namesById = new String[idLimit];
+            for (int i = 0; i < ids.length; i++) {
+                idsByName.put(names[i], ids[i]);
+                namesById[ids[i]] = names[i];
+            }
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        /** Id of the candidate at ballot position {@code index}. */
+        public int idAt(int index) {
+            return ids[index];
+        }
+
+        public String nameAt(int index) {
+            return names[index];
+        }
+
+        /** Returns the candidate's id, or {@link #NO_ID} if they are not on this ballot. */
+        public int idOf(String name) {
+            Integer id = idsByName.get(name);
+            return id == null ? NO_ID : id;
+        }
+
+        /** Returns the registry's own instance of the name for {@code id}, or null if not on the ballot. */
+        public String nameOf(int id) {
+            return id >= 0 && id < namesById.length ? namesById[id] : null;
+        }
+
+        public boolean contains(String name) {
+            return idsByName.containsKey(name);
+        }
+
+        /** Candidate names in ballot order. */
+        public List<String> names() {
+            return Collections.unmodifiableList(Arrays.asList(names));
+        }
+    }
+
+    // Every name ever registered keeps its id, so removing and re-adding a candidate is stable
+    private final Map<String, Integer> allIds = new HashMap<>();
+    private final List<String> allNames = new ArrayList<>();
+    private volatile Snapshot snapshot = new Snapshot(0, new int[0], new String[0], 0);
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /** Adds {@code name} to the end of the ballot. Returns false if it is already on it. */
+    public synchronized boolean add(String name) {
+        Snapshot current = snapshot;
+        if (current.contains(name)) {
+            return false;
+        }
+        Integer id = allIds.get(name);
+        if (id == null) {
+            if (allNames.size() > MAX_ID) {
+                throw new IllegalStateException("Too many candidates");
+            }
+            id = allNames.size();
+            allIds.put(name, id);
+            allNames.add(name);
+        }
+        int count = current.ids.length;
+        int[] ids = Arrays.copyOf(current.ids, count + 1);
+        String[] names = Arrays.copyOf(current.names, count + 1);
+        ids[count] = id;
+        names[count] = allNames.get(id);
+        snapshot = new Snapshot(current.version + 1, ids, names, allNames.size());
+        return true;
+    }
+
+    /** Takes {@code name} off the ballot. Its id stays reserved for it. */
+    public synchronized boolean remove(String name) {
+        Snapshot current = snapshot;
+        int id = current.idOf(name);
+        if (id == NO_ID) {
+            return false;
+        }
+        int count = current.ids.length;
+        int[] ids = new int[count - 1];
+        String[] names = new String[count - 1];
+        for (int i = 0, j = 0; i < count; i++) {
+            if (current.ids[i] != id) {
+                ids[j] = current.ids[i];
+                names[j] = current.names[i];
+                j++;
+            }
+        }
+        snapshot = new Snapshot(current.version + 1, ids, names, allNames.size());
+        return true;
+    }
+
+    /**
+     * Fills an empty registry with a ballot saved before a restart, so every candidate keeps the id
+     * students and stored votes know them by.
+     *
+     * @param registered every name ever registered, in id order, as from {@link #registeredNames()}
+     * @param ballotIds  ids on the ballot, in ballot order
+     * @throws IllegalStateException if the registry is not empty
+     */
+    public synchronized void restore(List<String> registered, int[] ballotIds) {
+        if (!allNames.isEmpty() || snapshot.version != 0) {
+            throw new IllegalStateException("Registry already in use");
+        }
+        if (registered.size() > MAX_ID + 1) {
+            throw new IllegalArgumentException("Too many candidates");
+        }
+        for (String name : registered) {
+            if (allIds.put(name, allNames.size()) != null) {
+                throw new IllegalArgumentException("Registered twice: " + name);
+            }
+            allNames.add(name);
+        }
+        String[] names = new String[ballotIds.length];
+        for (int i = 0; i < ballotIds.length; i++) {
+            if (ballotIds[i] < 0 || ballotIds[i] >= allNames.size()) {
+                throw new IllegalArgumentException("Unknown candidate id " + ballotIds[i]);
+            }
+            names[i] = allNames.get(ballotIds[i]);
+        }
+        snapshot = new Snapshot(1, ballotIds.clone(), names, allNames.size());
+    }
+
+    /** Every name ever registered, in id order; what {@link #restore} needs besides the ballot. */
+    public synchronized List<String> registeredNames() {
+        return new ArrayList<>(allNames);
+    }
+
+    /** Id ever assigned to {@code name}, including candidates since removed, or {@link #NO_ID}. */
+    public synchronized int registeredId(String name) {
+        Integer id = allIds.get(name);
+        return id == null ? NO_ID : id;
+    }
+
+    /** Name ever assigned to {@code id}, including candidates since removed, or null. */
+    public synchronized String registeredName(int id) {
+        return id >= 0 && id < allNames.size() ? allNames.get(id) : null;
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.server.transport.Connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Per-connection state owned by {@link ConnectionManager}.
+ *
+ * <p>Outgoing frames go through a bounded per-client queue that is drained on a sender thread,
+ * so a slow or half-dead device never blocks the thread that broadcasts. Frames sent with a
+ * coalesce key replace any queued frame with the same key that has not been written yet; a
+ * client that is behind on several candidate lists only receives the latest one.
+ */
+public class ClientSession {
+
+    /** Coalesce key for frames that must all be delivered. */
+    public static final int NO_COALESCE = -1;
+
+    private static final class Outbound {
+        byte[] frame;
+        final int coalesceKey;
+
+        Outbound(byte[] frame, int coalesceKey) {
+            this.frame = frame;
+            this.coalesceKey = coalesceKey;
+        }
+    }
+
+    private final int id;
+    private final Connection connection;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+    private final Executor senders;
+    private final int maxQueuedFrames;
+    private final ServerMetrics metrics;
+    private final ArrayDeque<Outbound> outbound = new ArrayDeque<>();
+    private boolean draining;
+    private volatile long lastActivityNanos;
+    // Each has a single writer at a time: the reading worker and the draining sender
+    private volatile long bytesIn;
+    private volatile long bytesOut;
+    private volatile boolean open = true;
+
+    ClientSession(int id, Connection connection, Executor senders, int maxQueuedFrames) throws IOException {
+        this(id, connection, senders, maxQueuedFrames, new ServerMetrics());
+    }
+
+    ClientSession(int id, Connection connection, Executor senders, int maxQueuedFrames, ServerMetrics metrics)
+            throws IOException {
+        this.id = id;
+        this.connection = connection;
+        this.inputStream = connection.getInputStream();
+        this.outputStream = connection.getOutputStream();
+        this.senders = senders;
+        this.maxQueuedFrames = maxQueuedFrames;
+        this.metrics = metrics;
+        this.lastActivityNanos = System.nanoTime();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getRemoteName() {
+        return connection.getRemoteName();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /** Queues a frame that must be delivered. See {@link #send(byte[], int)}. */
+    public boolean send(byte[] frame) {
+        return send(frame, NO_COALESCE);
+    }
+
+    /**
+     * Queues a frame for this client and returns immediately. The array is shared, not copied, so
+     * a broadcast encodes its payload once for every client and callers must not modify it.
+     *
+     * <p>A client whose queue is full is too far behind to catch up and is disconnected.
+     *
+     * @return false if the session is closed or was closed because its queue overflowed
+     */
+    public boolean send(byte[] frame, int coalesceKey) {
+        synchronized (outbound) {
+            if (!open) {
+                return false;
+            }
+            if (coalesceKey != NO_COALESCE) {
+                for (Outbound queued : outbound) {
+                    if (queued.coalesceKey == coalesceKey) {
+                        queued.frame = frame;
+                        return true;
+                    }
+                }
+            }
+            if (outbound.size() < maxQueuedFrames) {
+                outbound.add(new Outbound(frame, coalesceKey));
+                if (draining) {
+                    return true;
+                }
+                draining = true;
+            } else {
+                frame = null;
+            }
+        }
+        if (frame == null) {
+            close();
+            return false;
+        }
+        try {
+            senders.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Server is shutting down
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    /** Number of frames waiting to be written to this client. */
+    public int getQueueDepth() {
+        synchronized (outbound) {
+            return outbound.size();
+        }
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /** Closes the underlying connection, unblocking the worker reading from it. */
+    public void close() {
+        open = false;
+        synchronized (outbound) {
+            outbound.clear();
+        }
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // Already closed by the peer
+        }
+    }
+
+    private void drain() {
+        List<byte[]> frames = new ArrayList<>();
+        while (true) {
+            synchronized (outbound) {
+                Outbound next;
+                while ((next = outbound.poll()) != null) {
+                    frames.add(next.frame);
+                }
+                if (frames.isEmpty() || !open) {
+                    draining = false;
+                    return;
+                }
+            }
+            try {
+                long written = 0;
+                for (byte[] frame : frames) {
+                    outputStream.write(frame);
+                    written += frame.length;
+                }
+                outputStream.flush();
+                bytesOut += written;
+                metrics.bytesOut.add(written);
+            } catch (IOException e) {
+                close();
+                synchronized (outbound) {
+                    draining = false;
+                }
+                return;
+            }
+            frames.clear();
+        }
+    }
+
+    InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /** Called by the reading worker after {@code bytes} arrived from the client. */
+    void received(int bytes) {
+        lastActivityNanos = System.nanoTime();
+        bytesIn += bytes;
+        metrics.bytesIn.add(bytes);
+    }
+
+    long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "Client#" + id + " (" + getRemoteName() + ")";
+    }
+}
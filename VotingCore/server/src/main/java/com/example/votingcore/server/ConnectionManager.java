@@ -0,0 +1,242 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.protocol.FrameDecoder;
+import com.example.votingcore.protocol.PayloadReader;
+import com.example.votingcore.server.transport.Connection;
+import com.example.votingcore.server.transport.ServerTransport;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accepts clients from a {@link ServerTransport} and serves each one on a bounded worker pool.
+ *
+ * <p>Reads are blocking, so every live connection occupies one worker. At most
+ * {@code maxClients} connections are served at once; further clients are closed straight away
+ * rather than left waiting. Connections that send nothing for {@code idleTimeoutMillis} are
+ * closed by a reaper, and {@link #shutdown()} stops the accept loop and every worker.
+ */
+public class ConnectionManager {
+
+    /** Frames a client may fall behind by before it is disconnected. */
+    public static final int MAX_QUEUED_FRAMES = 256;
+
+    public interface SessionListener {
+        void onConnected(ClientSession session);
+
+        void onFrame(ClientSession session, int type, PayloadReader payload) throws IOException;
+
+        /** Called once per session; {@code cause} is null for an orderly close. */
+        void onDisconnected(ClientSession session, Exception cause);
+
+        /** The transport failed while the manager was running; no more clients will be accepted. */
+        void onAcceptFailed(IOException e);
+    }
+
+    private final ServerTransport transport;
+    private final SessionListener listener;
+    private final ServerMetrics metrics;
+    private final long idleTimeoutNanos;
+    private final Semaphore slots;
+    private final ExecutorService workers;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService reaper;
+    private final Set<ClientSession> sessions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicInteger nextSessionId = new AtomicInteger();
+    private final AtomicInteger rejectedCount = new AtomicInteger();
+    private Thread acceptThread;
+    private volatile boolean running;
+
+    /**
+     * @param idleTimeoutMillis close clients silent for this long, or 0 to never time out
+     */
+    public ConnectionManager(ServerTransport transport, SessionListener listener,
+                             int maxClients, long idleTimeoutMillis) {
+        this(transport, listener, maxClients, idleTimeoutMillis, new ServerMetrics());
+    }
+
+    public ConnectionManager(ServerTransport transport, SessionListener listener,
+                             int maxClients, long idleTimeoutMillis, ServerMetrics metrics) {
+        this.transport = transport;
+        this.listener = listener;
+        this.metrics = metrics;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.slots = new Semaphore(maxClients);
+        // Admission is gated by the semaphore, so the queue never holds more than a transient task
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxClients, maxClients, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("vote-client"));
+        pool.allowCoreThreadTimeOut(true);
+        this.workers = pool;
+        // At most one drain task per session is ever queued, so this never exceeds maxClients
+        ThreadPoolExecutor senderPool = new ThreadPoolExecutor(maxClients, maxClients, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("vote-sender"));
+        senderPool.allowCoreThreadTimeOut(true);
+        this.senders = senderPool;
+        this.reaper = Executors.newSingleThreadScheduledExecutor(namedThreads("vote-reaper"));
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        acceptThread = new Thread(this::acceptLoop, "vote-accept");
+        acceptThread.start();
+        if (idleTimeoutNanos > 0) {
+            long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 2);
+            reaper.scheduleWithFixedDelay(this::closeIdleSessions, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Stops accepting, closes every client and waits briefly for the workers to finish. */
+    public void shutdown() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        try {
+            transport.close();
+        } catch (IOException e) {
+            // Nothing more to do
+        }
+        for (ClientSession session : sessions) {
+            session.close();
+        }
+        reaper.shutdownNow();
+        senders.shutdownNow();
+        workers.shutdown();
+        try {
+            acceptThread.join(1000);
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues one encoded frame for every connected client without waiting for any of them.
+     *
+     * @param coalesceKey see {@link ClientSession#send(byte[], int)}
+     */
+    public void broadcast(byte[] frame, int coalesceKey) {
+        for (ClientSession session : sessions) {
+            session.send(frame, coalesceKey);
+        }
+    }
+
+    public Collection<ClientSession> getSessions() {
+        return Collections.unmodifiableSet(sessions);
+    }
+
+    public int getConnectedCount() {
+        return sessions.size();
+    }
+
+    /** Connections closed on arrival because every slot was taken. */
+    public int getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            Connection connection;
+            try {
+                connection = transport.accept();
+            } catch (IOException e) {
+                if (running) {
+                    listener.onAcceptFailed(e);
+                }
+                return;
+            }
+            if (!slots.tryAcquire()) {
+                rejectedCount.incrementAndGet();
+                closeQuietly(connection);
+                continue;
+            }
+            ClientSession session;
+            try {
+                session = new ClientSession(nextSessionId.incrementAndGet(), connection, senders, MAX_QUEUED_FRAMES,
+                        metrics);
+            } catch (IOException e) {
+                slots.release();
+                closeQuietly(connection);
+                continue;
+            }
+            sessions.add(session);
+            try {
+                workers.execute(() -> serve(session));
+            } catch (RuntimeException e) {
+                // Pool was shut down between accept and execute
+                sessions.remove(session);
+                slots.release();
+                session.close();
+            }
+        }
+    }
+
+    private void serve(ClientSession session) {
+        Exception cause = null;
+        try {
+            listener.onConnected(session);
+            FrameDecoder decoder = new FrameDecoder();
+            PayloadReader payload = new PayloadReader();
+            FrameDecoder.Listener frameListener = (type, buffer, offset, length) ->
+                    listener.onFrame(session, type, payload.reset(buffer, offset, length));
+
+            int bytes;
+            while ((bytes = decoder.readFrom(session.getInputStream(), frameListener)) != -1) {
+                session.received(bytes);
+            }
+        } catch (Exception e) {
+            // A close from shutdown() or the reaper also surfaces here as an IOException
+            if (session.isOpen()) {
+                cause = e;
+            }
+        } finally {
+            sessions.remove(session);
+            session.close();
+            slots.release();
+            listener.onDisconnected(session, cause);
+        }
+    }
+
+    private void closeIdleSessions() {
+        long now = System.nanoTime();
+        for (ClientSession session : sessions) {
+            if (now - session.getLastActivityNanos() > idleTimeoutNanos) {
+                session.close();
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.votingcore.server;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One election run by a {@link VotingServer}, e.g. head boy or house captain. Each election has
+ * its own ballot, {@link VoteStore}, {@link GroupCommitWriter}, tally and voter index, so opening,
+ * closing or counting one never touches another's data, and a student may vote once in each.
+ *
+ * <p>Created and closed through {@link VotingServer#openElection} and
+ * {@link VotingServer#closeElection}.
+ */
+public class Election {
+
+    /** The election the server is constructed with; old-style votes without an election go here. */
+    public static final int DEFAULT_ID = 0;
+    /** Ids travel as u16 on the wire. */
+    public static final int MAX_ID = 0xFFFF;
+
+    private final int id;
+    private final String title;
+    final VoteStore store;
+    final GroupCommitWriter writer;
+    final CandidateRegistry candidates = new CandidateRegistry();
+    final VoteTally tally = new VoteTally();
+    final VoterIndex voterIndex = new VoterIndex();
+    // Candidate -> media kind -> content hash; guarded by the server
+    final Map<String, Map<Integer, byte[]>> media = new LinkedHashMap<>();
+    private volatile boolean open = true;
+
+    Election(int id, String title, VoteStore store, GroupCommitWriter writer) {
+        this.id = id;
+        this.title = title;
+        this.store = store;
+        this.writer = writer;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /** False once closed; the ballot and results stay readable. */
+    public boolean isOpen() {
+        return open;
+    }
+
+    public CandidateRegistry.Snapshot getBallot() {
+        return candidates.snapshot();
+    }
+
+    public List<String> getCandidates() {
+        return candidates.snapshot().names();
+    }
+
+    /** Every candidate ever on the ballot, in id order; saved with the ballot to restore their ids. */
+    public List<String> getRegisteredCandidates() {
+        return candidates.registeredNames();
+    }
+
+    public Map<String, Long> getResults() {
+        return tally.snapshot();
+    }
+
+    public VoteTally getTally() {
+        return tally;
+    }
+
+    public VoterIndex getVoterIndex() {
+        return voterIndex;
+    }
+
+    /** Rebuilds the tally and voter index from this election's store. Returns the stored counts. */
+    Map<String, Long> load() throws Exception {
+        Map<String, Long> stored = store.loadVoteCounts();
+        tally.load(stored);
+        store.forEachVoter(voterIndex::add);
+        return stored;
+    }
+
+    /** Stops taking votes and flushes the ones already queued. */
+    void close() {
+        open = false;
+        writer.close();
+    }
+}
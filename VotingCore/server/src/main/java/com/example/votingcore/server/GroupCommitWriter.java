@@ -0,0 +1,223 @@
+package com.example.votingcore.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single writer stage in front of a {@link VoteStore}. Votes submitted concurrently by client
+ * threads are collected into batches and committed in one transaction each, so a class voting at
+ * once costs a handful of fsyncs instead of one per vote.
+ *
+ * <p>A batch is flushed when it reaches {@code maxBatchSize} votes or when the oldest vote in it
+ * has waited {@code maxDelayMillis}, whichever comes first. Votes submitted together through
+ * {@link #submitAll} always share a transaction, even if that makes the batch larger.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+
+    /** Told about every committed batch, on the writer thread, once its votes are answered. */
+    public interface CommitListener {
+        /** {@code votes} and {@code accepted} are reused for the next batch; copy what is kept. */
+        void onCommit(List<Vote> votes, boolean[] accepted);
+    }
+
+    private static final Pending SHUTDOWN = new Pending(null);
+
+    private final VoteStore store;
+    private final ServerMetrics metrics;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private boolean closed;
+    private volatile CommitListener commitListener;
+
+    public GroupCommitWriter(VoteStore store, int maxBatchSize, long maxDelayMillis) {
+        this(store, maxBatchSize, maxDelayMillis, new ServerMetrics());
+    }
+
+    public GroupCommitWriter(VoteStore store, int maxBatchSize, long maxDelayMillis, ServerMetrics metrics) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.store = store;
+        this.metrics = metrics;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.writerThread = new Thread(this::runWriter, "vote-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues a vote for the next batch. The returned future completes once the batch holding it
+     * has been committed.
+     */
+    public CompletableFuture<VoteResult> submit(Vote vote) {
+        Pending pending = new Pending(vote);
+        synchronized (this) {
+            if (closed) {
+                pending.result.completeExceptionally(new IllegalStateException("Writer is closed"));
+                return pending.result;
+            }
+            queue.add(pending);
+        }
+        return pending.result;
+    }
+
+    public CompletableFuture<VoteResult> submit(String student, String candidate) {
+        return submit(new Vote(student, candidate));
+    }
+
+    /**
+     * Queues several votes that must be committed in the same transaction, e.g. one
+     * {@code VOTE_BATCH} frame. Returns one future per vote, in order.
+     */
+    public List<CompletableFuture<VoteResult>> submitAll(List<Vote> votes) {
+        List<Pending> group = new ArrayList<>(votes.size());
+        List<CompletableFuture<VoteResult>> results = new ArrayList<>(votes.size());
+        for (Vote vote : votes) {
+            Pending pending = new Pending(vote);
+            group.add(pending);
+            results.add(pending.result);
+        }
+        if (group.isEmpty()) {
+            return results;
+        }
+        group.get(0).followers = group.size() - 1;
+        synchronized (this) {
+            if (closed) {
+                for (Pending pending : group) {
+                    pending.result.completeExceptionally(new IllegalStateException("Writer is closed"));
+                }
+                return results;
+            }
+            // Under the same lock as submit, so the group stays contiguous in the queue
+            queue.addAll(group);
+        }
+        return results;
+    }
+
+    /** Sets what hears about committed batches; it must hand any slow work to another thread. */
+    public void setCommitListener(CommitListener listener) {
+        commitListener = listener;
+    }
+
+    /** Number of votes waiting for a batch. */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Flushes every vote submitted so far and stops the writer thread.
+     *
+     * @throws IllegalStateException if interrupted before the flush finished, with the interrupt
+     *     flag set again; the writer thread still drains the queue
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(SHUTDOWN);
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while flushing votes", e);
+        }
+    }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        List<Vote> votes = new ArrayList<>(maxBatchSize);
+        boolean[] accepted = new boolean[maxBatchSize];
+        boolean running = true;
+
+        while (running) {
+            try {
+                Pending first = queue.take();
+                if (first == SHUTDOWN) {
+                    running = false;
+                } else {
+                    take(first, batch);
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while (batch.size() < maxBatchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        Pending next = remaining > 0
+                                ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                                : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        if (next == SHUTDOWN) {
+                            running = false;
+                            break;
+                        }
+                        take(next, batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                if (accepted.length < batch.size()) {
+                    accepted = new boolean[batch.size()];
+                }
+                commit(batch, votes, accepted);
+                batch.clear();
+                votes.clear();
+            }
+        }
+    }
+
+    /** Adds {@code pending} and, if it starts a group, the rest of the group behind it. */
+    private void take(Pending pending, List<Pending> batch) throws InterruptedException {
+        batch.add(pending);
+        for (int i = 0; i < pending.followers; i++) {
+            batch.add(queue.take());
+        }
+    }
+
+    private void commit(List<Pending> batch, List<Vote> votes, boolean[] accepted) {
+        for (Pending pending : batch) {
+            votes.add(pending.vote);
+        }
+        long start = System.nanoTime();
+        try {
+            store.insertBatch(votes, accepted);
+            metrics.batchDuration.recordNanos(System.nanoTime() - start);
+            metrics.batches.increment();
+        } catch (Exception e) {
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(accepted[i] ? VoteResult.ACCEPTED : VoteResult.DUPLICATE);
+        }
+        CommitListener listener = commitListener;
+        if (listener != null) {
+            listener.onCommit(votes, accepted);
+        }
+    }
+
+    private static final class Pending {
+        final Vote vote;
+        final CompletableFuture<VoteResult> result = new CompletableFuture<>();
+        // Votes queued right behind this one by the same submitAll call
+        int followers;
+
+        Pending(Vote vote) {
+            this.vote = vote;
+        }
+    }
+}
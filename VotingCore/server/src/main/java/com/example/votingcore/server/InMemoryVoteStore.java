@@ -0,0 +1,61 @@
+package com.example.votingcore.server;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Non-durable {@link VoteStore} for tests, benchmarks and the standalone TCP server.
+ */
+public class InMemoryVoteStore implements VoteStore {
+
+    private final Map<String, Vote> votes = new HashMap<>();
+
+    @Override
+    public synchronized void insertBatch(List<Vote> batch, boolean[] accepted) {
+        for (int i = 0; i < batch.size(); i++) {
+            Vote vote = batch.get(i);
+            accepted[i] = votes.putIfAbsent(vote.student, vote) == null;
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Long> loadVoteCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Vote vote : votes.values()) {
+            Long count = counts.get(vote.candidate);
+            counts.put(vote.candidate, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized void findVoters(List<Vote> batch, boolean[] found) {
+        for (int i = 0; i < batch.size(); i++) {
+            found[i] = votes.containsKey(batch.get(i).student);
+        }
+    }
+
+    @Override
+    public synchronized long findVoteId(String student) {
+        Vote vote = votes.get(student);
+        return vote == null ? Vote.NO_ID : vote.voteId;
+    }
+
+    @Override
+    public synchronized void forEachVoter(Consumer<String> voter) {
+        for (String student : votes.keySet()) {
+            voter.accept(student);
+        }
+    }
+
+    public synchronized String getVote(String student) {
+        Vote vote = votes.get(student);
+        return vote == null ? null : vote.candidate;
+    }
+
+    public synchronized int size() {
+        return votes.size();
+    }
+}
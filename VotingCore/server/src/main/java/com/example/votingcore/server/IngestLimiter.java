@@ -0,0 +1,138 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.protocol.MessageType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control in front of the vote writers, so one buggy or hostile device cannot flood
+ * storage or the teacher's screen. Each client has a token bucket holding up to {@code burst}
+ * votes that refills at {@code votesPerSecond}, and across all clients at most
+ * {@code maxQueuedVotes} votes may be waiting for or inside a commit. Votes turned away are
+ * answered {@link MessageType#ACK_RETRY}, which students already resend after a backoff.
+ *
+ * <p>A vote frame of which nothing fits the client's bucket is a strike. A client that collects
+ * {@link #MAX_STRIKES} in a row is not backing off and is disconnected. A full queue is not the
+ * client's fault and never counts as a strike.
+ */
+public class IngestLimiter {
+
+    /** A student device's whole in-flight window, flushed at once after a reconnect. */
+    public static final int DEFAULT_BURST = 128;
+    /** Well above a class queuing at one device in kiosk mode. */
+    public static final double DEFAULT_VOTES_PER_SECOND = 10;
+    /** A few seconds of commits; anything beyond that only adds latency. */
+    public static final int DEFAULT_MAX_QUEUED_VOTES = 1024;
+    /** Vote frames in a row with nothing admitted before the client is disconnected. */
+    public static final int MAX_STRIKES = 20;
+
+    private static final class Bucket {
+        double tokens;
+        long lastNanos;
+        int strikes;
+        long throttled;
+
+        Bucket(double tokens, long lastNanos) {
+            this.tokens = tokens;
+            this.lastNanos = lastNanos;
+        }
+    }
+
+    private final double votesPerSecond;
+    private final int burst;
+    private final int maxQueuedVotes;
+    private final ServerMetrics metrics;
+    private final Map<ClientSession, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public IngestLimiter(double votesPerSecond, int burst, int maxQueuedVotes, ServerMetrics metrics) {
+        if (votesPerSecond <= 0 || burst < 1 || maxQueuedVotes < 1) {
+            throw new IllegalArgumentException("Limits must be positive");
+        }
+        this.votesPerSecond = votesPerSecond;
+        this.burst = burst;
+        this.maxQueuedVotes = maxQueuedVotes;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns how many of the {@code votes} in one frame may go on, counted from the first. Hand
+     * them back with {@link #release} once they are answered. May disconnect {@code session}.
+     */
+    public int admit(ClientSession session, int votes) {
+        return admit(session, votes, System.nanoTime());
+    }
+
+    int admit(ClientSession session, int votes, long nowNanos) {
+        if (votes <= 0) {
+            return 0;
+        }
+        Bucket bucket = buckets.computeIfAbsent(session, key -> new Bucket(burst, nowNanos));
+        int admitted;
+        boolean abusive;
+        synchronized (bucket) {
+            double refill = votesPerSecond * (nowNanos - bucket.lastNanos) / TimeUnit.SECONDS.toNanos(1);
+            bucket.tokens = Math.min(burst, bucket.tokens + refill);
+            bucket.lastNanos = nowNanos;
+            int fit = Math.min(votes, (int) bucket.tokens);
+            admitted = reserve(fit);
+            bucket.tokens -= admitted;
+            bucket.throttled += votes - fit;
+            metrics.throttled.add(votes - fit);
+            metrics.busy.add(fit - admitted);
+            bucket.strikes = fit == 0 ? bucket.strikes + 1 : 0;
+            // Exactly at the limit, so the client is counted once however many frames are buffered
+            abusive = bucket.strikes == MAX_STRIKES;
+        }
+        if (abusive) {
+            metrics.abusiveDisconnects.increment();
+            session.close();
+        }
+        return admitted;
+    }
+
+    /** Returns queue space taken by {@link #admit}. */
+    public void release(int votes) {
+        if (votes > 0) {
+            queued.addAndGet(-votes);
+        }
+    }
+
+    /** Forgets a client's bucket once it disconnects. */
+    public void disconnected(ClientSession session) {
+        buckets.remove(session);
+    }
+
+    /** Votes from this client turned away by its rate limit, while it is connected. */
+    public long getThrottled(ClientSession session) {
+        Bucket bucket = buckets.get(session);
+        if (bucket == null) {
+            return 0;
+        }
+        synchronized (bucket) {
+            return bucket.throttled;
+        }
+    }
+
+    /** Admitted votes not yet released. */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /** Takes up to {@code votes} places in the global queue and returns how many it got. */
+    private int reserve(int votes) {
+        while (true) {
+            int current = queued.get();
+            int granted = Math.min(votes, maxQueuedVotes - current);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (queued.compareAndSet(current, current + granted)) {
+                return granted;
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.votingcore.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Write-ahead layer in front of a slower {@link VoteStore}. A batch is durable, and its votes
+ * answered, as soon as it has been appended to a {@link VoteJournal} and synced; a background
+ * compactor later folds the journal into the underlying store in one large transaction.
+ *
+ * <p>Two journals take turns: while one is being folded, new votes go to the other, so ingest
+ * never waits for the underlying store unless both fill up. Duplicates are decided against the
+ * votes not yet folded plus {@link VoteStore#findVoters}, which only reads.
+ *
+ * <p>On open, anything left in either journal by a crash is folded before votes are accepted.
+ * Folding is idempotent, so a crash between a fold committing and its journal being reset just
+ * replays votes the underlying store already has.
+ */
+public class JournaledVoteStore implements VoteStore, AutoCloseable {
+
+    public static final long DEFAULT_FOLD_INTERVAL_MS = 1000;
+
+    private final VoteStore base;
+    private final long foldIntervalMillis;
+    private final Object lock = new Object();
+    private final Thread compactor;
+    private final int recoveredCount;
+    // Guarded by lock
+    private VoteJournal active;
+    private VoteJournal standby;
+    private List<Vote> activeVotes = new ArrayList<>();
+    // Votes in standby that are not folded yet; null once standby has been reset
+    private List<Vote> standbyVotes;
+    private final Map<String, Vote> unfolded = new HashMap<>();
+    // Completed folds; a lookup in base that a fold overlapped may have missed students it moved
+    private long folds;
+    private boolean closed;
+    private volatile Exception lastFoldError;
+
+    /** Opens {@code prefix.0} and {@code prefix.1} with the default size and fold interval. */
+    public JournaledVoteStore(VoteStore base, File prefix) throws Exception {
+        this(base, new VoteJournal(new File(prefix.getPath() + ".0"), VoteJournal.DEFAULT_CAPACITY),
+                new VoteJournal(new File(prefix.getPath() + ".1"), VoteJournal.DEFAULT_CAPACITY),
+                DEFAULT_FOLD_INTERVAL_MS);
+    }
+
+    /**
+     * Recovers both journals into {@code base}, then starts the compactor.
+     *
+     * @param foldIntervalMillis how often unfolded votes are moved into {@code base}; 0 or less
+     *                           folds only when a journal fills up, on {@link #compact()} and on close
+     */
+    public JournaledVoteStore(VoteStore base, VoteJournal first, VoteJournal second,
+                              long foldIntervalMillis) throws Exception {
+        this.base = base;
+        this.active = first;
+        this.standby = second;
+        this.foldIntervalMillis = foldIntervalMillis;
+
+        List<Vote> tail = new ArrayList<>(first.getRecovered());
+        tail.addAll(second.getRecovered());
+        if (!tail.isEmpty()) {
+            base.insertBatch(tail, new boolean[tail.size()]);
+        }
+        first.reset();
+        second.reset();
+        recoveredCount = tail.size();
+
+        if (foldIntervalMillis > 0) {
+            compactor = new Thread(this::runCompactor, "vote-compactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        } else {
+            compactor = null;
+        }
+    }
+
+    /** Votes replayed from the journals on open, i.e. acknowledged but not folded before a crash. */
+    public int getRecoveredCount() {
+        return recoveredCount;
+    }
+
+    /** The last error from a background fold, or null. Folding is retried on the next interval. */
+    public Exception getLastFoldError() {
+        return lastFoldError;
+    }
+
+    public int getUnfoldedCount() {
+        synchronized (lock) {
+            return unfolded.size();
+        }
+    }
+
+    /** Called by a single writer, normally the {@link GroupCommitWriter} thread. */
+    @Override
+    public void insertBatch(List<Vote> votes, boolean[] accepted) throws Exception {
+        boolean[] stored = new boolean[votes.size()];
+        List<Vote> fresh = new ArrayList<>(votes.size());
+        while (true) {
+            long generation;
+            synchronized (lock) {
+                generation = folds;
+            }
+            Arrays.fill(stored, false);
+            base.findVoters(votes, stored);
+            synchronized (lock) {
+                if (folds != generation) {
+                    // A fold moved students out of unfolded after base was read: look again
+                    continue;
+                }
+                if (acceptFresh(votes, stored, accepted, fresh)) {
+                    return;
+                }
+            }
+            break;
+        }
+        // Both journals are full: fold synchronously and retry once. A failed standby is folded
+        // first, so fold again to also empty the active journal
+        compact();
+        compact();
+        synchronized (lock) {
+            if (!append(fresh)) {
+                throw new IOException("Vote batch does not fit in an empty journal");
+            }
+        }
+    }
+
+    /**
+     * Accepts every vote whose student is in neither base nor the journals nor earlier in the
+     * batch, and journals them. Returns false if they did not fit. Called under the lock.
+     */
+    private boolean acceptFresh(List<Vote> votes, boolean[] stored, boolean[] accepted, List<Vote> fresh) {
+        Set<String> inBatch = new HashSet<>();
+        for (int i = 0; i < votes.size(); i++) {
+            Vote vote = votes.get(i);
+            accepted[i] = !stored[i] && !unfolded.containsKey(vote.student) && inBatch.add(vote.student);
+            if (accepted[i]) {
+                fresh.add(vote);
+            }
+        }
+        return fresh.isEmpty() || append(fresh);
+    }
+
+    /** Appends and syncs under the lock so a concurrent swap cannot separate votes from their journal. */
+    private boolean append(List<Vote> fresh) {
+        if (!active.append(fresh)) {
+            return false;
+        }
+        active.sync();
+        activeVotes.addAll(fresh);
+        for (Vote vote : fresh) {
+            unfolded.put(vote.student, vote);
+        }
+        return true;
+    }
+
+    /**
+     * Folds every journaled vote into the underlying store and empties the journal it came from.
+     * Called by the compactor; safe to call from any thread.
+     */
+    public synchronized void compact() throws Exception {
+        List<Vote> folding;
+        VoteJournal retired;
+        synchronized (lock) {
+            if (standbyVotes == null) {
+                if (activeVotes.isEmpty()) {
+                    return;
+                }
+                retired = active;
+                active = standby;
+                standby = retired;
+                standbyVotes = activeVotes;
+                activeVotes = new ArrayList<>();
+            }
+            // Otherwise a previous fold failed and standby still holds its votes
+            folding = standbyVotes;
+            retired = standby;
+        }
+        base.insertBatch(folding, new boolean[folding.size()]);
+        synchronized (lock) {
+            for (Vote vote : folding) {
+                unfolded.remove(vote.student);
+            }
+            folds++;
+            retired.reset();
+            standbyVotes = null;
+        }
+    }
+
+    private void runCompactor() {
+        while (true) {
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    lock.wait(foldIntervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                compact();
+                // A failed standby is folded first, so fold again to also move the active votes
+                compact();
+                lastFoldError = null;
+            } catch (Exception e) {
+                lastFoldError = e;
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Long> loadVoteCounts() throws Exception {
+        Map<String, Long> counts = base.loadVoteCounts();
+        synchronized (lock) {
+            for (Vote vote : unfolded.values()) {
+                Long count = counts.get(vote.candidate);
+                counts.put(vote.candidate, count == null ? 1 : count + 1);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public void findVoters(List<Vote> votes, boolean[] found) throws Exception {
+        while (true) {
+            long generation;
+            synchronized (lock) {
+                generation = folds;
+            }
+            Arrays.fill(found, 0, votes.size(), false);
+            base.findVoters(votes, found);
+            synchronized (lock) {
+                if (folds != generation) {
+                    continue;
+                }
+                for (int i = 0; i < votes.size(); i++) {
+                    found[i] |= unfolded.containsKey(votes.get(i).student);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long findVoteId(String student) throws Exception {
+        while (true) {
+            long generation;
+            synchronized (lock) {
+                generation = folds;
+            }
+            long stored = base.findVoteId(student);
+            synchronized (lock) {
+                if (folds != generation) {
+                    continue;
+                }
+                Vote vote = unfolded.get(student);
+                return vote == null ? stored : vote.voteId;
+            }
+        }
+    }
+
+    @Override
+    public void forEachVoter(Consumer<String> voter) throws Exception {
+        List<String> pending;
+        synchronized (lock) {
+            pending = new ArrayList<>(unfolded.keySet());
+        }
+        base.forEachVoter(voter);
+        for (String student : pending) {
+            voter.accept(student);
+        }
+    }
+
+    /**
+     * Stops the compactor, folds whatever is left and closes both journals.
+     *
+     * @throws IOException if the last fold failed; its votes stay in the journal for the next open
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        if (compactor != null) {
+            try {
+                compactor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while the compactor was folding");
+            }
+        }
+        try {
+            compact();
+            compact();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not fold the journal", e);
+        } finally {
+            active.close();
+            standby.close();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.votingcore.server;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Candidate photos and manifestos, stored once each under their SHA-256. The same picture used by
+ * two elections, or attached twice, takes memory and bandwidth once.
+ */
+public class MediaLibrary {
+
+    // Guarded by this
+    private final Map<String, byte[]> blobs = new HashMap<>();
+
+    /** Stores {@code data} and returns its hash. The array is kept, so do not modify it. */
+    public synchronized byte[] put(byte[] data) {
+        byte[] hash = sha256(data);
+        blobs.put(hex(hash), data);
+        return hash;
+    }
+
+    /** Returns the blob with this hash, or null. */
+    public synchronized byte[] get(byte[] hash) {
+        return blobs.get(hex(hash));
+    }
+
+    public static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers {@link MessageType#FETCH_BLOB} with {@link MessageType#BLOB_CHUNK}s, paced so media
+ * never holds up votes. A timer hands out chunks round-robin across all requests, within a
+ * shared byte budget that refills at {@code bytesPerSecond}, and only to clients whose send queue
+ * is empty, so a vote acknowledgement waits behind at most one chunk.
+ */
+public class MediaTransfer {
+
+    public static final int CHUNK_SIZE = 4096;
+    /** A fraction of what RFCOMM carries, leaving the link to votes and tally updates. */
+    public static final long DEFAULT_BYTES_PER_SECOND = 32 * 1024;
+    static final long TICK_MS = 20;
+
+    private static final class Fetch {
+        final ClientSession session;
+        final byte[] hash;
+        final byte[] data;
+        int offset;
+
+        Fetch(ClientSession session, byte[] hash, byte[] data, int offset) {
+            this.session = session;
+            this.hash = hash;
+            this.data = data;
+            this.offset = offset;
+        }
+    }
+
+    private final MediaLibrary library;
+    private final long bytesPerSecond;
+    private final ServerMetrics metrics;
+    // Guarded by this
+    private final ArrayDeque<Fetch> fetches = new ArrayDeque<>();
+    private long budget;
+    private long lastTickNanos = System.nanoTime();
+    private ScheduledExecutorService timer;
+
+    public MediaTransfer(MediaLibrary library, long bytesPerSecond, ServerMetrics metrics) {
+        this.library = library;
+        this.bytesPerSecond = bytesPerSecond;
+        this.metrics = metrics;
+    }
+
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "media-transfer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(() -> tick(System.nanoTime()), TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+        fetches.clear();
+    }
+
+    /** Queues a blob from {@code offset} on. A repeated request replaces the client's earlier one. */
+    public synchronized void request(ClientSession session, byte[] hash, int offset) {
+        byte[] data = library.get(hash);
+        if (data == null) {
+            session.send(Messages.blobChunk(hash, new byte[0], 0, 0));
+            return;
+        }
+        cancel(session, hash);
+        fetches.add(new Fetch(session, hash, data, Math.max(0, Math.min(offset, data.length))));
+    }
+
+    /** Drops everything queued for a client, e.g. once it disconnects. */
+    public synchronized void cancel(ClientSession session) {
+        fetches.removeIf(fetch -> fetch.session == session);
+    }
+
+    public synchronized int getPendingCount() {
+        return fetches.size();
+    }
+
+    private void cancel(ClientSession session, byte[] hash) {
+        for (Iterator<Fetch> it = fetches.iterator(); it.hasNext(); ) {
+            Fetch fetch = it.next();
+            if (fetch.session == session && Arrays.equals(fetch.hash, hash)) {
+                it.remove();
+            }
+        }
+    }
+
+    /** Refills the budget for the time since the last tick and sends what it allows. */
+    synchronized void tick(long nowNanos) {
+        long refill = bytesPerSecond * (nowNanos - lastTickNanos) / TimeUnit.SECONDS.toNanos(1);
+        lastTickNanos = nowNanos;
+        // An idle spell must not turn into a burst
+        budget = Math.min(budget + refill, Math.max(CHUNK_SIZE, bytesPerSecond * TICK_MS / 1000));
+        int visits = fetches.size();
+        for (int i = 0; i < visits && !fetches.isEmpty(); i++) {
+            Fetch fetch = fetches.poll();
+            if (!fetch.session.isOpen()) {
+                continue;
+            }
+            int length = Math.min(CHUNK_SIZE, fetch.data.length - fetch.offset);
+            if (length > budget || fetch.session.getQueueDepth() > 0) {
+                // Out of budget, or the client has votes or results waiting: try again next tick
+                fetches.add(fetch);
+                continue;
+            }
+            fetch.session.send(Messages.blobChunk(fetch.hash, fetch.data, fetch.offset, length));
+            budget -= length;
+            metrics.mediaBytes.add(length);
+            fetch.offset += length;
+            if (fetch.offset < fetch.data.length) {
+                fetches.add(fetch);
+            }
+        }
+    }
+}
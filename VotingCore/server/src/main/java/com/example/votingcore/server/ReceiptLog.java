@@ -0,0 +1,251 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.VoteReceipts;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Issues {@link MessageType#VOTE_RECEIPT}s. The accepted votes of each committed batch become one
+ * receipt batch, a Merkle tree whose root is chained onto the batches before it (see
+ * {@link VoteReceipts}). Writers only queue their batches here; the hashing runs on a thread of
+ * its own, so receipts never delay a commit or an acknowledgement.
+ *
+ * <p>A receipt goes to the client that sent the vote with a vote id. Every batch's leaves and
+ * chain value are kept for {@link #writeAudit}, and {@link #getChainHead()} is what the teacher
+ * publishes with the final results, so the audit cannot be rewritten afterwards.
+ */
+public class ReceiptLog {
+
+    private static final Committed STOP = new Committed(null, null);
+
+    private static final class Committed {
+        final Election election;
+        final Vote[] votes;
+
+        Committed(Election election, Vote[] votes) {
+            this.election = election;
+            this.votes = votes;
+        }
+    }
+
+    private static final class Batch {
+        final byte[][] leaves;
+        final byte[] root;
+        final byte[] chain;
+
+        Batch(byte[][] leaves, byte[] root, byte[] chain) {
+            this.leaves = leaves;
+            this.root = root;
+            this.chain = chain;
+        }
+    }
+
+    private final ServerMetrics metrics;
+    private final BlockingQueue<Committed> queue = new LinkedBlockingQueue<>();
+    // Submitted votes whose sender wants a receipt; Vote keeps identity equality, so two
+    // identical votes are never confused
+    private final Map<Vote, Long> wanted = new ConcurrentHashMap<>();
+    // Where each wanted receipt goes; a retried request moves it to the retry's connection
+    private final Map<Long, ClientSession> recipients = new ConcurrentHashMap<>();
+    // Receipts already built, for retries after the answer was lost; guarded by itself
+    private final Map<Long, byte[]> recent = new LinkedHashMap<Long, byte[]>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > VotingServer.MAX_REMEMBERED_VOTE_IDS;
+        }
+    };
+    // Guarded by this
+    private final List<Batch> batches = new ArrayList<>();
+    private byte[] chainHead = VoteReceipts.genesis();
+    private Thread thread;
+
+    public ReceiptLog(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::run, "vote-receipts");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Seals every batch queued so far, then stops the thread. */
+    public void stop() throws InterruptedException {
+        Thread running;
+        synchronized (this) {
+            running = thread;
+            thread = null;
+        }
+        if (running != null) {
+            queue.add(STOP);
+            running.join();
+        }
+    }
+
+    /** Sends {@code session} a receipt once {@code vote}'s batch is sealed. Call before submitting it. */
+    void expect(Vote vote, long voteId, ClientSession session) {
+        recipients.put(voteId, session);
+        wanted.put(vote, voteId);
+    }
+
+    /** The vote was not accepted, so there will be no receipt for it. */
+    void forget(Vote vote) {
+        Long voteId = wanted.remove(vote);
+        if (voteId != null) {
+            recipients.remove(voteId);
+        }
+    }
+
+    /**
+     * A retried request was answered as accepted: its receipt goes to the new connection. A
+     * receipt no longer among the recent ones is rebuilt from the batch holding {@code leaf}. Votes
+     * counted before the server restarted are in no batch, since the chain starts over, so they
+     * get none.
+     */
+    void resend(long voteId, byte[] leaf, ClientSession session) {
+        recipients.put(voteId, session);
+        byte[] frame;
+        synchronized (recent) {
+            frame = recent.get(voteId);
+        }
+        if (frame == null) {
+            frame = rebuild(voteId, leaf);
+        }
+        // Already sealed; whichever of us removes the recipient sends it
+        if (frame != null && recipients.remove(voteId, session)) {
+            session.send(frame);
+            metrics.receipts.increment();
+        }
+    }
+
+    /** Finds {@code leaf} in the sealed batches and builds its receipt, or returns null. */
+    private synchronized byte[] rebuild(long voteId, byte[] leaf) {
+        for (int batch = 0; batch < batches.size(); batch++) {
+            byte[][] leaves = batches.get(batch).leaves;
+            for (int index = 0; index < leaves.length; index++) {
+                if (Arrays.equals(leaves[index], leaf)) {
+                    byte[] previous = batch == 0 ? VoteReceipts.genesis() : batches.get(batch - 1).chain;
+                    return Messages.voteReceipt(voteId, batch, index, leaves.length, previous,
+                            VoteReceipts.proof(VoteReceipts.levels(Arrays.asList(leaves)), index));
+                }
+            }
+        }
+        return null;
+    }
+
+    void disconnected(ClientSession session) {
+        recipients.values().removeIf(recipient -> recipient == session);
+    }
+
+    /** Queues a committed batch's accepted votes. Runs on the writer thread, so it only copies. */
+    void committed(Election election, List<Vote> votes, boolean[] accepted) {
+        int count = 0;
+        for (int i = 0; i < votes.size(); i++) {
+            if (accepted[i]) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        Vote[] counted = new Vote[count];
+        for (int i = 0, j = 0; i < votes.size(); i++) {
+            if (accepted[i]) {
+                counted[j++] = votes.get(i);
+            }
+        }
+        queue.add(new Committed(election, counted));
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Committed committed = queue.take();
+                if (committed == STOP) {
+                    return;
+                }
+                seal(committed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void seal(Committed committed) {
+        Election election = committed.election;
+        List<byte[]> leaves = new ArrayList<>(committed.votes.length);
+        for (Vote vote : committed.votes) {
+            leaves.add(VoteReceipts.leaf(election.getId(), election.candidates.registeredId(vote.candidate),
+                    vote.student));
+        }
+        List<byte[][]> levels = VoteReceipts.levels(leaves);
+        byte[] root = levels.get(levels.size() - 1)[0];
+        int batch;
+        byte[] previous;
+        synchronized (this) {
+            batch = batches.size();
+            previous = chainHead;
+            chainHead = VoteReceipts.chain(previous, batch, root);
+            batches.add(new Batch(levels.get(0), root, chainHead));
+        }
+        for (int i = 0; i < committed.votes.length; i++) {
+            Long voteId = wanted.remove(committed.votes[i]);
+            if (voteId == null) {
+                // Sent without a vote id, so there is nowhere to send a receipt
+                continue;
+            }
+            byte[] frame = Messages.voteReceipt(voteId, batch, i, leaves.size(), previous,
+                    VoteReceipts.proof(levels, i));
+            synchronized (recent) {
+                recent.put(voteId, frame);
+            }
+            ClientSession session = recipients.remove(voteId);
+            if (session != null) {
+                session.send(frame);
+                metrics.receipts.increment();
+            }
+        }
+    }
+
+    /** Chain value after the last sealed batch; the genesis value before the first. */
+    public synchronized byte[] getChainHead() {
+        return chainHead.clone();
+    }
+
+    public synchronized int getBatchCount() {
+        return batches.size();
+    }
+
+    /**
+     * Writes every sealed batch as a {@code batch=} line with its root and chain value, followed by
+     * one {@code leaf=} line per counted vote, in order. Leaves are hashes, but with a handful of
+     * candidates anyone who knows a student's name can try each choice, so keep the file as private
+     * as the votes themselves.
+     */
+    public synchronized void writeAudit(Appendable out) throws IOException {
+        for (int i = 0; i < batches.size(); i++) {
+            Batch batch = batches.get(i);
+            out.append("batch=").append(Integer.toString(i))
+                    .append(" leaves=").append(Integer.toString(batch.leaves.length))
+                    .append(" root=").append(MediaLibrary.hex(batch.root))
+                    .append(" chain=").append(MediaLibrary.hex(batch.chain))
+                    .append('\n');
+            for (byte[] leaf : batch.leaves) {
+                out.append("leaf=").append(MediaLibrary.hex(leaf)).append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.votingcore.server;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for one {@link VotingServer}. Every hot-path update is a
+ * {@link LongAdder} increment or a lock-free histogram bucket bump; reading is left to the
+ * debug screen and the post-election dump.
+ */
+public class ServerMetrics {
+
+    final LongAdder accepted = new LongAdder();
+    final LongAdder duplicates = new LongAdder();
+    // Subset of duplicates answered from the voter index without touching storage
+    final LongAdder indexedDuplicates = new LongAdder();
+    // Unknown candidates or elections, and votes for closed elections
+    final LongAdder invalid = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    // Retried vote requests answered from the vote id cache
+    final LongAdder replayedRequests = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    final LongAdder batches = new LongAdder();
+    // Candidate media sent in BLOB_CHUNKs
+    final LongAdder mediaBytes = new LongAdder();
+    // VOTE_RECEIPTs sent, including resends to retried requests
+    final LongAdder receipts = new LongAdder();
+    // Votes answered ACK_RETRY by admission control: over the client's rate, or the queue was full
+    final LongAdder throttled = new LongAdder();
+    final LongAdder busy = new LongAdder();
+    // Clients that kept sending while throttled
+    final LongAdder abusiveDisconnects = new LongAdder();
+    // SHARD_DELTAs without a valid MAC, or sent to a server that is not a shard
+    final LongAdder rejectedShardDeltas = new LongAdder();
+    /** From handing a vote to the writer until its batch has committed. */
+    final LatencyHistogram commitLatency = new LatencyHistogram();
+    /** Time spent inside {@link VoteStore#insertBatch} per batch. */
+    final LatencyHistogram batchDuration = new LatencyHistogram();
+    private final long startNanos = System.nanoTime();
+    // Warm start milestones in System.nanoTime(); 0 until reached
+    private volatile long launchNanos = startNanos;
+    private volatile long loadNanos;
+    private volatile long acceptingNanos;
+    private final AtomicLong firstAcceptedNanos = new AtomicLong();
+    // Guarded by this; the rate is measured between consecutive calls
+    private long lastRateNanos = startNanos;
+    private long lastRateAccepted;
+
+    void recordResult(VoteResult result) {
+        if (result == VoteResult.ACCEPTED) {
+            if (firstAcceptedNanos.get() == 0) {
+                firstAcceptedNanos.compareAndSet(0, System.nanoTime());
+            }
+            accepted.increment();
+        } else if (result == VoteResult.DUPLICATE) {
+            duplicates.increment();
+        } else {
+            invalid.increment();
+        }
+    }
+
+    /**
+     * Sets when the app was launched, as {@link System#nanoTime()}, so the startup times count
+     * from there rather than from when the server was created.
+     */
+    public void setLaunchNanos(long nanos) {
+        launchNanos = nanos;
+    }
+
+    void recordLoad(long nanos) {
+        loadNanos = nanos;
+    }
+
+    void markAccepting() {
+        acceptingNanos = System.nanoTime();
+    }
+
+    /** From launch until clients could connect, or -1 if the server has not started. */
+    public long getStartupMillis() {
+        return sinceLaunchMillis(acceptingNanos);
+    }
+
+    /** From launch until the first vote was accepted, or -1 if none has been. */
+    public long getFirstVoteMillis() {
+        return sinceLaunchMillis(firstAcceptedNanos.get());
+    }
+
+    private long sinceLaunchMillis(long nanos) {
+        return nanos == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos - launchNanos);
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public long getInvalid() {
+        return invalid.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    public long getBusy() {
+        return busy.sum();
+    }
+
+    public long getAbusiveDisconnects() {
+        return abusiveDisconnects.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public LatencyHistogram getCommitLatency() {
+        return commitLatency;
+    }
+
+    public LatencyHistogram getBatchDuration() {
+        return batchDuration;
+    }
+
+    /** Accepted votes per second since the previous call (or since start, on the first). */
+    public synchronized double sampleVotesPerSecond() {
+        long now = System.nanoTime();
+        long total = accepted.sum();
+        double seconds = (now - lastRateNanos) / 1e9;
+        double rate = seconds <= 0 ? 0 : (total - lastRateAccepted) / seconds;
+        lastRateNanos = now;
+        lastRateAccepted = total;
+        return rate;
+    }
+
+    /** Writes the server-wide counters as {@code key=value} lines. */
+    void writeTo(Appendable out) throws IOException {
+        long uptimeSeconds = (System.nanoTime() - startNanos) / 1_000_000_000L;
+        line(out, "uptime_s", uptimeSeconds);
+        line(out, "startup_load_ms", TimeUnit.NANOSECONDS.toMillis(loadNanos));
+        line(out, "startup_accepting_ms", getStartupMillis());
+        line(out, "startup_first_vote_ms", getFirstVoteMillis());
+        line(out, "votes_accepted", accepted.sum());
+        line(out, "votes_duplicate", duplicates.sum());
+        line(out, "votes_duplicate_indexed", indexedDuplicates.sum());
+        line(out, "votes_invalid", invalid.sum());
+        line(out, "votes_failed", failed.sum());
+        line(out, "votes_replayed", replayedRequests.sum());
+        line(out, "votes_throttled", throttled.sum());
+        line(out, "votes_busy", busy.sum());
+        line(out, "clients_disconnected_abusive", abusiveDisconnects.sum());
+        line(out, "shard_deltas_rejected", rejectedShardDeltas.sum());
+        out.append("votes_per_s=").append(String.format(Locale.ROOT, "%.1f", sampleVotesPerSecond()))
+                .append('\n');
+        line(out, "bytes_in", bytesIn.sum());
+        line(out, "bytes_out", bytesOut.sum());
+        line(out, "batches", batches.sum());
+        line(out, "media_bytes_sent", mediaBytes.sum());
+        line(out, "receipts_sent", receipts.sum());
+        commitLatency.writeTo(out, "commit_latency_us");
+        batchDuration.writeTo(out, "batch_duration_us");
+    }
+
+    static void line(Appendable out, String key, long value) throws IOException {
+        out.append(key).append('=').append(Long.toString(value)).append('\n');
+    }
+}
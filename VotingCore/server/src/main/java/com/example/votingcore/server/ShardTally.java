@@ -0,0 +1,317 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.protocol.Frames;
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.PayloadReader;
+import com.example.votingcore.protocol.PayloadWriter;
+import com.example.votingcore.protocol.ProtocolException;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Mergeable election state for several teacher devices that each collect a share of the
+ * students. It is a state-based CRDT made of two parts:
+ *
+ * <ul>
+ *   <li>a G-counter per candidate: one count per node, merged by taking the maximum, so each
+ *       node only ever raises its own entries;</li>
+ *   <li>a grow-only voter set holding, per student, the vote each node accepted. A student who
+ *       voted on two nodes is a cross-shard duplicate: the earliest vote (by timestamp, then node
+ *       id) wins and every other one is subtracted from its candidate's count.</li>
+ * </ul>
+ *
+ * Merging is commutative, associative and idempotent, so deltas can be delivered in any order,
+ * more than once, and between any pair of nodes. Every node converges on the same
+ * {@link #results()} once it has seen the same deltas.
+ *
+ * <p>Changes, local or merged in, are collected until {@link #takeDelta} hands them out, so a
+ * node forwards only what is new since its last sync. On the wire a delta carries a MAC under a
+ * key the teachers share, since a forged one could raise any count or lock students out; a
+ * replayed genuine delta needs no protection, as merging it again changes nothing.
+ *
+ * <p>Only the counters survive a restart, through {@link #seedLocalCounts}. Voter entries are
+ * kept in memory, so a restarted node learns other nodes' voters again only if they are resent.
+ */
+public class ShardTally {
+
+    /** Voter entries per {@link MessageType#SHARD_DELTA} frame; keeps frames well under 64 KiB. */
+    public static final int DEFAULT_DELTA_ENTRIES = 256;
+    /** HMAC-SHA256 closing every {@link MessageType#SHARD_DELTA}. */
+    public static final int MAC_SIZE = 32;
+    /** Shortest shared key {@link #mac} accepts. */
+    public static final int MIN_KEY_SIZE = 16;
+
+    /** One vote accepted by one node. A node accepts at most one vote per student. */
+    public static final class Entry {
+        public final String student;
+        public final String candidate;
+        public final String node;
+        public final long timestampMillis;
+
+        public Entry(String student, String candidate, String node, long timestampMillis) {
+            this.student = student;
+            this.candidate = candidate;
+            this.node = node;
+            this.timestampMillis = timestampMillis;
+        }
+
+        boolean precedes(Entry other) {
+            if (timestampMillis != other.timestampMillis) {
+                return timestampMillis < other.timestampMillis;
+            }
+            return node.compareTo(other.node) < 0;
+        }
+    }
+
+    /** Changes to send to other nodes; encoded as one {@link MessageType#SHARD_DELTA} frame. */
+    public static final class Delta {
+        /** node -> candidate -> that node's count. */
+        public final Map<String, Map<String, Long>> counters;
+        public final List<Entry> entries;
+
+        public Delta(Map<String, Map<String, Long>> counters, List<Entry> entries) {
+            this.counters = counters;
+            this.entries = entries;
+        }
+
+        public boolean isEmpty() {
+            return counters.isEmpty() && entries.isEmpty();
+        }
+
+        /**
+         * {@code u16 nodes, (string node, u16 candidates, (string candidate, u64 count) *) *,
+         * u16 entries, (string student, string candidate, string node, u64 timestamp) *,
+         * byte[32] mac}, where {@code mac} is the HMAC-SHA256 of everything before it under the
+         * teachers' shared {@code key}.
+         */
+        public byte[] toFrame(byte[] key) {
+            PayloadWriter writer = new PayloadWriter(256 + entries.size() * 48);
+            writer.writeShort(counters.size());
+            for (Map.Entry<String, Map<String, Long>> node : counters.entrySet()) {
+                writer.writeString(node.getKey());
+                writer.writeShort(node.getValue().size());
+                for (Map.Entry<String, Long> count : node.getValue().entrySet()) {
+                    writer.writeString(count.getKey());
+                    writer.writeLong(count.getValue());
+                }
+            }
+            writer.writeShort(entries.size());
+            for (Entry entry : entries) {
+                writer.writeString(entry.student);
+                writer.writeString(entry.candidate);
+                writer.writeString(entry.node);
+                writer.writeLong(entry.timestampMillis);
+            }
+            byte[] unsigned = writer.toFrame(MessageType.SHARD_DELTA);
+            byte[] mac = mac(key, unsigned, Frames.HEADER_SIZE, unsigned.length - Frames.HEADER_SIZE);
+            return writer.writeBytes(mac, 0, mac.length).toFrame(MessageType.SHARD_DELTA);
+        }
+
+        /**
+         * Reads a delta written by {@link #toFrame} under the same {@code key}. Returns null if its
+         * MAC does not match, i.e. it was not sent by a teacher holding the key or was altered.
+         */
+        public static Delta read(PayloadReader payload, byte[] key) throws ProtocolException {
+            if (payload.remaining() < MAC_SIZE) {
+                throw new ProtocolException("Shard delta without a MAC");
+            }
+            byte[] body = new byte[payload.remaining() - MAC_SIZE];
+            payload.readBytes(body, 0, body.length);
+            byte[] mac = new byte[MAC_SIZE];
+            payload.readBytes(mac, 0, mac.length);
+            if (!MessageDigest.isEqual(mac, mac(key, body, 0, body.length))) {
+                return null;
+            }
+            return read(new PayloadReader().reset(body, 0, body.length));
+        }
+
+        private static Delta read(PayloadReader payload) throws ProtocolException {
+            Map<String, Map<String, Long>> counters = new LinkedHashMap<>();
+            int nodes = payload.readUnsignedShort();
+            for (int i = 0; i < nodes; i++) {
+                String node = payload.readString();
+                Map<String, Long> counts = new LinkedHashMap<>();
+                int candidates = payload.readUnsignedShort();
+                for (int j = 0; j < candidates; j++) {
+                    counts.put(payload.readString(), payload.readLong());
+                }
+                counters.put(node, counts);
+            }
+            int count = payload.readUnsignedShort();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(new Entry(payload.readString(), payload.readString(), payload.readString(),
+                        payload.readLong()));
+            }
+            return new Delta(counters, entries);
+        }
+    }
+
+    /** HMAC-SHA256 of {@code length} bytes of {@code data} under {@code key}. */
+    static byte[] mac(byte[] key, byte[] data, int offset, int length) {
+        if (key.length < MIN_KEY_SIZE) {
+            throw new IllegalArgumentException("Shard key shorter than " + MIN_KEY_SIZE + " bytes");
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            mac.update(data, offset, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            // Every Java platform is required to provide HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final String nodeId;
+    // Guarded by this
+    private final Map<String, Map<String, Long>> counters = new HashMap<>();
+    private final Map<String, List<Entry>> voters = new HashMap<>();
+    // Votes that lost to an earlier vote by the same student on another node, per candidate
+    private final Map<String, Long> overcounts = new HashMap<>();
+    private int crossShardDuplicates;
+    private final Map<String, Set<String>> dirtyCounters = new LinkedHashMap<>();
+    private final List<Entry> unsentEntries = new ArrayList<>();
+
+    public ShardTally(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /** Records a vote this node accepted. */
+    public synchronized void recordLocal(String student, String candidate, long timestampMillis) {
+        Entry entry = new Entry(student, candidate, nodeId, timestampMillis);
+        if (addEntry(entry)) {
+            raise(nodeId, candidate, count(nodeId, candidate) + 1);
+        }
+    }
+
+    /**
+     * Raises this node's counters to {@code stored}, the committed counts from its own storage,
+     * so a restarted node never reports less than it already sent.
+     */
+    public synchronized void seedLocalCounts(Map<String, Long> stored) {
+        for (Map.Entry<String, Long> count : stored.entrySet()) {
+            raise(nodeId, count.getKey(), count.getValue());
+        }
+    }
+
+    /**
+     * Merges another node's delta.
+     *
+     * @return students this node had not seen vote before, e.g. to add to a {@link VoterIndex}
+     */
+    public synchronized List<String> merge(Delta delta) {
+        for (Map.Entry<String, Map<String, Long>> node : delta.counters.entrySet()) {
+            for (Map.Entry<String, Long> count : node.getValue().entrySet()) {
+                raise(node.getKey(), count.getKey(), count.getValue());
+            }
+        }
+        List<String> newVoters = new ArrayList<>();
+        for (Entry entry : delta.entries) {
+            boolean known = voters.containsKey(entry.student);
+            if (addEntry(entry) && !known) {
+                newVoters.add(entry.student);
+            }
+        }
+        return newVoters;
+    }
+
+    /**
+     * Hands out everything changed since the last call: every changed counter and up to
+     * {@code maxEntries} voter entries. Call again while the result is not empty to drain it.
+     */
+    public synchronized Delta takeDelta(int maxEntries) {
+        Map<String, Map<String, Long>> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> node : dirtyCounters.entrySet()) {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (String candidate : node.getValue()) {
+                counts.put(candidate, count(node.getKey(), candidate));
+            }
+            changed.put(node.getKey(), counts);
+        }
+        dirtyCounters.clear();
+        int taken = Math.min(maxEntries, unsentEntries.size());
+        List<Entry> entries = new ArrayList<>(unsentEntries.subList(0, taken));
+        unsentEntries.subList(0, taken).clear();
+        return new Delta(changed, entries);
+    }
+
+    /** Merged counts with cross-shard duplicates removed. */
+    public synchronized Map<String, Long> results() {
+        Map<String, Long> results = new LinkedHashMap<>();
+        for (Map<String, Long> counts : counters.values()) {
+            for (Map.Entry<String, Long> count : counts.entrySet()) {
+                results.merge(count.getKey(), count.getValue(), Long::sum);
+            }
+        }
+        for (Map.Entry<String, Long> overcount : overcounts.entrySet()) {
+            // Counters can briefly trail entries if deltas arrive out of order
+            results.computeIfPresent(overcount.getKey(), (candidate, votes) -> Math.max(0, votes - overcount.getValue()));
+        }
+        return results;
+    }
+
+    /** Students who voted on more than one node; only their earliest vote counts. */
+    public synchronized int getCrossShardDuplicates() {
+        return crossShardDuplicates;
+    }
+
+    private long count(String node, String candidate) {
+        Map<String, Long> counts = counters.get(node);
+        Long count = counts == null ? null : counts.get(candidate);
+        return count == null ? 0 : count;
+    }
+
+    private void raise(String node, String candidate, long value) {
+        if (value <= count(node, candidate)) {
+            return;
+        }
+        counters.computeIfAbsent(node, key -> new HashMap<>()).put(candidate, value);
+        dirtyCounters.computeIfAbsent(node, key -> new LinkedHashSet<>()).add(candidate);
+    }
+
+    /** Adds an entry unless its node already has one for the student. Returns whether it was new. */
+    private boolean addEntry(Entry entry) {
+        List<Entry> votes = voters.get(entry.student);
+        if (votes == null) {
+            votes = new ArrayList<>(1);
+            voters.put(entry.student, votes);
+        } else {
+            for (Entry existing : votes) {
+                if (existing.node.equals(entry.node)) {
+                    return false;
+                }
+            }
+            // Exactly one of the new entry and the current winner loses
+            Entry winner = votes.get(0);
+            for (Entry existing : votes) {
+                if (existing.precedes(winner)) {
+                    winner = existing;
+                }
+            }
+            Entry loser = entry.precedes(winner) ? winner : entry;
+            overcounts.merge(loser.candidate, 1L, Long::sum);
+            if (votes.size() == 1) {
+                crossShardDuplicates++;
+            }
+        }
+        votes.add(entry);
+        unsentEntries.add(entry);
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes live results to clients that sent {@link MessageType#SUBSCRIBE_TALLY}. Every interval
+ * it compares each subscribed election's tally with what it last published and, only if a count
+ * changed, encodes one {@link MessageType#TALLY_DELTA} with the new counts and queues that same
+ * array for every subscriber.
+ *
+ * <p>The last {@link #MAX_HISTORY} deltas of each election are kept, so a client that reconnects
+ * with the version it last applied is sent only what it missed. A client further behind gets a
+ * {@link MessageType#TALLY_SNAPSHOT}, which is also encoded at most once per version.
+ */
+public class TallyPublisher {
+
+    public static final long DEFAULT_INTERVAL_MS = 1000;
+    /** Deltas kept per election for clients resuming after a short disconnect. */
+    public static final int MAX_HISTORY = 64;
+
+    /** One election's published versions and its subscribers. */
+    private static final class Stream {
+        final Election election;
+        final Map<String, Long> published;
+        // Deltas for versions version - history.size() + 1 .. version, oldest first
+        final ArrayDeque<byte[]> history = new ArrayDeque<>();
+        final Set<ClientSession> subscribers = ConcurrentHashMap.newKeySet();
+        int version = 1;
+        // Snapshot of version, encoded when first asked for
+        byte[] snapshot;
+
+        Stream(Election election) {
+            this.election = election;
+            this.published = election.getResults();
+        }
+    }
+
+    private final long intervalMillis;
+    private final int streamId;
+    // Guarded by this
+    private final Map<Integer, Stream> streams = new HashMap<>();
+    private ScheduledExecutorService timer;
+
+    public TallyPublisher(long intervalMillis) {
+        this(intervalMillis, newStreamId());
+    }
+
+    /** @param streamId sent with every version; must differ from any earlier run's and not be 0 */
+    TallyPublisher(long intervalMillis, int streamId) {
+        this.intervalMillis = intervalMillis;
+        this.streamId = streamId;
+    }
+
+    private static int newStreamId() {
+        int id;
+        do {
+            id = new SecureRandom().nextInt();
+        } while (id == 0);
+        return id;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tally-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::publish, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * Adds {@code session} to an election's subscribers and sends it whatever brings
+     * {@code knownVersion} of {@code stream} up to date.
+     */
+    public synchronized void subscribe(ClientSession session, Election election, int stream, int knownVersion) {
+        Stream current = streams.get(election.getId());
+        if (current == null) {
+            current = new Stream(election);
+            streams.put(election.getId(), current);
+        }
+        int missed = current.version - knownVersion;
+        if (stream == streamId && missed >= 0 && missed <= current.history.size()) {
+            int skip = current.history.size() - missed;
+            for (byte[] delta : current.history) {
+                if (skip-- <= 0) {
+                    session.send(delta);
+                }
+            }
+        } else {
+            if (current.snapshot == null) {
+                current.snapshot = encode(MessageType.TALLY_SNAPSHOT, current, current.published);
+            }
+            session.send(current.snapshot);
+        }
+        current.subscribers.add(session);
+    }
+
+    /** Forgets a disconnected client. */
+    public synchronized void unsubscribe(ClientSession session) {
+        for (Stream stream : streams.values()) {
+            stream.subscribers.remove(session);
+        }
+    }
+
+    /** Sends a delta for every election whose counts changed since the last call. */
+    synchronized void publish() {
+        for (Stream stream : streams.values()) {
+            Map<String, Long> changed = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> count : stream.election.getResults().entrySet()) {
+                if (!count.getValue().equals(stream.published.get(count.getKey()))) {
+                    changed.put(count.getKey(), count.getValue());
+                }
+            }
+            if (changed.isEmpty()) {
+                continue;
+            }
+            stream.published.putAll(changed);
+            stream.version++;
+            stream.snapshot = null;
+            byte[] delta = encode(MessageType.TALLY_DELTA, stream, changed);
+            stream.history.addLast(delta);
+            if (stream.history.size() > MAX_HISTORY) {
+                stream.history.removeFirst();
+            }
+            for (ClientSession session : stream.subscribers) {
+                if (!session.send(delta)) {
+                    stream.subscribers.remove(session);
+                }
+            }
+        }
+    }
+
+    private byte[] encode(int type, Stream stream, Map<String, Long> counts) {
+        return Messages.tally(type, stream.election.getId(), streamId, stream.version,
+                new ArrayList<>(counts.keySet()), new ArrayList<>(counts.values()));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.server.transport.TcpServerTransport;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the voting server over loopback TCP with in-memory storage, for load tests on a build box.
+ *
+ * <pre>
+ * gradle :server:run --args="5005 Ravi Meera Dev"
+ * </pre>
+ */
+public class TcpServerMain {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: TcpServerMain <port> <candidate>...");
+            System.exit(2);
+        }
+        int port = Integer.parseInt(args[0]);
+        AtomicLong accepted = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+
+        VotingServer server = new VotingServer(new InMemoryVoteStore(), new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+                if (result == VoteResult.ACCEPTED) {
+                    accepted.incrementAndGet();
+                } else {
+                    rejected.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                System.err.println("Error: " + e);
+            }
+        }, 4096, VotingServer.DEFAULT_IDLE_TIMEOUT_MS, VotingServer.DEFAULT_BATCH_SIZE,
+                VotingServer.DEFAULT_BATCH_DELAY_MS);
+        for (int i = 1; i < args.length; i++) {
+            server.addCandidate(args[i]);
+        }
+
+        TcpServerTransport transport = new TcpServerTransport(port);
+        server.start(transport);
+        System.out.println("Listening on 127.0.0.1:" + transport.getPort());
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            System.out.println("Accepted " + accepted.get() + ", rejected " + rejected.get());
+            System.out.println("Results: " + server.getResults());
+            stopped.countDown();
+        }));
+        stopped.await();
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.votingcore.server;
+
+/**
+ * A single ballot as received from a student device.
+ */
+public final class Vote {
+
+    /** {@link #voteId} of a vote sent without one, e.g. as a plain {@code VOTE}. */
+    public static final long NO_ID = 0;
+
+    public final String student;
+    public final String candidate;
+    /** The id the student's device gave the vote, stored with it so a resend is recognised. */
+    public final long voteId;
+
+    public Vote(String student, String candidate) {
+        this(student, candidate, NO_ID);
+    }
+
+    public Vote(String student, String candidate, long voteId) {
+        this.student = student;
+        this.candidate = candidate;
+        this.voteId = voteId;
+    }
+
+    @Override
+    public String toString() {
+        return student + " -> " + candidate;
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.votingcore.server;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed-size, memory-mapped, append-only log of accepted votes.
+ *
+ * <pre>
+ * header:  u32 magic, u32 epoch, 8 bytes reserved
+ * record:  u32 length, u32 crc32(epoch + body), u32 epoch,
+ *          body = u64 voteId, u16 studentLength, student UTF-8, u16 candidateLength, candidate UTF-8
+ * </pre>
+ *
+ * Appending is a copy into the mapping; {@link #sync()} makes everything appended so far durable.
+ * {@link #reset()} empties the journal by bumping the epoch instead of zeroing the file, so
+ * records left over from an older epoch, or torn by a crash mid-append, fail validation and mark
+ * the end of the log on recovery.
+ *
+ * <p>Journals written before votes carried ids have a different magic and no {@code voteId}. They
+ * are read back, and appended to, in that format until the next {@link #reset()}.
+ *
+ * <p>Not thread-safe; {@link JournaledVoteStore} serializes access.
+ */
+public class VoteJournal implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+    static final int MAGIC = 0x564A5232; // "VJR2"
+    static final int MAGIC_WITHOUT_IDS = 0x564A524E; // "VJRN"
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 12;
+    private static final int MAX_STRING = 0xFFFF;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+    private final List<Vote> recovered;
+    private int epoch;
+    // Bytes of vote id at the start of each body; 0 in a journal from before vote ids
+    private int idSize = 8;
+    private int position;
+    private int count;
+
+    /** Opens or creates the journal and reads back every record of the current epoch. */
+    public VoteJournal(File path, int capacity) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        boolean fresh = file.length() < HEADER_SIZE;
+        if (file.length() < capacity) {
+            file.setLength(capacity);
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        int magic = buffer.getInt(0);
+        if (fresh || (magic != MAGIC && magic != MAGIC_WITHOUT_IDS)) {
+            epoch = 1;
+            writeHeader();
+            recovered = new ArrayList<>();
+        } else {
+            idSize = magic == MAGIC ? 8 : 0;
+            epoch = buffer.getInt(4);
+            recovered = scan();
+        }
+    }
+
+    /** Votes found in the journal when it was opened. */
+    public List<Vote> getRecovered() {
+        return recovered;
+    }
+
+    /** Number of votes appended in the current epoch. */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Appends every vote, or none if they do not all fit.
+     *
+     * @return false if the journal is too full; it must be folded and {@link #reset()} first
+     */
+    public boolean append(List<Vote> votes) {
+        int needed = 0;
+        List<byte[]> encoded = new ArrayList<>(votes.size() * 2);
+        for (Vote vote : votes) {
+            byte[] student = utf8(vote.student);
+            byte[] candidate = utf8(vote.candidate);
+            encoded.add(student);
+            encoded.add(candidate);
+            needed += RECORD_HEADER_SIZE + idSize + 4 + student.length + candidate.length;
+        }
+        if (position + needed > buffer.capacity()) {
+            return false;
+        }
+        for (int i = 0; i < encoded.size(); i += 2) {
+            writeRecord(votes.get(i / 2).voteId, encoded.get(i), encoded.get(i + 1));
+        }
+        return true;
+    }
+
+    /** Forces appended records to storage. */
+    public void sync() {
+        buffer.force();
+    }
+
+    /** Discards every record. Durable once this returns. */
+    public void reset() {
+        epoch++;
+        idSize = 8;
+        position = HEADER_SIZE;
+        count = 0;
+        writeHeader();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, epoch);
+        buffer.putLong(8, 0);
+        buffer.force();
+        position = HEADER_SIZE;
+    }
+
+    private void writeRecord(long voteId, byte[] student, byte[] candidate) {
+        int length = idSize + 4 + student.length + candidate.length;
+        int body = position + RECORD_HEADER_SIZE;
+        if (idSize > 0) {
+            buffer.putLong(body, voteId);
+            body += idSize;
+        }
+        buffer.putShort(body, (short) student.length);
+        put(body + 2, student);
+        buffer.putShort(body + 2 + student.length, (short) candidate.length);
+        put(body + 4 + student.length, candidate);
+        buffer.putInt(position + 8, epoch);
+        buffer.putInt(position + 4, checksum(position + 8, length + 4));
+        // Written last so a record is never valid before its body is complete
+        buffer.putInt(position, length);
+        position += RECORD_HEADER_SIZE + length;
+        count++;
+    }
+
+    private List<Vote> scan() {
+        List<Vote> votes = new ArrayList<>();
+        position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE + 4 <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            int body = position + RECORD_HEADER_SIZE;
+            int fixed = idSize + 4;
+            if (length < fixed || length > buffer.capacity() - body
+                    || buffer.getInt(position + 8) != epoch
+                    || buffer.getInt(position + 4) != checksum(position + 8, length + 4)) {
+                break;
+            }
+            long voteId = idSize > 0 ? buffer.getLong(body) : Vote.NO_ID;
+            int strings = body + idSize;
+            int studentLength = buffer.getShort(strings) & 0xFFFF;
+            if (fixed + studentLength > length) {
+                break;
+            }
+            String student = string(strings + 2, studentLength);
+            int candidateLength = buffer.getShort(strings + 2 + studentLength) & 0xFFFF;
+            if (fixed + studentLength + candidateLength != length) {
+                break;
+            }
+            String candidate = string(strings + 4 + studentLength, candidateLength);
+            votes.add(new Vote(student, candidate, voteId));
+            position = body + length;
+            count++;
+        }
+        return votes;
+    }
+
+    private int checksum(int offset, int length) {
+        crc.reset();
+        crc.update(region(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private void put(int offset, byte[] bytes) {
+        region(offset, bytes.length).put(bytes);
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        region(offset, length).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** A view of {@code [offset, offset + length)} that leaves the shared buffer's position alone. */
+    private ByteBuffer region(int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        // Through Buffer: the covariant ByteBuffer overrides are missing on older Android runtimes
+        ((Buffer) view).limit(offset + length);
+        ((Buffer) view).position(offset);
+        return view;
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING) {
+            throw new IllegalArgumentException("String too long for the journal");
+        }
+        return bytes;
+    }
+}
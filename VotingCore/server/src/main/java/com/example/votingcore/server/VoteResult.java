@@ -0,0 +1,12 @@
+package com.example.votingcore.server;
+
+/**
+ * Outcome of submitting a vote, reported back to the submitting client.
+ */
+public enum VoteResult {
+    ACCEPTED,
+    DUPLICATE,
+    INVALID_CANDIDATE,
+    /** The election exists but no longer takes votes. */
+    ELECTION_CLOSED
+}
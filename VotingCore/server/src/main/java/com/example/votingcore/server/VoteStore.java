@@ -0,0 +1,35 @@
+package com.example.votingcore.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Durable storage for votes. Implemented by the SQLite helper in TeacherApp.
+ */
+public interface VoteStore {
+
+    /**
+     * Persists {@code votes} in one transaction, in order. {@code accepted[i]} is set to
+     * {@code true} if vote {@code i} was stored, or {@code false} if the student had already voted.
+     */
+    void insertBatch(List<Vote> votes, boolean[] accepted) throws Exception;
+
+    /** Returns the number of stored votes per candidate, used to rebuild the tally on start. */
+    Map<String, Long> loadVoteCounts() throws Exception;
+
+    /**
+     * Sets {@code found[i]} for every vote whose student already has a stored vote, without
+     * storing anything. Lets a write-ahead layer reject duplicates before the votes reach here.
+     */
+    void findVoters(List<Vote> votes, boolean[] found) throws Exception;
+
+    /**
+     * Returns the vote id stored with {@code student}'s vote, or {@link Vote#NO_ID} if they have
+     * no vote or it was sent without an id. Only asked for students already known to have voted.
+     */
+    long findVoteId(String student) throws Exception;
+
+    /** Passes every student with a stored vote to {@code voter}, used to rebuild the voter index. */
+    void forEachVoter(Consumer<String> voter) throws Exception;
+}
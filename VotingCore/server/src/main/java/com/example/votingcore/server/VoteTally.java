@@ -0,0 +1,69 @@
+package com.example.votingcore.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running per-candidate vote counts. Client threads record committed votes concurrently; the UI
+ * reads a snapshot in O(candidates) without touching the database.
+ *
+ * <p>Counters are {@link LongAdder}s so simultaneous votes for the same candidate do not contend
+ * on a single cache line.
+ */
+public class VoteTally {
+
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    /** Records one committed vote for {@code candidate}. */
+    public void increment(String candidate) {
+        counter(candidate).increment();
+    }
+
+    /** Adds {@code votes} to a candidate, e.g. when rebuilding from stored rows. */
+    public void add(String candidate, long votes) {
+        counter(candidate).add(votes);
+    }
+
+    /** Replaces all counts, typically with the result of a {@code GROUP BY} query at startup. */
+    public void load(Map<String, Long> stored) {
+        counts.clear();
+        for (Map.Entry<String, Long> entry : stored.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public long count(String candidate) {
+        LongAdder adder = counts.get(candidate);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public long total() {
+        long total = 0;
+        for (LongAdder adder : counts.values()) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the current counts. Votes committed while the snapshot is taken may or may not be
+     * included, but every count is one that was actually reached.
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    private LongAdder counter(String candidate) {
+        LongAdder adder = counts.get(candidate);
+        if (adder == null) {
+            adder = counts.computeIfAbsent(candidate, key -> new LongAdder());
+        }
+        return adder;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.votingcore.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of students who have already voted, kept in memory so replayed and spam votes are rejected
+ * without a database round trip.
+ *
+ * <p>Students are stored as 64-bit fingerprints in an open-addressing table that is kept at most
+ * half full, i.e. 8-16 bytes per voter instead of the ~60 bytes a {@code HashSet<String>} entry
+ * costs. Two different names share a fingerprint with probability about n²/2⁶⁵ (around 3e-10
+ * for 100k voters), which is the only way a first vote could be wrongly reported as a duplicate.
+ *
+ * <p>Lookups take no lock. A lookup racing with an insert may miss the new student; that vote
+ * then simply falls through to the database, which still enforces uniqueness.
+ */
+public class VoterIndex {
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private volatile AtomicLongArray table;
+    private int size;
+
+    public VoterIndex() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public VoterIndex(int expectedVoters) {
+        table = new AtomicLongArray(capacityFor(expectedVoters));
+    }
+
+    /** True if {@code student} is known to have voted. */
+    public boolean contains(String student) {
+        long fingerprint = fingerprint(student);
+        AtomicLongArray slots = table;
+        int mask = slots.length() - 1;
+        for (int i = (int) fingerprint & mask; ; i = (i + 1) & mask) {
+            long slot = slots.get(i);
+            if (slot == fingerprint) {
+                return true;
+            }
+            if (slot == 0) {
+                return false;
+            }
+        }
+    }
+
+    /** Records that {@code student} has a stored vote. Returns false if already present. */
+    public synchronized boolean add(String student) {
+        long fingerprint = fingerprint(student);
+        if (!insert(table, fingerprint)) {
+            return false;
+        }
+        size++;
+        if (size * 2 > table.length()) {
+            resize(table.length() * 2);
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Approximate heap used by the table, in bytes. */
+    public long memoryFootprintBytes() {
+        return 16L + 8L * table.length();
+    }
+
+    private void resize(int capacity) {
+        AtomicLongArray old = table;
+        AtomicLongArray grown = new AtomicLongArray(capacity);
+        for (int i = 0; i < old.length(); i++) {
+            long slot = old.get(i);
+            if (slot != 0) {
+                insert(grown, slot);
+            }
+        }
+        // Readers switch to the new table only once it is complete
+        table = grown;
+    }
+
+    private static boolean insert(AtomicLongArray slots, long fingerprint) {
+        int mask = slots.length() - 1;
+        for (int i = (int) fingerprint & mask; ; i = (i + 1) & mask) {
+            long slot = slots.get(i);
+            if (slot == fingerprint) {
+                return false;
+            }
+            if (slot == 0) {
+                slots.set(i, fingerprint);
+                return true;
+            }
+        }
+    }
+
+    private static int capacityFor(int expectedVoters) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedVoters * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /** FNV-1a over the UTF-16 code units followed by a MurmurHash3 finalizer; never 0. */
+    static long fingerprint(String student) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < student.length(); i++) {
+            hash ^= student.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+}
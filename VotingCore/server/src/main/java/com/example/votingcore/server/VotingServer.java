@@ -0,0 +1,961 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.PayloadReader;
+import com.example.votingcore.protocol.VoteReceipts;
+import com.example.votingcore.server.transport.ServerTransport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The teacher side of one or more concurrent elections, independent of how students connect. It
+ * accepts clients from a {@link ServerTransport}, validates and persists their votes through each
+ * {@link Election}'s own {@link GroupCommitWriter}, keeps the running {@link VoteTally}s and
+ * broadcasts candidate lists and results.
+ *
+ * <p>The server starts with the {@link Election#DEFAULT_ID default election}; the methods that
+ * take no election id act on it.
+ *
+ * <p>TeacherApp runs it over RFCOMM; tests and benchmarks run it over loopback TCP.
+ */
+public class VotingServer {
+
+    public static final int DEFAULT_MAX_CLIENTS = 30;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 10 * 60 * 1000;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final long DEFAULT_BATCH_DELAY_MS = 20;
+    /**
+     * How many recent vote ids are remembered to answer retried {@link MessageType#VOTE_REQUEST}s
+     * without storage. Older retries are matched against the vote id stored with the vote.
+     */
+    public static final int MAX_REMEMBERED_VOTE_IDS = 4096;
+    public static final String DEFAULT_ELECTION_TITLE = "Election";
+
+    /** Callbacks for the UI. They run on server threads. */
+    public interface Listener {
+        void onVote(String student, String candidate, VoteResult result);
+
+        /** A client connection failed, or a vote could not be stored. */
+        void onError(Exception e);
+    }
+
+    private final Listener listener;
+    private final int maxClients;
+    private final long idleTimeoutMillis;
+    private final int batchSize;
+    private final long batchDelayMillis;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final Election defaultElection;
+    // In id order, so clients get the ballots in a stable order
+    private final Map<Integer, Election> elections = new ConcurrentSkipListMap<>();
+    // Outcome per vote id, including requests still being committed; oldest evicted first
+    private final Map<Long, CompletableFuture<VoteResult>> recentVoteIds =
+            new LinkedHashMap<Long, CompletableFuture<VoteResult>>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, CompletableFuture<VoteResult>> eldest) {
+                    return size() > MAX_REMEMBERED_VOTE_IDS;
+                }
+            };
+    private volatile ConnectionManager connectionManager;
+    // Guarded by this
+    private boolean loaded;
+    private volatile ShardTally shard;
+    // Written before shard, so whoever sees shard sees its key
+    private volatile byte[] shardKey;
+    private volatile TallyPublisher tallyPublisher;
+    private final MediaLibrary mediaLibrary = new MediaLibrary();
+    private volatile MediaTransfer mediaTransfer;
+    private volatile ReceiptLog receiptLog;
+    private volatile IngestLimiter ingestLimiter;
+
+    public VotingServer(VoteStore store, Listener listener) {
+        this(store, listener, DEFAULT_MAX_CLIENTS, DEFAULT_IDLE_TIMEOUT_MS, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_DELAY_MS);
+    }
+
+    public VotingServer(VoteStore store, Listener listener, int maxClients, long idleTimeoutMillis,
+                        int batchSize, long batchDelayMillis) {
+        this.listener = listener;
+        this.maxClients = maxClients;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.batchSize = batchSize;
+        this.batchDelayMillis = batchDelayMillis;
+        this.mediaTransfer = new MediaTransfer(mediaLibrary, MediaTransfer.DEFAULT_BYTES_PER_SECOND, metrics);
+        this.defaultElection = newElection(Election.DEFAULT_ID, DEFAULT_ELECTION_TITLE, store);
+        elections.put(Election.DEFAULT_ID, defaultElection);
+    }
+
+    private Election newElection(int id, String title, VoteStore store) {
+        Election election = new Election(id, title, store,
+                new GroupCommitWriter(store, batchSize, batchDelayMillis, metrics));
+        ReceiptLog log = receiptLog;
+        if (log != null) {
+            issueReceipts(election, log);
+        }
+        return election;
+    }
+
+    private static void issueReceipts(Election election, ReceiptLog log) {
+        election.writer.setCommitListener((votes, accepted) -> log.committed(election, votes, accepted));
+    }
+
+    /**
+     * Rebuilds every election's tally and voter index from storage. Blocks on the database, so
+     * call it off the main thread, e.g. while the app waits for permissions, leaving
+     * {@link #start} only the transport to open. Does nothing the second time.
+     */
+    public synchronized void load() throws Exception {
+        if (loaded) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        for (Election election : elections.values()) {
+            Map<String, Long> stored = election.load();
+            if (shard != null && election == defaultElection) {
+                shard.seedLocalCounts(stored);
+            }
+        }
+        loaded = true;
+        metrics.recordLoad(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Starts accepting clients, first calling {@link #load} if that has not happened yet. Blocks
+     * on the database in that case, so call it off the main thread.
+     */
+    public synchronized void start(ServerTransport transport) throws Exception {
+        if (connectionManager != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        // Rebuild the tallies before accepting so no committed vote is counted twice
+        load();
+        ConnectionManager manager = new ConnectionManager(transport, sessionListener, maxClients, idleTimeoutMillis,
+                metrics);
+        manager.start();
+        connectionManager = manager;
+        if (tallyPublisher != null) {
+            tallyPublisher.start();
+        }
+        mediaTransfer.start();
+        if (receiptLog != null) {
+            receiptLog.start();
+        }
+        metrics.markAccepting();
+    }
+
+    /**
+     * Adds an election with its own storage and announces it to connected clients. Once the server
+     * has loaded this loads the election's tally from {@code store}, so call it off the main
+     * thread.
+     *
+     * @param id stable across restarts, since students keep unacknowledged votes by election id
+     * @throws IllegalArgumentException if {@code id} is out of range or already used
+     */
+    public synchronized Election openElection(int id, String title, VoteStore store) throws Exception {
+        if (id < 0 || id > Election.MAX_ID || elections.containsKey(id)) {
+            throw new IllegalArgumentException("Election id not available: " + id);
+        }
+        Election election = newElection(id, title, store);
+        if (loaded) {
+            election.load();
+        }
+        elections.put(id, election);
+        broadcast(candidatesFrame(election), candidatesKey(id));
+        return election;
+    }
+
+    /**
+     * Stops an election taking votes and flushes the votes it already queued. Its results stay
+     * available. Returns false if there is no such open election.
+     */
+    public boolean closeElection(int id) {
+        Election election;
+        synchronized (this) {
+            election = elections.get(id);
+            if (election == null || !election.isOpen()) {
+                return false;
+            }
+            broadcast(Messages.electionClosed(id), ClientSession.NO_COALESCE);
+        }
+        election.close();
+        return true;
+    }
+
+    /** Returns the election, open or closed, or null. */
+    public Election getElection(int id) {
+        return elections.get(id);
+    }
+
+    /** Every election in id order, including closed ones. */
+    public List<Election> getElections() {
+        return new ArrayList<>(elections.values());
+    }
+
+    /**
+     * Makes this server one shard of an election spread over several teacher devices. Only the
+     * default election is sharded. Accepted votes are recorded in a {@link ShardTally} under
+     * {@code nodeId}, and {@link MessageType#SHARD_DELTA} frames from other teachers are merged
+     * into it; students seen there are added to the voter index, so a student who already voted
+     * elsewhere is turned away here too. Call before {@link #load} and {@link #start}.
+     *
+     * <p>Only deltas whose MAC matches {@code peerKey}, shared by the teachers and never by
+     * students, are merged; a connection that sends any other delta is closed. This is a merge
+     * API for now: the server never sends its own deltas, so the caller takes them from
+     * {@link #getShard()} and delivers them, and other nodes' voters are not kept across a
+     * restart (see {@link ShardTally}).
+     *
+     * @param peerKey at least {@link ShardTally#MIN_KEY_SIZE} random bytes
+     */
+    public synchronized void enableSharding(String nodeId, byte[] peerKey) {
+        if (loaded) {
+            throw new IllegalStateException("Server already loaded");
+        }
+        if (peerKey.length < ShardTally.MIN_KEY_SIZE) {
+            throw new IllegalArgumentException("Shard key shorter than " + ShardTally.MIN_KEY_SIZE + " bytes");
+        }
+        shardKey = peerKey.clone();
+        shard = new ShardTally(nodeId);
+    }
+
+    /**
+     * Pushes live results to clients that send {@link MessageType#SUBSCRIBE_TALLY}, checking for
+     * changed counts every {@code intervalMillis}. Call before {@link #start}.
+     */
+    public synchronized void enableTallyStreaming(long intervalMillis) {
+        if (connectionManager != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        tallyPublisher = new TallyPublisher(intervalMillis);
+    }
+
+    /**
+     * Sends every student who votes with a vote id a {@link MessageType#VOTE_RECEIPT} proving the
+     * vote was counted, and keeps the chained batch roots for an audit. Receipts are built on a
+     * thread of their own after each commit. Call before {@link #start}.
+     */
+    public synchronized void enableReceipts() {
+        if (connectionManager != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        ReceiptLog log = new ReceiptLog(metrics);
+        for (Election election : elections.values()) {
+            issueReceipts(election, log);
+        }
+        receiptLog = log;
+    }
+
+    /**
+     * Limits each client to {@code votesPerSecond} with bursts of up to {@code burst} votes, and
+     * all clients together to {@code maxQueuedVotes} votes waiting for storage; see
+     * {@link IngestLimiter}. Votes over either limit are answered {@link MessageType#ACK_RETRY},
+     * and clients that keep sending regardless are disconnected. Call before {@link #start}.
+     */
+    public synchronized void enableAdmissionControl(double votesPerSecond, int burst, int maxQueuedVotes) {
+        if (connectionManager != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        ingestLimiter = new IngestLimiter(votesPerSecond, burst, maxQueuedVotes, metrics);
+    }
+
+    /** Null unless {@link #enableAdmissionControl} was called. */
+    public IngestLimiter getIngestLimiter() {
+        return ingestLimiter;
+    }
+
+    /** Null unless {@link #enableReceipts} was called. */
+    public ReceiptLog getReceiptLog() {
+        return receiptLog;
+    }
+
+    /** Null unless {@link #enableTallyStreaming} was called. */
+    public TallyPublisher getTallyPublisher() {
+        return tallyPublisher;
+    }
+
+    /**
+     * Caps how fast candidate media is sent, across all clients. Call before {@link #start}.
+     */
+    public synchronized void setMediaBytesPerSecond(long bytesPerSecond) {
+        if (connectionManager != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        mediaTransfer = new MediaTransfer(mediaLibrary, bytesPerSecond, metrics);
+    }
+
+    /** The merged, school-wide view, or null unless {@link #enableSharding} was called. */
+    public ShardTally getShard() {
+        return shard;
+    }
+
+    /**
+     * Merges another teacher's changes, whether they arrived as a frame or some other way.
+     * Ignored unless sharding is enabled.
+     */
+    public void mergeShardDelta(ShardTally.Delta delta) {
+        ShardTally current = shard;
+        if (current != null) {
+            for (String student : current.merge(delta)) {
+                defaultElection.voterIndex.add(student);
+            }
+        }
+    }
+
+    /** Disconnects every client and flushes pending votes to storage. */
+    public void stop() {
+        TallyPublisher publisher = tallyPublisher;
+        if (publisher != null) {
+            publisher.stop();
+        }
+        mediaTransfer.stop();
+        ConnectionManager manager = connectionManager;
+        if (manager != null) {
+            manager.shutdown();
+        }
+        try {
+            for (Election election : elections.values()) {
+                election.close();
+            }
+            // After the writers, so their last batches get receipts and reach the audit
+            ReceiptLog log = receiptLog;
+            if (log != null) {
+                log.stop();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Puts back a ballot saved from {@link Election#getRegisteredCandidates()} and the ids of
+     * {@link Election#getBallot()}, so candidates keep the ids that unacknowledged votes on
+     * students' devices refer to. Call before {@link #start}.
+     *
+     * @throws IllegalStateException if the election's ballot has already changed
+     */
+    public synchronized void restoreBallot(int electionId, List<String> registered, int[] ballotIds) {
+        if (connectionManager != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        Election election = elections.get(electionId);
+        if (election == null) {
+            throw new IllegalArgumentException("No election " + electionId);
+        }
+        election.candidates.restore(registered, ballotIds);
+    }
+
+    /**
+     * Adds a candidate and sends connected clients a delta for it. Returns false if already present.
+     */
+    public boolean addCandidate(String name) {
+        return addCandidate(Election.DEFAULT_ID, name);
+    }
+
+    /** Returns false if already present, or if there is no such open election. */
+    public synchronized boolean addCandidate(int electionId, String name) {
+        Election election = elections.get(electionId);
+        if (election == null || !election.isOpen() || name.isEmpty() || !election.candidates.add(name)) {
+            return false;
+        }
+        CandidateRegistry.Snapshot ballot = election.candidates.snapshot();
+        broadcast(Messages.candidateDelta(electionId, ballot.getVersion(), MessageType.DELTA_ADD, ballot.idOf(name),
+                name), ClientSession.NO_COALESCE);
+        return true;
+    }
+
+    /**
+     * Takes a candidate off the ballot. Votes already cast for them are kept in the tally.
+     */
+    public boolean removeCandidate(String name) {
+        return removeCandidate(Election.DEFAULT_ID, name);
+    }
+
+    public synchronized boolean removeCandidate(int electionId, String name) {
+        Election election = elections.get(electionId);
+        if (election == null || !election.candidates.remove(name)) {
+            return false;
+        }
+        broadcast(Messages.candidateDelta(electionId, election.candidates.snapshot().getVersion(),
+                MessageType.DELTA_REMOVE, election.candidates.registeredId(name), name), ClientSession.NO_COALESCE);
+        return true;
+    }
+
+    /**
+     * Attaches a photo or manifesto ({@link MessageType#MEDIA_PHOTO} or
+     * {@link MessageType#MEDIA_MANIFESTO}) to a candidate, replacing any earlier one of that kind,
+     * and sends connected clients the election's new {@link MessageType#MEDIA_INDEX}. Clients
+     * fetch the content only if they have not cached it. Returns false if the candidate is not on
+     * that election's ballot.
+     */
+    public synchronized boolean setCandidateMedia(int electionId, String candidate, int kind, byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Empty media for " + candidate);
+        }
+        Election election = elections.get(electionId);
+        if (election == null || election.candidates.snapshot().idOf(candidate) == CandidateRegistry.NO_ID) {
+            return false;
+        }
+        byte[] hash = mediaLibrary.put(data);
+        election.media.computeIfAbsent(candidate, key -> new LinkedHashMap<>()).put(kind, hash);
+        broadcast(mediaIndexFrame(election), mediaIndexKey(electionId));
+        return true;
+    }
+
+    public int getCandidateVersion() {
+        return defaultElection.getBallot().getVersion();
+    }
+
+    /** The current ballot with candidate ids, for mapping ids from the wire or storage. */
+    public CandidateRegistry.Snapshot getBallot() {
+        return defaultElection.getBallot();
+    }
+
+    /**
+     * Queues the full list of every open election for one client. Holding the lock keeps the
+     * snapshots ordered with respect to deltas broadcast by {@link #addCandidate} and
+     * {@link #removeCandidate}.
+     */
+    private synchronized void sendCandidates(ClientSession session) {
+        for (Election election : elections.values()) {
+            sendCandidates(session, election.getId());
+        }
+    }
+
+    /** Sends one open election's ballot, followed by its media index if it has any media. */
+    private synchronized void sendCandidates(ClientSession session, int electionId) {
+        Election election = elections.get(electionId);
+        if (election != null && election.isOpen()) {
+            session.send(candidatesFrame(election), candidatesKey(electionId));
+            if (!election.media.isEmpty()) {
+                session.send(mediaIndexFrame(election), mediaIndexKey(electionId));
+            }
+        }
+    }
+
+    private static byte[] candidatesFrame(Election election) {
+        CandidateRegistry.Snapshot ballot = election.candidates.snapshot();
+        List<Integer> ids = new ArrayList<>(ballot.size());
+        for (int i = 0; i < ballot.size(); i++) {
+            ids.add(ballot.idAt(i));
+        }
+        return Messages.candidates(election.getId(), election.getTitle(), ballot.getVersion(), ids, ballot.names());
+    }
+
+    /** Media of the candidates now on the ballot. */
+    private byte[] mediaIndexFrame(Election election) {
+        CandidateRegistry.Snapshot ballot = election.candidates.snapshot();
+        List<Integer> ids = new ArrayList<>();
+        List<Integer> kinds = new ArrayList<>();
+        List<byte[]> hashes = new ArrayList<>();
+        for (Map.Entry<String, Map<Integer, byte[]>> candidate : election.media.entrySet()) {
+            int id = ballot.idOf(candidate.getKey());
+            if (id == CandidateRegistry.NO_ID) {
+                continue;
+            }
+            for (Map.Entry<Integer, byte[]> item : candidate.getValue().entrySet()) {
+                ids.add(id);
+                kinds.add(item.getKey());
+                hashes.add(item.getValue());
+            }
+        }
+        int[] idArray = new int[ids.size()];
+        int[] kindArray = new int[ids.size()];
+        int[] sizes = new int[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            idArray[i] = ids.get(i);
+            kindArray[i] = kinds.get(i);
+            sizes[i] = mediaLibrary.get(hashes.get(i)).length;
+        }
+        return Messages.mediaIndex(election.getId(), idArray, kindArray, hashes, sizes);
+    }
+
+    private static int mediaIndexKey(int electionId) {
+        return MessageType.MEDIA_INDEX | electionId << 8;
+    }
+
+    /** A newer snapshot of the same election replaces one still queued; other elections' stay. */
+    private static int candidatesKey(int electionId) {
+        return MessageType.CANDIDATES | electionId << 8;
+    }
+
+    public List<String> getCandidates() {
+        return defaultElection.getCandidates();
+    }
+
+    public Map<String, Long> getResults() {
+        return defaultElection.getResults();
+    }
+
+    public VoteTally getTally() {
+        return defaultElection.getTally();
+    }
+
+    public VoterIndex getVoterIndex() {
+        return defaultElection.getVoterIndex();
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Writes every counter plus the live clients and queue depths as {@code key=value} lines, for
+     * the debug screen and the post-election dump. Each call restarts the votes/s window.
+     */
+    public void writeMetrics(Appendable out) throws IOException {
+        metrics.writeTo(out);
+        ConnectionManager manager = connectionManager;
+        ServerMetrics.line(out, "clients_connected", manager == null ? 0 : manager.getConnectedCount());
+        ServerMetrics.line(out, "clients_rejected", manager == null ? 0 : manager.getRejectedCount());
+        long queueDepth = 0;
+        long indexSize = 0;
+        long indexBytes = 0;
+        for (Election election : elections.values()) {
+            queueDepth += election.writer.getQueueDepth();
+            indexSize += election.voterIndex.size();
+            indexBytes += election.voterIndex.memoryFootprintBytes();
+        }
+        ServerMetrics.line(out, "writer_queue_depth", queueDepth);
+        ServerMetrics.line(out, "voter_index_size", indexSize);
+        ServerMetrics.line(out, "voter_index_bytes", indexBytes);
+        ShardTally current = shard;
+        if (current != null) {
+            ServerMetrics.line(out, "shard_cross_duplicates", current.getCrossShardDuplicates());
+        }
+        ReceiptLog log = receiptLog;
+        if (log != null) {
+            ServerMetrics.line(out, "receipt_batches", log.getBatchCount());
+            out.append("receipt_chain=").append(MediaLibrary.hex(log.getChainHead())).append('\n');
+        }
+        IngestLimiter limiter = ingestLimiter;
+        if (limiter != null) {
+            ServerMetrics.line(out, "ingest_queued", limiter.getQueued());
+        }
+        for (Election election : elections.values()) {
+            out.append("election id=").append(Integer.toString(election.getId()))
+                    .append(" open=").append(Boolean.toString(election.isOpen()))
+                    .append(" votes=").append(Long.toString(election.tally.total()))
+                    .append(" queue_depth=").append(Integer.toString(election.writer.getQueueDepth()))
+                    .append('\n');
+        }
+        if (manager != null) {
+            for (ClientSession session : manager.getSessions()) {
+                out.append("client id=").append(Integer.toString(session.getId()))
+                        .append(" remote=").append(session.getRemoteName())
+                        .append(" bytes_in=").append(Long.toString(session.getBytesIn()))
+                        .append(" bytes_out=").append(Long.toString(session.getBytesOut()))
+                        .append(" queue_depth=").append(Integer.toString(session.getQueueDepth()))
+                        .append(" throttled=")
+                        .append(Long.toString(limiter == null ? 0 : limiter.getThrottled(session)))
+                        .append('\n');
+            }
+        }
+    }
+
+    public void broadcastResults(String results) {
+        // Only the newest results matter to a client that is behind
+        broadcast(Messages.results(results), MessageType.RESULTS);
+    }
+
+    public int getConnectedCount() {
+        ConnectionManager manager = connectionManager;
+        return manager == null ? 0 : manager.getConnectedCount();
+    }
+
+    private void broadcast(byte[] frame, int coalesceKey) {
+        ConnectionManager manager = connectionManager;
+        if (manager != null) {
+            manager.broadcast(frame, coalesceKey);
+        }
+    }
+
+    /**
+     * Validates and stores one vote in the default election, blocking the calling client thread
+     * until its batch commits.
+     */
+    VoteResult handleVote(String student, String candidate) {
+        CandidateRegistry.Snapshot ballot = defaultElection.candidates.snapshot();
+        int id = ballot.idOf(candidate);
+        return handleVote(defaultElection, student, id == CandidateRegistry.NO_ID ? candidate : ballot.nameOf(id), id);
+    }
+
+    /** Votes that name their candidate by id; see {@link MessageType#VOTE_BY_ID}. */
+    VoteResult handleVote(String student, int candidateId) {
+        String candidate = defaultElection.candidates.snapshot().nameOf(candidateId);
+        return handleVote(defaultElection, student, candidate == null ? "#" + candidateId : candidate,
+                candidate == null ? CandidateRegistry.NO_ID : candidateId);
+    }
+
+    /**
+     * Idempotent form of {@link #handleVote(String, int)} for any election: a request whose id
+     * was seen recently gets the same result as the first delivery, waiting for it if that is
+     * still committing. The id is stored with the vote, so a request whose vote was accepted
+     * earlier, even before a restart, is answered as accepted rather than as a duplicate. Returns
+     * null if the vote could not be stored, in which case the id is forgotten so a retry tries
+     * again.
+     */
+    VoteResult handleVoteRequest(ClientSession session, long voteId, String student, int electionId,
+                                 int candidateId) {
+        return handleVoteBatch(session, new long[]{voteId}, new String[]{student}, new int[]{electionId},
+                new int[]{candidateId})[0];
+    }
+
+    /**
+     * Handles a {@link MessageType#VOTE_BATCH}: every vote not answered from memory or a voter
+     * index is committed in a single transaction per election. Entries follow the rules of
+     * {@link #handleVoteRequest}. Accepted votes get a receipt on {@code session} if receipts are
+     * enabled.
+     */
+    VoteResult[] handleVoteBatch(ClientSession session, long[] voteIds, String[] students, int[] electionIds,
+                                 int[] candidateIds) {
+        int count = voteIds.length;
+        ReceiptLog log = session == null ? null : receiptLog;
+        VoteResult[] results = new VoteResult[count];
+        List<CompletableFuture<VoteResult>> outcomes = new ArrayList<>(count);
+        boolean[] replayed = new boolean[count];
+        synchronized (recentVoteIds) {
+            for (int i = 0; i < count; i++) {
+                CompletableFuture<VoteResult> outcome = new CompletableFuture<>();
+                CompletableFuture<VoteResult> earlier = recentVoteIds.putIfAbsent(voteIds[i], outcome);
+                replayed[i] = earlier != null;
+                outcomes.add(replayed[i] ? earlier : outcome);
+            }
+        }
+
+        Election[] targets = new Election[count];
+        String[] names = new String[count];
+        // Votes that need storage, grouped so each election commits its share in one transaction
+        Map<Election, List<Integer>> stored = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            if (replayed[i]) {
+                metrics.replayedRequests.increment();
+                continue;
+            }
+            targets[i] = elections.get(electionIds[i]);
+            if (targets[i] == null) {
+                names[i] = "#" + candidateIds[i];
+                results[i] = VoteResult.INVALID_CANDIDATE;
+                continue;
+            }
+            String candidate = targets[i].candidates.snapshot().nameOf(candidateIds[i]);
+            names[i] = candidate == null ? "#" + candidateIds[i] : candidate;
+            results[i] = checkWithoutStorage(targets[i], students[i],
+                    candidate == null ? CandidateRegistry.NO_ID : candidateIds[i]);
+            if (results[i] == null) {
+                stored.computeIfAbsent(targets[i], election -> new ArrayList<>()).add(i);
+            }
+        }
+
+        long start = System.nanoTime();
+        Vote[] submitted = new Vote[count];
+        Map<Election, List<CompletableFuture<VoteResult>>> committed = new LinkedHashMap<>();
+        for (Map.Entry<Election, List<Integer>> group : stored.entrySet()) {
+            List<Vote> writes = new ArrayList<>(group.getValue().size());
+            for (int i : group.getValue()) {
+                submitted[i] = new Vote(students[i], names[i], voteIds[i]);
+                if (log != null) {
+                    log.expect(submitted[i], voteIds[i], session);
+                }
+                writes.add(submitted[i]);
+            }
+            committed.put(group.getKey(), group.getKey().writer.submitAll(writes));
+        }
+        for (Map.Entry<Election, List<Integer>> group : stored.entrySet()) {
+            List<CompletableFuture<VoteResult>> pending = committed.get(group.getKey());
+            for (int k = 0; k < pending.size(); k++) {
+                results[group.getValue().get(k)] = awaitCommit(pending.get(k), start);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (log != null && submitted[i] != null && results[i] != VoteResult.ACCEPTED) {
+                log.forget(submitted[i]);
+            }
+            if (replayed[i]) {
+                results[i] = awaitEarlier(outcomes.get(i));
+                if (log != null && results[i] == VoteResult.ACCEPTED) {
+                    log.resend(voteIds[i], VoteReceipts.leaf(electionIds[i], candidateIds[i], students[i]), session);
+                }
+            } else if (results[i] == VoteResult.DUPLICATE && targets[i] != null) {
+                // The student may be a repeat of this very request, accepted before the id was forgotten
+                results[i] = resolveDuplicate(targets[i], students[i], voteIds[i]);
+                if (results[i] == VoteResult.ACCEPTED) {
+                    metrics.replayedRequests.increment();
+                    if (log != null) {
+                        log.resend(voteIds[i], VoteReceipts.leaf(electionIds[i], candidateIds[i], students[i]),
+                                session);
+                    }
+                } else if (results[i] == null) {
+                    synchronized (recentVoteIds) {
+                        recentVoteIds.remove(voteIds[i]);
+                    }
+                } else {
+                    recordResult(targets[i], students[i], names[i], results[i]);
+                }
+                outcomes.get(i).complete(results[i]);
+            } else {
+                if (results[i] == null) {
+                    synchronized (recentVoteIds) {
+                        recentVoteIds.remove(voteIds[i]);
+                    }
+                } else {
+                    recordResult(targets[i], students[i], names[i], results[i]);
+                }
+                outcomes.get(i).complete(results[i]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * ACCEPTED if the student's stored vote carries {@code voteId}, i.e. this request was counted
+     * before; DUPLICATE otherwise, or null if storage could not be read.
+     */
+    private VoteResult resolveDuplicate(Election election, String student, long voteId) {
+        if (voteId == Vote.NO_ID) {
+            return VoteResult.DUPLICATE;
+        }
+        try {
+            return election.store.findVoteId(student) == voteId ? VoteResult.ACCEPTED : VoteResult.DUPLICATE;
+        } catch (Exception e) {
+            metrics.failed.increment();
+            listener.onError(e);
+            return null;
+        }
+    }
+
+    private static VoteResult awaitEarlier(CompletableFuture<VoteResult> earlier) {
+        try {
+            return earlier.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private static int ackStatus(VoteResult result) {
+        if (result == null) {
+            return MessageType.ACK_RETRY;
+        }
+        switch (result) {
+            case ACCEPTED:
+                return MessageType.ACK_ACCEPTED;
+            case DUPLICATE:
+                return MessageType.ACK_DUPLICATE;
+            case ELECTION_CLOSED:
+                return MessageType.ACK_ELECTION_CLOSED;
+            default:
+                return MessageType.ACK_INVALID_CANDIDATE;
+        }
+    }
+
+    /** {@code candidate} is the registry's interned name whenever {@code candidateId} is valid. */
+    private VoteResult handleVote(Election election, String student, String candidate, int candidateId) {
+        VoteResult result = checkWithoutStorage(election, student, candidateId);
+        if (result == null) {
+            result = awaitCommit(election.writer.submit(student, candidate), System.nanoTime());
+            if (result == null) {
+                return null;
+            }
+        }
+        recordResult(election, student, candidate, result);
+        return result;
+    }
+
+    /** Answers votes that never need storage, or returns null if the vote must be committed. */
+    private VoteResult checkWithoutStorage(Election election, String student, int candidateId) {
+        if (candidateId == CandidateRegistry.NO_ID) {
+            return VoteResult.INVALID_CANDIDATE;
+        }
+        if (!election.isOpen()) {
+            return VoteResult.ELECTION_CLOSED;
+        }
+        if (election.voterIndex.contains(student)) {
+            // Known repeat: answer without touching storage
+            metrics.indexedDuplicates.increment();
+            return VoteResult.DUPLICATE;
+        }
+        return null;
+    }
+
+    /** Waits for a submitted vote; null if it could not be stored, which is reported as an error. */
+    private VoteResult awaitCommit(CompletableFuture<VoteResult> pending, long startNanos) {
+        VoteResult result;
+        try {
+            result = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics.failed.increment();
+            listener.onError(e);
+            return null;
+        } catch (ExecutionException e) {
+            metrics.failed.increment();
+            listener.onError(e);
+            return null;
+        }
+        metrics.commitLatency.recordNanos(System.nanoTime() - startNanos);
+        return result;
+    }
+
+    private void recordResult(Election election, String student, String candidate, VoteResult result) {
+        if (result == VoteResult.ACCEPTED) {
+            election.tally.increment(candidate);
+            ShardTally current = shard;
+            if (current != null && election == defaultElection) {
+                current.recordLocal(student, candidate, System.currentTimeMillis());
+            }
+        }
+        if (result == VoteResult.ACCEPTED || result == VoteResult.DUPLICATE) {
+            election.voterIndex.add(student);
+        }
+        metrics.recordResult(result);
+        listener.onVote(student, candidate, result);
+    }
+
+    /** How many of a frame's {@code votes} may go on; all of them without admission control. */
+    private int admit(ClientSession session, int votes) {
+        IngestLimiter limiter = ingestLimiter;
+        return limiter == null ? votes : limiter.admit(session, votes);
+    }
+
+    private void release(int votes) {
+        IngestLimiter limiter = ingestLimiter;
+        if (limiter != null) {
+            limiter.release(votes);
+        }
+    }
+
+    private final ConnectionManager.SessionListener sessionListener = new ConnectionManager.SessionListener() {
+        @Override
+        public void onConnected(ClientSession session) {
+            // Only the new client needs the whole list; everyone else already has it
+            sendCandidates(session);
+        }
+
+        @Override
+        public void onFrame(ClientSession session, int type, PayloadReader payload) throws IOException {
+            if (type == MessageType.VOTE) {
+                String student = payload.readString().trim();
+                String candidate = payload.readString().trim();
+                // Nothing to answer, so a throttled legacy vote is dropped
+                if (admit(session, 1) == 1) {
+                    try {
+                        handleVote(student, candidate);
+                    } finally {
+                        release(1);
+                    }
+                }
+            } else if (type == MessageType.VOTE_BY_ID) {
+                String student = payload.readString().trim();
+                int candidateId = payload.readUnsignedShort();
+                if (admit(session, 1) == 1) {
+                    try {
+                        handleVote(student, candidateId);
+                    } finally {
+                        release(1);
+                    }
+                }
+            } else if (type == MessageType.VOTE_REQUEST) {
+                long voteId = payload.readLong();
+                String student = payload.readString().trim();
+                int electionId = payload.readUnsignedShort();
+                int candidateId = payload.readUnsignedShort();
+                VoteResult result = null;
+                if (admit(session, 1) == 1) {
+                    try {
+                        result = handleVoteRequest(session, voteId, student, electionId, candidateId);
+                    } finally {
+                        release(1);
+                    }
+                }
+                session.send(Messages.voteAck(voteId, ackStatus(result)));
+            } else if (type == MessageType.VOTE_BATCH) {
+                int count = payload.readUnsignedShort();
+                long[] voteIds = new long[count];
+                String[] students = new String[count];
+                int[] electionIds = new int[count];
+                int[] candidateIds = new int[count];
+                for (int i = 0; i < count; i++) {
+                    voteIds[i] = payload.readLong();
+                    students[i] = payload.readString().trim();
+                    electionIds[i] = payload.readUnsignedShort();
+                    candidateIds[i] = payload.readUnsignedShort();
+                }
+                // Votes past what was admitted are answered ACK_RETRY
+                int admitted = admit(session, count);
+                int[] statuses = new int[count];
+                Arrays.fill(statuses, MessageType.ACK_RETRY);
+                if (admitted > 0) {
+                    try {
+                        VoteResult[] results = handleVoteBatch(session, Arrays.copyOf(voteIds, admitted),
+                                Arrays.copyOf(students, admitted), Arrays.copyOf(electionIds, admitted),
+                                Arrays.copyOf(candidateIds, admitted));
+                        for (int i = 0; i < admitted; i++) {
+                            statuses[i] = ackStatus(results[i]);
+                        }
+                    } finally {
+                        release(admitted);
+                    }
+                }
+                session.send(Messages.voteBatchAck(voteIds, statuses));
+            } else if (type == MessageType.SHARD_DELTA) {
+                ShardTally current = shard;
+                ShardTally.Delta delta = current == null ? null : ShardTally.Delta.read(payload, shardKey);
+                if (delta == null) {
+                    // Only teachers holding the key may change the tally or the voter index
+                    metrics.rejectedShardDeltas.increment();
+                    session.close();
+                } else {
+                    mergeShardDelta(delta);
+                }
+            } else if (type == MessageType.PING) {
+                session.send(Messages.pong());
+            } else if (type == MessageType.SYNC_CANDIDATES) {
+                sendCandidates(session, payload.readUnsignedShort());
+            } else if (type == MessageType.FETCH_BLOB) {
+                byte[] hash = new byte[Messages.HASH_SIZE];
+                payload.readBytes(hash, 0, hash.length);
+                mediaTransfer.request(session, hash, payload.readInt());
+            } else if (type == MessageType.SUBSCRIBE_TALLY) {
+                Election election = elections.get(payload.readUnsignedShort());
+                TallyPublisher publisher = tallyPublisher;
+                if (election != null && publisher != null) {
+                    publisher.subscribe(session, election, payload.readInt(), payload.readInt());
+                }
+            }
+        }
+
+        @Override
+        public void onDisconnected(ClientSession session, Exception cause) {
+            mediaTransfer.cancel(session);
+            IngestLimiter limiter = ingestLimiter;
+            if (limiter != null) {
+                limiter.disconnected(session);
+            }
+            ReceiptLog log = receiptLog;
+            if (log != null) {
+                log.disconnected(session);
+            }
+            TallyPublisher publisher = tallyPublisher;
+            if (publisher != null) {
+                publisher.unsubscribe(session);
+            }
+            if (cause != null) {
+                listener.onError(cause);
+            }
+        }
+
+        @Override
+        public void onAcceptFailed(IOException e) {
+            listener.onError(e);
+        }
+    };
+}
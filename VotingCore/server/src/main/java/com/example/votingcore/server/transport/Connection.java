@@ -0,0 +1,20 @@
+package com.example.votingcore.server.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * One accepted client link, e.g. an RFCOMM socket on the device or a TCP socket in tests.
+ * Closing it must unblock any thread reading from its input stream.
+ */
+public interface Connection extends Closeable {
+
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    /** Human readable peer identity, used in logs and status text. */
+    String getRemoteName();
+}
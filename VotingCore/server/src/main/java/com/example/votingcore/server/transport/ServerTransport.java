@@ -0,0 +1,13 @@
+package com.example.votingcore.server.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A listening endpoint that hands out client connections. Closing it must unblock
+ * {@link #accept()}.
+ */
+public interface ServerTransport extends Closeable {
+
+    Connection accept() throws IOException;
+}
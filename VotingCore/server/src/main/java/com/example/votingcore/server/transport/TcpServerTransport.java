@@ -0,0 +1,69 @@
+package com.example.votingcore.server.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Loopback TCP transport so the server can be exercised on a JVM without Bluetooth hardware.
+ */
+public class TcpServerTransport implements ServerTransport {
+
+    private final ServerSocket serverSocket;
+
+    /** Listens on the loopback interface; pass 0 to pick a free port. */
+    public TcpServerTransport(int port) throws IOException {
+        this(port, 512);
+    }
+
+    public TcpServerTransport(int port, int backlog) throws IOException {
+        serverSocket = new ServerSocket(port, backlog, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public Connection accept() throws IOException {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        return new TcpConnection(socket);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private static final class TcpConnection implements Connection {
+        private final Socket socket;
+
+        TcpConnection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
+        @Override
+        public String getRemoteName() {
+            return socket.getRemoteSocketAddress().toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
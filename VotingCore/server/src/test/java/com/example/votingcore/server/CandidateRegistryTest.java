@@ -0,0 +1,83 @@
+package com.example.votingcore.server;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CandidateRegistryTest {
+
+    @Test
+    public void keepsIdsStableAcrossRemoveAndReAdd() {
+        CandidateRegistry registry = new CandidateRegistry();
+        assertTrue(registry.add("Ravi"));
+        assertTrue(registry.add("Meera"));
+        assertFalse(registry.add("Ravi"));
+
+        assertTrue(registry.remove("Ravi"));
+        assertFalse(registry.remove("Ravi"));
+        assertTrue(registry.add("Dev"));
+        assertTrue(registry.add("Ravi"));
+
+        CandidateRegistry.Snapshot ballot = registry.snapshot();
+        assertEquals(5, ballot.getVersion());
+        assertEquals(Arrays.asList("Meera", "Dev", "Ravi"), ballot.names());
+        assertEquals(0, ballot.idOf("Ravi"));
+        assertEquals(1, ballot.idOf("Meera"));
+        assertEquals(2, ballot.idOf("Dev"));
+        assertEquals(CandidateRegistry.NO_ID, ballot.idOf("Nobody"));
+    }
+
+    @Test
+    public void snapshotsDoNotChangeUnderReaders() {
+        CandidateRegistry registry = new CandidateRegistry();
+        registry.add("Ravi");
+        CandidateRegistry.Snapshot before = registry.snapshot();
+
+        registry.remove("Ravi");
+
+        assertTrue(before.contains("Ravi"));
+        assertEquals("Ravi", before.nameOf(0));
+        assertNull(registry.snapshot().nameOf(0));
+        assertEquals("Ravi", registry.registeredName(0));
+    }
+
+    @Test
+    public void restoresIdsOfRemovedCandidatesAfterARestart() {
+        CandidateRegistry registry = new CandidateRegistry();
+        registry.add("Ravi");
+        registry.add("Meera");
+        registry.add("Dev");
+        registry.remove("Meera");
+        CandidateRegistry.Snapshot saved = registry.snapshot();
+        int[] ballotIds = new int[saved.size()];
+        for (int i = 0; i < ballotIds.length; i++) {
+            ballotIds[i] = saved.idAt(i);
+        }
+
+        CandidateRegistry restored = new CandidateRegistry();
+        restored.restore(registry.registeredNames(), ballotIds);
+
+        assertEquals(Arrays.asList("Ravi", "Dev"), restored.snapshot().names());
+        assertEquals(2, restored.snapshot().idOf("Dev"));
+        assertTrue(restored.add("Meera"));
+        assertEquals(1, restored.snapshot().idOf("Meera"));
+        try {
+            restored.restore(registry.registeredNames(), ballotIds);
+            fail();
+        } catch (IllegalStateException expected) {
+            // Only an empty registry can be restored
+        }
+    }
+
+    @Test
+    public void returnsInternedNames() {
+        CandidateRegistry registry = new CandidateRegistry();
+        registry.add("Ravi");
+        CandidateRegistry.Snapshot ballot = registry.snapshot();
+
+        String fromWire = new String("Ravi");
+        assertSame(ballot.nameAt(0), ballot.nameOf(ballot.idOf(fromWire)));
+    }
+}
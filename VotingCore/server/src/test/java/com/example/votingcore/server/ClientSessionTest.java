@@ -0,0 +1,138 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.server.transport.Connection;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ClientSessionTest {
+
+    private static final int CANDIDATES_KEY = 2;
+
+    /** A device whose link stalls until {@link #release} is counted down. */
+    private static class StalledConnection implements Connection {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Byte> written = new ArrayList<>();
+        volatile boolean closed;
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    synchronized (written) {
+                        written.add((byte) b);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public String getRemoteName() {
+            return "stalled";
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        List<Byte> awaitWritten(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (System.currentTimeMillis() < deadline) {
+                synchronized (written) {
+                    if (written.size() >= count) {
+                        return new ArrayList<>(written);
+                    }
+                }
+                Thread.sleep(5);
+            }
+            fail("only " + written.size() + " bytes written");
+            return null;
+        }
+    }
+
+    private final ExecutorService senders = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        senders.shutdownNow();
+    }
+
+    @Test
+    public void sendDoesNotBlockOnStalledClient() throws Exception {
+        StalledConnection connection = new StalledConnection();
+        ClientSession session = new ClientSession(1, connection, senders, 16);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(session.send(new byte[]{(byte) i}));
+        }
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        connection.release.countDown();
+        assertEquals(10, connection.awaitWritten(10).size());
+    }
+
+    @Test
+    public void coalescesPendingSnapshots() throws Exception {
+        StalledConnection connection = new StalledConnection();
+        ClientSession session = new ClientSession(1, connection, senders, 16);
+
+        session.send(new byte[]{1}, CANDIDATES_KEY);
+        // Wait for the first frame to be taken by the sender; later ones queue behind it
+        while (session.getQueueDepth() > 0) {
+            Thread.sleep(1);
+        }
+        session.send(new byte[]{2}, CANDIDATES_KEY);
+        session.send(new byte[]{9});
+        session.send(new byte[]{3}, CANDIDATES_KEY);
+        session.send(new byte[]{4}, CANDIDATES_KEY);
+        assertEquals(2, session.getQueueDepth());
+
+        connection.release.countDown();
+        List<Byte> written = connection.awaitWritten(3);
+        assertEquals(3, written.size());
+        assertEquals(Byte.valueOf((byte) 1), written.get(0));
+        assertEquals(Byte.valueOf((byte) 4), written.get(1));
+        assertEquals(Byte.valueOf((byte) 9), written.get(2));
+    }
+
+    @Test
+    public void disconnectsClientThatFallsTooFarBehind() throws Exception {
+        StalledConnection connection = new StalledConnection();
+        ClientSession session = new ClientSession(1, connection, senders, 4);
+
+        boolean accepted = true;
+        for (int i = 0; i < 10 && accepted; i++) {
+            accepted = session.send(new byte[]{(byte) i});
+        }
+
+        assertFalse(accepted);
+        assertFalse(session.isOpen());
+        assertTrue(connection.closed);
+        connection.release.countDown();
+    }
+}
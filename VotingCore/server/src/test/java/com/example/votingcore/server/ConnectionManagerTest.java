@@ -0,0 +1,133 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.PayloadReader;
+import com.example.votingcore.server.transport.TcpServerTransport;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class ConnectionManagerTest {
+
+    private final Set<String> votes = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch disconnects = new CountDownLatch(1);
+    private final List<Socket> clients = new ArrayList<>();
+    private ConnectionManager manager;
+
+    private final ConnectionManager.SessionListener listener = new ConnectionManager.SessionListener() {
+        @Override
+        public void onConnected(ClientSession session) {
+        }
+
+        @Override
+        public void onFrame(ClientSession session, int type, PayloadReader payload) throws IOException {
+            if (type == MessageType.VOTE) {
+                votes.add(payload.readString());
+            }
+        }
+
+        @Override
+        public void onDisconnected(ClientSession session, Exception cause) {
+            disconnects.countDown();
+        }
+
+        @Override
+        public void onAcceptFailed(IOException e) {
+            fail(e.getMessage());
+        }
+    };
+
+    @After
+    public void tearDown() throws IOException {
+        if (manager != null) {
+            manager.shutdown();
+        }
+        for (Socket client : clients) {
+            client.close();
+        }
+    }
+
+    private TcpServerTransport startServer(int maxClients, long idleTimeoutMillis) throws IOException {
+        TcpServerTransport transport = new TcpServerTransport(0);
+        manager = new ConnectionManager(transport, listener, maxClients, idleTimeoutMillis);
+        manager.start();
+        return transport;
+    }
+
+    private Socket connect(TcpServerTransport transport) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort());
+        clients.add(socket);
+        return socket;
+    }
+
+    private static void awaitCondition(String message, BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(message);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void servesHundredsOfConcurrentClients() throws Exception {
+        TcpServerTransport transport = startServer(300, 0);
+        for (int i = 0; i < 300; i++) {
+            connect(transport).getOutputStream().write(Messages.vote("student" + i, "Ravi"));
+        }
+
+        awaitCondition("votes not received", () -> votes.size() == 300);
+        assertEquals(300, manager.getConnectedCount());
+    }
+
+    @Test
+    public void rejectsClientsBeyondLimit() throws Exception {
+        TcpServerTransport transport = startServer(2, 0);
+        connect(transport);
+        connect(transport);
+        awaitCondition("first clients not served", () -> manager.getConnectedCount() == 2);
+
+        InputStream rejected = connect(transport).getInputStream();
+        assertEquals(-1, rejected.read());
+        assertEquals(1, manager.getRejectedCount());
+    }
+
+    @Test
+    public void closesIdleClients() throws Exception {
+        TcpServerTransport transport = startServer(4, 100);
+        InputStream in = connect(transport).getInputStream();
+
+        assertTrue(disconnects.await(5, TimeUnit.SECONDS));
+        assertEquals(-1, in.read());
+        assertEquals(0, manager.getConnectedCount());
+    }
+
+    @Test
+    public void shutdownClosesClients() throws Exception {
+        TcpServerTransport transport = startServer(4, 0);
+        InputStream in = connect(transport).getInputStream();
+        awaitCondition("client not served", () -> manager.getConnectedCount() == 1);
+
+        manager.shutdown();
+
+        assertEquals(-1, in.read());
+        assertTrue(disconnects.await(5, TimeUnit.SECONDS));
+    }
+}
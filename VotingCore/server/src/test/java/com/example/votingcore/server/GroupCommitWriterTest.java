@@ -0,0 +1,141 @@
+package com.example.votingcore.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class GroupCommitWriterTest {
+
+    /** Mimics {@code INSERT OR IGNORE} on the student primary key. */
+    private static class RecordingStore implements VoteStore {
+        final Set<String> students = new HashSet<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public synchronized void insertBatch(List<Vote> votes, boolean[] accepted) {
+            batchSizes.add(votes.size());
+            for (int i = 0; i < votes.size(); i++) {
+                accepted[i] = students.add(votes.get(i).student);
+            }
+        }
+
+        @Override
+        public Map<String, Long> loadVoteCounts() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void findVoters(List<Vote> votes, boolean[] found) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long findVoteId(String student) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void forEachVoter(Consumer<String> voter) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    public void reportsDuplicatesPerVote() throws Exception {
+        RecordingStore store = new RecordingStore();
+        GroupCommitWriter writer = new GroupCommitWriter(store, 16, 50);
+
+        CompletableFuture<VoteResult> first = writer.submit("Asha", "Ravi");
+        CompletableFuture<VoteResult> second = writer.submit("Asha", "Meera");
+        CompletableFuture<VoteResult> third = writer.submit("Dev", "Meera");
+        writer.close();
+
+        assertEquals(VoteResult.ACCEPTED, first.get());
+        assertEquals(VoteResult.DUPLICATE, second.get());
+        assertEquals(VoteResult.ACCEPTED, third.get());
+    }
+
+    @Test
+    public void batchesConcurrentSubmitters() throws Exception {
+        RecordingStore store = new RecordingStore();
+        GroupCommitWriter writer = new GroupCommitWriter(store, 32, 20);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<VoteResult>> results = new ArrayList<>();
+
+        for (int i = 0; i < 256; i++) {
+            String student = "student" + i;
+            results.add(clients.submit(() -> {
+                start.await();
+                return writer.submit(student, "Ravi").get();
+            }));
+        }
+        start.countDown();
+        for (Future<VoteResult> result : results) {
+            assertEquals(VoteResult.ACCEPTED, result.get(5, TimeUnit.SECONDS));
+        }
+        clients.shutdown();
+        writer.close();
+
+        assertEquals(256, store.students.size());
+        assertTrue("expected grouped commits, got " + store.batchSizes.size(),
+                store.batchSizes.size() < 256);
+        for (int size : store.batchSizes) {
+            assertTrue(size <= 32);
+        }
+    }
+
+    @Test
+    public void commitsSubmitAllGroupsInOneTransaction() throws Exception {
+        RecordingStore store = new RecordingStore();
+        GroupCommitWriter writer = new GroupCommitWriter(store, 4, 10);
+        List<Vote> votes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            votes.add(new Vote("student" + i, "Ravi"));
+        }
+        votes.add(new Vote("student0", "Meera"));
+
+        List<CompletableFuture<VoteResult>> results = writer.submitAll(votes);
+        writer.close();
+
+        assertEquals(11, store.batchSizes.get(0).intValue());
+        assertEquals(VoteResult.ACCEPTED, results.get(0).get());
+        assertEquals(VoteResult.DUPLICATE, results.get(10).get());
+    }
+
+    @Test
+    public void failsWholeBatchWhenStoreThrows() throws Exception {
+        GroupCommitWriter writer = new GroupCommitWriter(new RecordingStore() {
+            @Override
+            public synchronized void insertBatch(List<Vote> votes, boolean[] accepted) {
+                throw new IllegalStateException("disk full");
+            }
+        }, 8, 10);
+
+        CompletableFuture<VoteResult> result = writer.submit("Asha", "Ravi");
+        writer.close();
+
+        assertTrue(result.isCompletedExceptionally());
+    }
+
+    @Test
+    public void rejectsSubmissionsAfterClose() throws Exception {
+        GroupCommitWriter writer = new GroupCommitWriter(new RecordingStore(), 8, 10);
+        writer.close();
+
+        assertTrue(writer.submit("Asha", "Ravi").isCompletedExceptionally());
+    }
+}
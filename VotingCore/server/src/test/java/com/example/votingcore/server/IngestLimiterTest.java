@@ -0,0 +1,101 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.server.transport.Connection;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IngestLimiterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static class FakeConnection implements Connection {
+        volatile boolean closed;
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public String getRemoteName() {
+            return "fake";
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    @Test
+    public void admitsBurstsThenRefillsAtTheConfiguredRate() throws IOException {
+        IngestLimiter limiter = new IngestLimiter(10, 4, 100, metrics);
+        ClientSession session = session(new FakeConnection());
+
+        assertEquals(4, limiter.admit(session, 5, 0));
+        assertEquals(1, metrics.getThrottled());
+        // A full second's refill is capped at the burst
+        assertEquals(4, limiter.admit(session, 6, 1000 * MS));
+        assertEquals(1, limiter.admit(session, 1, 1100 * MS));
+        assertEquals(0, limiter.admit(session, 1, 1150 * MS));
+        assertEquals(4, limiter.getThrottled(session));
+    }
+
+    @Test
+    public void sharesTheQueueAcrossClientsAndAnswersBusyWhenItIsFull() throws IOException {
+        IngestLimiter limiter = new IngestLimiter(10, 4, 5, metrics);
+        ClientSession first = session(new FakeConnection());
+        ClientSession second = session(new FakeConnection());
+
+        assertEquals(3, limiter.admit(first, 3, 0));
+        assertEquals(2, limiter.admit(second, 4, 0));
+        assertEquals(2, metrics.getBusy());
+        assertEquals(0, metrics.getThrottled());
+        limiter.release(3);
+        // Turned away for being busy, so the tokens were not spent
+        assertEquals(2, limiter.admit(second, 2, 0));
+        assertEquals(4, limiter.getQueued());
+    }
+
+    @Test
+    public void disconnectsClientsThatKeepSendingWhileThrottled() throws IOException {
+        IngestLimiter limiter = new IngestLimiter(10, 1, 100, metrics);
+        FakeConnection connection = new FakeConnection();
+        ClientSession session = session(connection);
+
+        assertEquals(1, limiter.admit(session, 1, 0));
+        for (int i = 1; i < IngestLimiter.MAX_STRIKES; i++) {
+            assertEquals(0, limiter.admit(session, 1, 0));
+        }
+        // A token arrives, which clears the strikes
+        assertEquals(1, limiter.admit(session, 1, 100 * MS));
+        for (int i = 1; i < IngestLimiter.MAX_STRIKES; i++) {
+            assertEquals(0, limiter.admit(session, 1, 100 * MS));
+        }
+        assertFalse(connection.closed);
+
+        assertEquals(0, limiter.admit(session, 1, 100 * MS));
+        assertTrue(connection.closed);
+        assertEquals(1, metrics.getAbusiveDisconnects());
+    }
+
+    private ClientSession session(Connection connection) throws IOException {
+        return new ClientSession(1, connection, Runnable::run, 16, metrics);
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.votingcore.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class JournaledVoteStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final InMemoryVoteStore base = new InMemoryVoteStore();
+
+    private JournaledVoteStore open(int capacity) throws Exception {
+        File dir = folder.getRoot();
+        return new JournaledVoteStore(base, new VoteJournal(new File(dir, "journal.0"), capacity),
+                new VoteJournal(new File(dir, "journal.1"), capacity), 0);
+    }
+
+    @Test
+    public void acceptsOnceJournaledAndFoldsLater() throws Exception {
+        base.insertBatch(Arrays.asList(new Vote("Kiran", "Meera")), new boolean[1]);
+        JournaledVoteStore store = open(4096);
+        boolean[] accepted = new boolean[4];
+
+        store.insertBatch(Arrays.asList(new Vote("Asha", "Ravi"), new Vote("Kiran", "Ravi"),
+                new Vote("Dev", "Meera"), new Vote("Asha", "Meera")), accepted);
+
+        assertArrayEquals(new boolean[]{true, false, true, false}, accepted);
+        assertEquals(1, base.size());
+        assertEquals(Long.valueOf(2), store.loadVoteCounts().get("Meera"));
+
+        store.compact();
+        assertEquals(3, base.size());
+        assertEquals(0, store.getUnfoldedCount());
+        store.insertBatch(Arrays.asList(new Vote("Dev", "Ravi")), accepted);
+        assertFalse(accepted[0]);
+        store.close();
+    }
+
+    @Test
+    public void findsVoteIdsBeforeAndAfterFolding() throws Exception {
+        JournaledVoteStore store = open(4096);
+        store.insertBatch(Arrays.asList(new Vote("Asha", "Ravi", 42), new Vote("Dev", "Meera")), new boolean[2]);
+        assertEquals(42, store.findVoteId("Asha"));
+        assertEquals(Vote.NO_ID, store.findVoteId("Dev"));
+
+        store.compact();
+        assertEquals(42, store.findVoteId("Asha"));
+        assertEquals(42, base.findVoteId("Asha"));
+        assertEquals(Vote.NO_ID, store.findVoteId("Kiran"));
+        store.close();
+    }
+
+    @Test
+    public void replaysUnfoldedVotesAfterACrash() throws Exception {
+        JournaledVoteStore crashed = open(4096);
+        crashed.insertBatch(Arrays.asList(new Vote("Asha", "Ravi"), new Vote("Dev", "Meera")), new boolean[2]);
+        assertEquals(0, base.size());
+        // Abandoned without close(): nothing was folded
+
+        JournaledVoteStore reopened = open(4096);
+        assertEquals(2, reopened.getRecoveredCount());
+        assertEquals("Ravi", base.getVote("Asha"));
+        assertEquals("Meera", base.getVote("Dev"));
+        reopened.close();
+
+        assertEquals(0, open(4096).getRecoveredCount());
+    }
+
+    @Test
+    public void rejectsAStudentFoldedWhileTheirSecondVoteWasBeingChecked() throws Exception {
+        // Runs a fold right after the underlying store has been read, before the journals are checked
+        AtomicReference<JournaledVoteStore> foldDuringLookup = new AtomicReference<>();
+        VoteStore interleaved = new VoteStore() {
+            @Override
+            public void insertBatch(List<Vote> votes, boolean[] accepted) {
+                base.insertBatch(votes, accepted);
+            }
+
+            @Override
+            public Map<String, Long> loadVoteCounts() {
+                return base.loadVoteCounts();
+            }
+
+            @Override
+            public void findVoters(List<Vote> votes, boolean[] found) throws Exception {
+                base.findVoters(votes, found);
+                JournaledVoteStore store = foldDuringLookup.getAndSet(null);
+                if (store != null) {
+                    store.compact();
+                }
+            }
+
+            @Override
+            public long findVoteId(String student) {
+                return base.findVoteId(student);
+            }
+
+            @Override
+            public void forEachVoter(Consumer<String> voter) {
+                base.forEachVoter(voter);
+            }
+        };
+        File dir = folder.getRoot();
+        JournaledVoteStore store = new JournaledVoteStore(interleaved, new VoteJournal(new File(dir, "journal.0"), 4096),
+                new VoteJournal(new File(dir, "journal.1"), 4096), 0);
+        boolean[] accepted = new boolean[1];
+        store.insertBatch(Arrays.asList(new Vote("Asha", "Ravi")), accepted);
+        assertTrue(accepted[0]);
+
+        foldDuringLookup.set(store);
+        store.insertBatch(Arrays.asList(new Vote("Asha", "Meera")), accepted);
+        assertFalse(accepted[0]);
+        assertEquals("Ravi", base.getVote("Asha"));
+        assertEquals(0, store.getUnfoldedCount());
+
+        // The read-only lookup has the same gap
+        store.insertBatch(Arrays.asList(new Vote("Dev", "Ravi")), accepted);
+        foldDuringLookup.set(store);
+        boolean[] found = new boolean[1];
+        store.findVoters(Arrays.asList(new Vote("Dev", "Meera")), found);
+        assertTrue(found[0]);
+        store.close();
+        assertEquals(Long.valueOf(2), base.loadVoteCounts().get("Ravi"));
+    }
+
+    @Test
+    public void foldsInlineWhenBothJournalsFill() throws Exception {
+        JournaledVoteStore store = open(128);
+        boolean[] accepted = new boolean[1];
+        for (int i = 0; i < 50; i++) {
+            store.insertBatch(Arrays.asList(new Vote("student-" + i, "Ravi")), accepted);
+            assertTrue(accepted[0]);
+        }
+        store.close();
+
+        assertEquals(50, base.size());
+    }
+
+    @Test
+    public void drainsBothJournalsWhenTheActiveOneFillsAfterAFailedFold() throws Exception {
+        AtomicBoolean failNextFold = new AtomicBoolean();
+        VoteStore flaky = new VoteStore() {
+            @Override
+            public void insertBatch(List<Vote> votes, boolean[] accepted) throws Exception {
+                if (failNextFold.getAndSet(false)) {
+                    throw new Exception("disk full");
+                }
+                base.insertBatch(votes, accepted);
+            }
+
+            @Override
+            public Map<String, Long> loadVoteCounts() {
+                return base.loadVoteCounts();
+            }
+
+            @Override
+            public void findVoters(List<Vote> votes, boolean[] found) {
+                base.findVoters(votes, found);
+            }
+
+            @Override
+            public long findVoteId(String student) {
+                return base.findVoteId(student);
+            }
+
+            @Override
+            public void forEachVoter(Consumer<String> voter) {
+                base.forEachVoter(voter);
+            }
+        };
+        File dir = folder.getRoot();
+        // Three of these votes fill a journal
+        JournaledVoteStore store = new JournaledVoteStore(flaky, new VoteJournal(new File(dir, "journal.0"), 128),
+                new VoteJournal(new File(dir, "journal.1"), 128), 0);
+        boolean[] accepted = new boolean[1];
+        for (int i = 0; i < 3; i++) {
+            store.insertBatch(Arrays.asList(new Vote("s-" + i, "Ravi")), accepted);
+        }
+        failNextFold.set(true);
+        try {
+            store.compact();
+            fail("The fold should have failed");
+        } catch (Exception expected) {
+            // Standby keeps its votes until a fold succeeds
+        }
+        for (int i = 3; i < 6; i++) {
+            store.insertBatch(Arrays.asList(new Vote("s-" + i, "Ravi")), accepted);
+        }
+
+        store.insertBatch(Arrays.asList(new Vote("s-6", "Ravi")), accepted);
+        assertTrue(accepted[0]);
+        assertEquals(6, base.size());
+        store.close();
+        assertEquals(7, base.size());
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.protocol.FrameDecoder;
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.PayloadReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ShardTallyTest {
+
+    private static final byte[] KEY = "shared by the teachers".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void convergesWhateverTheDeliveryOrder() throws Exception {
+        ShardTally a = new ShardTally("a");
+        ShardTally b = new ShardTally("b");
+        a.recordLocal("Asha", "Ravi", 100);
+        a.recordLocal("Dev", "Meera", 110);
+        b.recordLocal("Kiran", "Ravi", 105);
+        // Asha votes again on b, later: the vote on a wins
+        b.recordLocal("Asha", "Meera", 120);
+        ShardTally.Delta fromA = roundTrip(a.takeDelta(ShardTally.DEFAULT_DELTA_ENTRIES));
+        ShardTally.Delta fromB = roundTrip(b.takeDelta(ShardTally.DEFAULT_DELTA_ENTRIES));
+
+        ShardTally first = new ShardTally("c");
+        first.merge(fromA);
+        first.merge(fromB);
+        ShardTally second = new ShardTally("d");
+        second.merge(fromB);
+        second.merge(fromA);
+        // Redelivery changes nothing
+        second.merge(fromA);
+
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("Ravi", 2L);
+        expected.put("Meera", 1L);
+        assertEquals(expected, first.results());
+        assertEquals(expected, second.results());
+        assertEquals(1, second.getCrossShardDuplicates());
+    }
+
+    @Test
+    public void forwardsOnlyWhatChangedAndReportsNewVoters() {
+        ShardTally a = new ShardTally("a");
+        a.recordLocal("Asha", "Ravi", 100);
+        a.recordLocal("Dev", "Ravi", 110);
+        ShardTally.Delta first = a.takeDelta(1);
+        assertEquals(1, first.entries.size());
+        assertEquals(Long.valueOf(2), first.counters.get("a").get("Ravi"));
+        ShardTally.Delta rest = a.takeDelta(1);
+        assertTrue(rest.counters.isEmpty());
+        assertEquals(1, rest.entries.size());
+        assertTrue(a.takeDelta(1).isEmpty());
+
+        ShardTally coordinator = new ShardTally("c");
+        assertEquals(Collections.singletonList("Asha"), coordinator.merge(first));
+        assertEquals(Collections.singletonList("Dev"), coordinator.merge(rest));
+        // Merged changes are forwarded, so deltas can be relayed on to other nodes
+        assertEquals(2, coordinator.takeDelta(10).entries.size());
+        assertTrue(coordinator.merge(first).isEmpty());
+        assertTrue(coordinator.takeDelta(10).isEmpty());
+    }
+
+    @Test
+    public void seededCountersSurviveARestart() {
+        ShardTally coordinator = new ShardTally("c");
+        ShardTally before = new ShardTally("a");
+        before.recordLocal("Asha", "Ravi", 100);
+        coordinator.merge(before.takeDelta(10));
+
+        ShardTally restarted = new ShardTally("a");
+        restarted.seedLocalCounts(Collections.singletonMap("Ravi", 1L));
+        restarted.recordLocal("Dev", "Ravi", 200);
+        coordinator.merge(restarted.takeDelta(10));
+
+        assertEquals(Long.valueOf(2), coordinator.results().get("Ravi"));
+    }
+
+    @Test
+    public void rejectsDeltasThatWereAlteredOrSignedWithAnotherKey() throws Exception {
+        ShardTally a = new ShardTally("a");
+        a.recordLocal("Asha", "Ravi", 100);
+        byte[] frame = a.takeDelta(ShardTally.DEFAULT_DELTA_ENTRIES).toFrame(KEY);
+        assertNotNull(read(frame, KEY));
+
+        byte[] otherKey = Arrays.copyOf(KEY, KEY.length);
+        otherKey[0] ^= 1;
+        assertNull(read(frame, otherKey));
+        // Flip a bit of the student's name
+        byte[] altered = frame.clone();
+        altered[altered.length - ShardTally.MAC_SIZE - 20] ^= 1;
+        assertNull(read(altered, KEY));
+    }
+
+    private static ShardTally.Delta read(byte[] frame, byte[] key) throws Exception {
+        List<ShardTally.Delta> decoded = Arrays.asList(new ShardTally.Delta[1]);
+        new FrameDecoder().readFrom(new ByteArrayInputStream(frame), (type, buffer, offset, length) ->
+                decoded.set(0, ShardTally.Delta.read(new PayloadReader().reset(buffer, offset, length), key)));
+        return decoded.get(0);
+    }
+
+    private static ShardTally.Delta roundTrip(ShardTally.Delta delta) throws Exception {
+        byte[] frame = delta.toFrame(KEY);
+        List<ShardTally.Delta> decoded = Arrays.asList(new ShardTally.Delta[1]);
+        new FrameDecoder().readFrom(new ByteArrayInputStream(frame), (type, buffer, offset, length) -> {
+            assertEquals(MessageType.SHARD_DELTA, type);
+            decoded.set(0, ShardTally.Delta.read(new PayloadReader().reset(buffer, offset, length), KEY));
+        });
+        return decoded.get(0);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.votingcore.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class VoteJournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Vote> votes(String... studentCandidate) {
+        Vote[] votes = new Vote[studentCandidate.length / 2];
+        for (int i = 0; i < votes.length; i++) {
+            votes[i] = new Vote(studentCandidate[2 * i], studentCandidate[2 * i + 1]);
+        }
+        return Arrays.asList(votes);
+    }
+
+    @Test
+    public void recoversAppendedVotesAfterReopen() throws Exception {
+        File file = folder.newFile();
+        try (VoteJournal journal = new VoteJournal(file, 4096)) {
+            assertTrue(journal.append(votes("Asha", "Ravi", "Dev", "Zoë")));
+            assertTrue(journal.append(Arrays.asList(new Vote("Kiran", "Ravi", -7L))));
+            journal.sync();
+        }
+
+        try (VoteJournal journal = new VoteJournal(file, 4096)) {
+            List<Vote> recovered = journal.getRecovered();
+            assertEquals(3, recovered.size());
+            assertEquals("Dev", recovered.get(1).student);
+            assertEquals("Zoë", recovered.get(1).candidate);
+            assertEquals(Vote.NO_ID, recovered.get(1).voteId);
+            assertEquals(-7L, recovered.get(2).voteId);
+            // Appends continue after the recovered records
+            assertTrue(journal.append(votes("Meena", "Ravi")));
+            assertEquals(4, journal.size());
+        }
+    }
+
+    @Test
+    public void stopsAtATornRecord() throws Exception {
+        File file = folder.newFile();
+        try (VoteJournal journal = new VoteJournal(file, 4096)) {
+            journal.append(votes("Asha", "Ravi", "Dev", "Meera"));
+            journal.sync();
+        }
+        // Corrupt the last byte of the second record's body
+        int secondRecordEnd = VoteJournal.HEADER_SIZE + 2 * VoteJournal.RECORD_HEADER_SIZE + 2 * (8 + 4) + 8 + 8;
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(secondRecordEnd - 1);
+            raw.write('x');
+        }
+
+        try (VoteJournal journal = new VoteJournal(file, 4096)) {
+            assertEquals(1, journal.getRecovered().size());
+            assertEquals("Asha", journal.getRecovered().get(0).student);
+        }
+    }
+
+    @Test
+    public void resetHidesOldRecordsAndRejectsOverflow() throws Exception {
+        File file = folder.newFile();
+        try (VoteJournal journal = new VoteJournal(file, 64)) {
+            assertTrue(journal.append(votes("Asha", "Ravi")));
+            assertFalse(journal.append(votes("Dev", "Meera", "Kiran", "Meera")));
+            journal.reset();
+        }
+
+        try (VoteJournal journal = new VoteJournal(file, 64)) {
+            assertTrue(journal.getRecovered().isEmpty());
+        }
+    }
+
+    @Test
+    public void readsJournalsWrittenBeforeVotesHadIds() throws Exception {
+        File file = folder.newFile();
+        byte[] student = "Asha".getBytes(StandardCharsets.UTF_8);
+        byte[] candidate = "Ravi".getBytes(StandardCharsets.UTF_8);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(4096);
+            raw.writeInt(VoteJournal.MAGIC_WITHOUT_IDS);
+            raw.writeInt(3);
+            raw.writeLong(0);
+            int length = 4 + student.length + candidate.length;
+            // epoch + body, as the checksum covers them
+            ByteArrayOutputStream covered = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(covered);
+            out.writeInt(3);
+            out.writeShort(student.length);
+            out.write(student);
+            out.writeShort(candidate.length);
+            out.write(candidate);
+            CRC32 crc = new CRC32();
+            crc.update(covered.toByteArray());
+            raw.writeInt(length);
+            raw.writeInt((int) crc.getValue());
+            raw.write(covered.toByteArray());
+        }
+
+        try (VoteJournal journal = new VoteJournal(file, 4096)) {
+            assertEquals(1, journal.getRecovered().size());
+            assertEquals("Ravi", journal.getRecovered().get(0).candidate);
+            assertEquals(Vote.NO_ID, journal.getRecovered().get(0).voteId);
+            // Emptied into the new format
+            journal.reset();
+            assertTrue(journal.append(Arrays.asList(new Vote("Dev", "Meera", 5))));
+            journal.sync();
+        }
+        try (VoteJournal journal = new VoteJournal(file, 4096)) {
+            assertEquals(5, journal.getRecovered().get(0).voteId);
+        }
+    }
+}
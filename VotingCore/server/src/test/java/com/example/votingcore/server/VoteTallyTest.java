@@ -0,0 +1,50 @@
+package com.example.votingcore.server;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class VoteTallyTest {
+
+    @Test
+    public void countsConcurrentIncrements() throws InterruptedException {
+        VoteTally tally = new VoteTally();
+        Thread[] clients = new Thread[8];
+        for (int t = 0; t < clients.length; t++) {
+            clients[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    tally.increment(i % 2 == 0 ? "Ravi" : "Meera");
+                }
+            });
+            clients[t].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+
+        assertEquals(40_000, tally.count("Ravi"));
+        assertEquals(40_000, tally.count("Meera"));
+        assertEquals(80_000, tally.total());
+    }
+
+    @Test
+    public void loadReplacesExistingCounts() {
+        VoteTally tally = new VoteTally();
+        tally.increment("Stale");
+
+        Map<String, Long> stored = new HashMap<>();
+        stored.put("Ravi", 12L);
+        stored.put("Meera", 7L);
+        tally.load(stored);
+        tally.increment("Meera");
+
+        Map<String, Long> snapshot = tally.snapshot();
+        assertEquals(2, snapshot.size());
+        assertEquals(Long.valueOf(12), snapshot.get("Ravi"));
+        assertEquals(Long.valueOf(8), snapshot.get("Meera"));
+        assertEquals(0, tally.count("Stale"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.votingcore.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class VoterIndexTest {
+
+    @Test
+    public void remembersEveryVoterAcrossResizes() {
+        VoterIndex index = new VoterIndex();
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(index.add("student-" + i));
+        }
+
+        assertEquals(100_000, index.size());
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(index.contains("student-" + i));
+        }
+        assertFalse(index.contains("student-100000"));
+        assertFalse(index.add("student-42"));
+    }
+
+    @Test
+    public void staysCompactForAWholeSchool() {
+        VoterIndex small = new VoterIndex();
+        VoterIndex large = new VoterIndex();
+        for (int i = 0; i < 100_000; i++) {
+            if (i < 10_000) {
+                small.add("student-" + i);
+            }
+            large.add("student-" + i);
+        }
+
+        // At most 16 bytes per voter plus rounding up to a power of two
+        assertTrue(small.memoryFootprintBytes() <= 32 * 10_000);
+        assertTrue(large.memoryFootprintBytes() <= 32 * 100_000);
+    }
+
+    @Test
+    public void readersNeverSeeFalseDuplicatesDuringGrowth() throws InterruptedException {
+        VoterIndex index = new VoterIndex();
+        AtomicBoolean falsePositive = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < 200_000; i++) {
+                if (index.contains("absent-" + i)) {
+                    falsePositive.set(true);
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 200_000; i++) {
+            index.add("student-" + i);
+        }
+        reader.join();
+
+        assertFalse(falsePositive.get());
+    }
+}
@@ -0,0 +1,859 @@
+package com.example.votingcore.server;
+
+import com.example.votingcore.protocol.FrameDecoder;
+import com.example.votingcore.protocol.MessageType;
+import com.example.votingcore.protocol.Messages;
+import com.example.votingcore.protocol.PayloadReader;
+import com.example.votingcore.protocol.VoteReceipts;
+import com.example.votingcore.server.transport.TcpServerTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class VotingServerTest {
+
+    private static final byte[] SHARD_KEY = "shared by the teachers".getBytes(StandardCharsets.UTF_8);
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final InMemoryVoteStore store = new InMemoryVoteStore();
+    private VotingServer server;
+    private TcpServerTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new VotingServer(store, new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+                events.add(student + ":" + result);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                events.add("error:" + e.getMessage());
+            }
+        });
+        server.addCandidate("Ravi");
+        server.addCandidate("Meera");
+        transport = new TcpServerTransport(0);
+        server.start(transport);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /** Reads whole frames from one client socket. */
+    private static class FrameReader {
+        private final InputStream in;
+        private final FrameDecoder decoder = new FrameDecoder();
+        private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+        private final ArrayDeque<Integer> types = new ArrayDeque<>();
+        int type;
+        int electionId;
+        String title;
+        final List<Integer> ids = new ArrayList<>();
+
+        FrameReader(Socket socket) throws IOException {
+            in = socket.getInputStream();
+        }
+
+        PayloadReader next() throws IOException {
+            while (frames.isEmpty()) {
+                decoder.readFrom(in, (frameType, buffer, offset, length) -> {
+                    types.add(frameType);
+                    frames.add(Arrays.copyOfRange(buffer, offset, offset + length));
+                });
+            }
+            type = types.poll();
+            byte[] payload = frames.poll();
+            return new PayloadReader().reset(payload, 0, payload.length);
+        }
+
+        List<String> nextCandidates(int expectedVersion) throws IOException {
+            PayloadReader payload = next();
+            assertEquals(MessageType.CANDIDATES, type);
+            electionId = payload.readUnsignedShort();
+            title = payload.readString();
+            assertEquals(expectedVersion, payload.readInt());
+            ids.clear();
+            List<String> candidates = new ArrayList<>();
+            int count = payload.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                ids.add(payload.readUnsignedShort());
+                candidates.add(payload.readString());
+            }
+            return candidates;
+        }
+    }
+
+    @Test
+    public void acceptsValidatesAndTalliesVotes() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            assertEquals(Arrays.asList("Ravi", "Meera"), reader.nextCandidates(2));
+
+            OutputStream out = socket.getOutputStream();
+            out.write(Messages.vote("Asha", "Ravi"));
+            out.write(Messages.vote("Asha", "Meera"));
+            out.write(Messages.vote("Dev", "Nobody"));
+            out.write(Messages.voteById("Kiran", reader.ids.get(1)));
+            out.write(Messages.voteById("Lata", 99));
+            out.flush();
+
+            assertEquals("Asha:ACCEPTED", events.poll(5, TimeUnit.SECONDS));
+            assertEquals("Asha:DUPLICATE", events.poll(5, TimeUnit.SECONDS));
+            assertEquals("Dev:INVALID_CANDIDATE", events.poll(5, TimeUnit.SECONDS));
+            assertEquals("Kiran:ACCEPTED", events.poll(5, TimeUnit.SECONDS));
+            assertEquals("Lata:INVALID_CANDIDATE", events.poll(5, TimeUnit.SECONDS));
+        }
+
+        Map<String, Long> results = server.getResults();
+        assertEquals(Long.valueOf(1), results.get("Ravi"));
+        assertEquals(Long.valueOf(1), results.get("Meera"));
+        assertEquals("Ravi", store.getVote("Asha"));
+
+        ServerMetrics metrics = server.getMetrics();
+        assertEquals(2, metrics.getAccepted());
+        assertEquals(1, metrics.getDuplicates());
+        assertEquals(2, metrics.getInvalid());
+        assertEquals(2, metrics.getCommitLatency().getCount());
+        // Bytes are counted once the read that carried the votes returns, just after they are handled
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((metrics.getBytesIn() == 0 || metrics.getBytesOut() == 0) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(metrics.getBytesIn() > 0);
+        assertTrue(metrics.getBytesOut() > 0);
+        StringBuilder report = new StringBuilder();
+        server.writeMetrics(report);
+        assertTrue(report.toString().contains("votes_accepted=2\n"));
+    }
+
+    @Test
+    public void acknowledgesVoteRequestsAndAnswersRetriesIdempotently() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(2);
+            int ravi = reader.ids.get(0);
+
+            OutputStream out = socket.getOutputStream();
+            out.write(Messages.voteRequest(42, "Asha", Election.DEFAULT_ID, ravi));
+            out.write(Messages.voteRequest(42, "Asha", Election.DEFAULT_ID, ravi));
+            out.write(Messages.voteRequest(43, "Asha", Election.DEFAULT_ID, reader.ids.get(1)));
+            out.write(Messages.voteRequest(44, "Dev", Election.DEFAULT_ID, 99));
+            out.flush();
+
+            int[][] expected = {
+                    {42, MessageType.ACK_ACCEPTED},
+                    {42, MessageType.ACK_ACCEPTED},
+                    {43, MessageType.ACK_DUPLICATE},
+                    {44, MessageType.ACK_INVALID_CANDIDATE}};
+            for (int[] ack : expected) {
+                PayloadReader payload = reader.next();
+                assertEquals(MessageType.VOTE_ACK, reader.type);
+                assertEquals(ack[0], payload.readLong());
+                assertEquals(ack[1], payload.readUnsignedByte());
+            }
+        }
+
+        // The retry was answered from memory, not stored or reported again
+        assertEquals("Asha:ACCEPTED", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("Asha:DUPLICATE", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("Dev:INVALID_CANDIDATE", events.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, server.getMetrics().getAccepted());
+    }
+
+    @Test
+    public void commitsVoteBatchesInOneTransactionAndAcksInOrder() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(2);
+            int ravi = reader.ids.get(0);
+            int meera = reader.ids.get(1);
+
+            OutputStream out = socket.getOutputStream();
+            out.write(Messages.voteBatch(new long[]{1, 2, 3, 4},
+                    new String[]{"Asha", "Dev", "Asha", "Kiran"}, new int[4], new int[]{ravi, meera, meera, 99}));
+            // Second batch pipelined behind the first; vote 2 is a retry
+            out.write(Messages.voteBatch(new long[]{2, 5}, new String[]{"Dev", "Lina"}, new int[2],
+                    new int[]{meera, ravi}));
+            out.flush();
+
+            assertBatchAck(reader, new long[]{1, 2, 3, 4}, new int[]{MessageType.ACK_ACCEPTED,
+                    MessageType.ACK_ACCEPTED, MessageType.ACK_DUPLICATE, MessageType.ACK_INVALID_CANDIDATE});
+            assertBatchAck(reader, new long[]{2, 5}, new int[]{MessageType.ACK_ACCEPTED, MessageType.ACK_ACCEPTED});
+        }
+
+        assertEquals(2, server.getMetrics().batches.sum());
+        assertEquals(3, server.getMetrics().getAccepted());
+        assertEquals(Long.valueOf(2), server.getResults().get("Ravi"));
+    }
+
+    @Test
+    public void runsElectionsSideBySideAndClosesThemSeparately() throws Exception {
+        InMemoryVoteStore captainStore = new InMemoryVoteStore();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(2);
+            assertEquals(Election.DEFAULT_ID, reader.electionId);
+
+            Election captain = server.openElection(7, "House captain", captainStore);
+            assertEquals(Arrays.asList(), reader.nextCandidates(0));
+            assertEquals(7, reader.electionId);
+            assertEquals("House captain", reader.title);
+            assertTrue(server.addCandidate(7, "Kiran"));
+            PayloadReader delta = reader.next();
+            assertEquals(MessageType.CANDIDATE_DELTA, reader.type);
+            assertEquals(7, delta.readUnsignedShort());
+
+            OutputStream out = socket.getOutputStream();
+            // The same student votes once in each election; 8 is unknown
+            out.write(Messages.voteBatch(new long[]{1, 2, 3, 4}, new String[]{"Asha", "Asha", "Asha", "Dev"},
+                    new int[]{Election.DEFAULT_ID, 7, 7, 8}, new int[]{0, 0, 0, 0}));
+            out.flush();
+            assertBatchAck(reader, new long[]{1, 2, 3, 4}, new int[]{MessageType.ACK_ACCEPTED,
+                    MessageType.ACK_ACCEPTED, MessageType.ACK_DUPLICATE, MessageType.ACK_INVALID_CANDIDATE});
+            assertEquals("Kiran", captainStore.getVote("Asha"));
+            assertEquals("Ravi", store.getVote("Asha"));
+            assertEquals(Long.valueOf(1), captain.getResults().get("Kiran"));
+
+            assertTrue(server.closeElection(7));
+            assertFalse(server.closeElection(7));
+            PayloadReader closed = reader.next();
+            assertEquals(MessageType.ELECTION_CLOSED, reader.type);
+            assertEquals(7, closed.readUnsignedShort());
+
+            out.write(Messages.voteRequest(5, "Dev", 7, 0));
+            out.write(Messages.voteRequest(6, "Dev", Election.DEFAULT_ID, 1));
+            out.flush();
+            for (int[] ack : new int[][]{{5, MessageType.ACK_ELECTION_CLOSED}, {6, MessageType.ACK_ACCEPTED}}) {
+                PayloadReader payload = reader.next();
+                assertEquals(MessageType.VOTE_ACK, reader.type);
+                assertEquals(ack[0], payload.readLong());
+                assertEquals(ack[1], payload.readUnsignedByte());
+            }
+        }
+
+        assertEquals(Long.valueOf(1), server.getElection(7).getResults().get("Kiran"));
+        assertEquals(2, server.getElections().size());
+        try {
+            server.openElection(7, "Again", new InMemoryVoteStore());
+            fail("Election ids must not be reused");
+        } catch (IllegalArgumentException expected) {
+            // Students may still hold unacknowledged votes for the closed election
+        }
+    }
+
+    @Test
+    public void streamsChangedCountsAndResumesFromTheLastVersion() throws Exception {
+        VotingServer streaming = new VotingServer(new InMemoryVoteStore(), new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+                events.add("error:" + e.getMessage());
+            }
+        });
+        streaming.addCandidate("Ravi");
+        streaming.addCandidate("Meera");
+        // Published by hand below rather than by the timer
+        streaming.enableTallyStreaming(TimeUnit.HOURS.toMillis(1));
+        TcpServerTransport streamingTransport = new TcpServerTransport(0);
+        streaming.start(streamingTransport);
+        TallyPublisher publisher = streaming.getTallyPublisher();
+        int stream = publisher.getStreamId();
+        try (Socket first = new Socket(InetAddress.getLoopbackAddress(), streamingTransport.getPort())) {
+            FrameReader reader = new FrameReader(first);
+            reader.nextCandidates(2);
+            streaming.handleVote("Asha", "Ravi");
+            first.getOutputStream().write(Messages.subscribeTally(Election.DEFAULT_ID, 0, 0));
+            assertTally(reader, MessageType.TALLY_SNAPSHOT, 1, "Ravi", 1L);
+
+            streaming.handleVote("Dev", "Meera");
+            streaming.handleVote("Kiran", "Meera");
+            publisher.publish();
+            assertTally(reader, MessageType.TALLY_DELTA, 2, "Meera", 2L);
+            // Nothing changed, so nothing is sent before the pong
+            publisher.publish();
+            first.getOutputStream().write(Messages.ping());
+            reader.next();
+            assertEquals(MessageType.PONG, reader.type);
+
+            streaming.handleVote("Lata", "Ravi");
+            publisher.publish();
+            assertTally(reader, MessageType.TALLY_DELTA, 3, "Ravi", 2L);
+        }
+
+        try (Socket resumed = new Socket(InetAddress.getLoopbackAddress(), streamingTransport.getPort())) {
+            FrameReader reader = new FrameReader(resumed);
+            reader.nextCandidates(2);
+            resumed.getOutputStream().write(Messages.subscribeTally(Election.DEFAULT_ID, stream, 1));
+            assertTally(reader, MessageType.TALLY_DELTA, 2, "Meera", 2L);
+            assertTally(reader, MessageType.TALLY_DELTA, 3, "Ravi", 2L);
+            // A version from another run of the teacher's app cannot be resumed
+            resumed.getOutputStream().write(Messages.subscribeTally(Election.DEFAULT_ID, stream + 1, 3));
+            PayloadReader snapshot = reader.next();
+            assertEquals(MessageType.TALLY_SNAPSHOT, reader.type);
+            assertEquals(Election.DEFAULT_ID, snapshot.readUnsignedShort());
+            assertEquals(stream, snapshot.readInt());
+            assertEquals(3, snapshot.readInt());
+            assertEquals(2, snapshot.readUnsignedShort());
+        } finally {
+            streaming.stop();
+        }
+    }
+
+    @Test
+    public void announcesMediaByHashAndSendsItInChunksOnRequest() throws Exception {
+        byte[] photo = new byte[10_000];
+        new Random(1).nextBytes(photo);
+        assertTrue(server.setCandidateMedia(Election.DEFAULT_ID, "Meera", MessageType.MEDIA_PHOTO, photo));
+        assertFalse(server.setCandidateMedia(Election.DEFAULT_ID, "Nobody", MessageType.MEDIA_PHOTO, photo));
+        byte[] hash = MediaLibrary.sha256(photo);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(2);
+            int meera = reader.ids.get(1);
+            PayloadReader index = reader.next();
+            assertEquals(MessageType.MEDIA_INDEX, reader.type);
+            assertEquals(Election.DEFAULT_ID, index.readUnsignedShort());
+            assertEquals(1, index.readUnsignedShort());
+            assertEquals(meera, index.readUnsignedShort());
+            assertEquals(MessageType.MEDIA_PHOTO, index.readUnsignedByte());
+            byte[] announced = new byte[Messages.HASH_SIZE];
+            index.readBytes(announced, 0, announced.length);
+            assertArrayEquals(hash, announced);
+            assertEquals(photo.length, index.readInt());
+
+            OutputStream out = socket.getOutputStream();
+            out.write(Messages.fetchBlob(hash, 0));
+            assertArrayEquals(photo, readBlob(reader, 0, photo.length));
+            // Resuming part way through only sends the rest
+            out.write(Messages.fetchBlob(hash, 8192));
+            assertArrayEquals(Arrays.copyOfRange(photo, 8192, photo.length), readBlob(reader, 8192, photo.length));
+
+            out.write(Messages.fetchBlob(new byte[Messages.HASH_SIZE], 0));
+            PayloadReader missing = reader.next();
+            assertEquals(MessageType.BLOB_CHUNK, reader.type);
+            missing.readBytes(new byte[Messages.HASH_SIZE], 0, Messages.HASH_SIZE);
+            assertEquals(0, missing.readInt());
+        }
+        assertEquals(photo.length + photo.length - 8192, server.getMetrics().mediaBytes.sum());
+    }
+
+    /** Reads BLOB_CHUNKs from {@code offset} until {@code size} bytes have arrived. */
+    private static byte[] readBlob(FrameReader reader, int offset, int size) throws IOException {
+        int start = offset;
+        byte[] blob = new byte[size - start];
+        while (offset < size) {
+            PayloadReader chunk = reader.next();
+            assertEquals(MessageType.BLOB_CHUNK, reader.type);
+            chunk.readBytes(new byte[Messages.HASH_SIZE], 0, Messages.HASH_SIZE);
+            assertEquals(size, chunk.readInt());
+            assertEquals(offset, chunk.readInt());
+            int length = chunk.readUnsignedShort();
+            assertTrue(length <= MediaTransfer.CHUNK_SIZE);
+            chunk.readBytes(blob, offset - start, length);
+            offset += length;
+        }
+        return blob;
+    }
+
+    /** Reads a tally frame that holds exactly one candidate. */
+    private static void assertTally(FrameReader reader, int type, int version, String candidate, long votes)
+            throws IOException {
+        PayloadReader payload = reader.next();
+        assertEquals(type, reader.type);
+        assertEquals(Election.DEFAULT_ID, payload.readUnsignedShort());
+        payload.readInt();
+        assertEquals(version, payload.readInt());
+        assertEquals(1, payload.readUnsignedShort());
+        assertEquals(candidate, payload.readString());
+        assertEquals(votes, payload.readLong());
+    }
+
+    private static void assertBatchAck(FrameReader reader, long[] voteIds, int[] statuses) throws IOException {
+        PayloadReader payload = reader.next();
+        assertEquals(MessageType.VOTE_BATCH_ACK, reader.type);
+        assertEquals(voteIds.length, payload.readUnsignedShort());
+        for (int i = 0; i < voteIds.length; i++) {
+            assertEquals(voteIds[i], payload.readLong());
+            assertEquals(statuses[i], payload.readUnsignedByte());
+        }
+    }
+
+    @Test
+    public void answersHeartbeats() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(2);
+            socket.getOutputStream().write(Messages.ping());
+
+            assertEquals(0, reader.next().remaining());
+            assertEquals(MessageType.PONG, reader.type);
+        }
+    }
+
+    @Test
+    public void mergesShardsOnACoordinatorAndSharesVotersBack() throws Exception {
+        VotingServer a = shardServer("a");
+        VotingServer b = shardServer("b");
+        VotingServer coordinator = shardServer("c");
+        TcpServerTransport coordinatorTransport = new TcpServerTransport(0);
+        coordinator.start(coordinatorTransport);
+        try {
+            assertEquals(VoteResult.ACCEPTED, a.handleVote("Asha", "Ravi"));
+            assertEquals(VoteResult.ACCEPTED, a.handleVote("Dev", "Meera"));
+            assertEquals(VoteResult.ACCEPTED, b.handleVote("Kiran", "Ravi"));
+            // Each shard accepts Asha on its own; only a's earlier (or, on a tie, lower-named) vote counts
+            assertEquals(VoteResult.ACCEPTED, b.handleVote("Asha", "Meera"));
+
+            for (VotingServer shard : Arrays.asList(a, b)) {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), coordinatorTransport.getPort())) {
+                    FrameReader reader = new FrameReader(socket);
+                    reader.nextCandidates(2);
+                    OutputStream out = socket.getOutputStream();
+                    out.write(shard.getShard().takeDelta(ShardTally.DEFAULT_DELTA_ENTRIES).toFrame(SHARD_KEY));
+                    // Frames are handled in order, so the pong means the delta is merged
+                    out.write(Messages.ping());
+                    reader.next();
+                    assertEquals(MessageType.PONG, reader.type);
+                }
+            }
+
+            Map<String, Long> merged = coordinator.getShard().results();
+            assertEquals(Long.valueOf(2), merged.get("Ravi"));
+            assertEquals(Long.valueOf(1), merged.get("Meera"));
+            assertEquals(1, coordinator.getShard().getCrossShardDuplicates());
+
+            // Once a shard hears about b's voters it turns them away without asking storage
+            a.mergeShardDelta(coordinator.getShard().takeDelta(ShardTally.DEFAULT_DELTA_ENTRIES));
+            assertEquals(VoteResult.DUPLICATE, a.handleVote("Kiran", "Meera"));
+            assertEquals(a.getShard().results(), merged);
+        } finally {
+            a.stop();
+            b.stop();
+            coordinator.stop();
+        }
+    }
+
+    @Test
+    public void closesConnectionsThatSendDeltasWithoutTheShardKey() throws Exception {
+        VotingServer coordinator = shardServer("c");
+        TcpServerTransport coordinatorTransport = new TcpServerTransport(0);
+        coordinator.start(coordinatorTransport);
+        try {
+            ShardTally forger = new ShardTally("student");
+            forger.recordLocal("Asha", "Ravi", 0);
+            byte[] wrongKey = Arrays.copyOf(SHARD_KEY, SHARD_KEY.length);
+            wrongKey[0] ^= 1;
+            byte[] forged = forger.takeDelta(ShardTally.DEFAULT_DELTA_ENTRIES).toFrame(wrongKey);
+            // Neither a shard with another key nor a server that is no shard at all accepts it
+            for (int port : new int[]{coordinatorTransport.getPort(), transport.getPort()}) {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    FrameReader reader = new FrameReader(socket);
+                    reader.nextCandidates(2);
+                    socket.getOutputStream().write(forged);
+                    try {
+                        assertEquals(-1, socket.getInputStream().read());
+                    } catch (IOException expected) {
+                        // Reset rather than closed, depending on timing
+                    }
+                }
+            }
+
+            assertTrue(coordinator.getShard().results().isEmpty());
+            assertEquals(1, coordinator.getMetrics().rejectedShardDeltas.sum());
+            assertEquals(1, server.getMetrics().rejectedShardDeltas.sum());
+            // Asha was not locked out
+            assertEquals(VoteResult.ACCEPTED, coordinator.handleVote("Asha", "Meera"));
+        } finally {
+            coordinator.stop();
+        }
+    }
+
+    private VotingServer shardServer(String nodeId) {
+        VotingServer shard = new VotingServer(new InMemoryVoteStore(), new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+                events.add("error:" + e.getMessage());
+            }
+        });
+        shard.addCandidate("Ravi");
+        shard.addCandidate("Meera");
+        shard.enableSharding(nodeId, SHARD_KEY);
+        return shard;
+    }
+
+    @Test
+    public void sendsSnapshotToNewClientsAndDeltasToExistingOnes() throws Exception {
+        try (Socket first = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(first);
+            assertEquals(Arrays.asList("Ravi", "Meera"), reader.nextCandidates(2));
+
+            server.addCandidate("Dev");
+            server.removeCandidate("Ravi");
+
+            PayloadReader delta = reader.next();
+            assertEquals(MessageType.CANDIDATE_DELTA, reader.type);
+            assertEquals(Election.DEFAULT_ID, delta.readUnsignedShort());
+            assertEquals(3, delta.readInt());
+            assertEquals(MessageType.DELTA_ADD, delta.readUnsignedByte());
+            assertEquals(2, delta.readUnsignedShort());
+            assertEquals("Dev", delta.readString());
+            delta = reader.next();
+            assertEquals(Election.DEFAULT_ID, delta.readUnsignedShort());
+            assertEquals(4, delta.readInt());
+            assertEquals(MessageType.DELTA_REMOVE, delta.readUnsignedByte());
+            assertEquals(0, delta.readUnsignedShort());
+            assertEquals("Ravi", delta.readString());
+
+            try (Socket second = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+                assertEquals(Arrays.asList("Meera", "Dev"), new FrameReader(second).nextCandidates(4));
+            }
+
+            first.getOutputStream().write(Messages.syncCandidates(Election.DEFAULT_ID, 1));
+            assertEquals(Arrays.asList("Meera", "Dev"), reader.nextCandidates(4));
+            assertEquals(Arrays.asList(1, 2), reader.ids);
+        }
+    }
+
+    @Test
+    public void rebuildsTallyAndVoterIndexFromStoreOnStart() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            socket.getOutputStream().write(Messages.vote("Asha", "Ravi"));
+            assertEquals("Asha:ACCEPTED", events.poll(5, TimeUnit.SECONDS));
+        }
+        server.stop();
+
+        VotingServer restarted = new VotingServer(store, new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+        });
+        restarted.addCandidate("Ravi");
+        restarted.start(new TcpServerTransport(0));
+        try {
+            assertEquals(Long.valueOf(1), restarted.getResults().get("Ravi"));
+            assertTrue(restarted.getVoterIndex().contains("Asha"));
+            assertEquals(VoteResult.DUPLICATE, restarted.handleVote("Asha", "Ravi"));
+            assertEquals(1, store.size());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    @Test
+    public void restoresTheSavedBallotAndLoadsBeforeAccepting() throws Exception {
+        server.removeCandidate("Ravi");
+        server.addCandidate("Dev");
+        assertEquals(VoteResult.ACCEPTED, server.handleVote("Asha", 2));
+        Election saved = server.getElection(Election.DEFAULT_ID);
+        List<String> registered = saved.getRegisteredCandidates();
+        int[] ballotIds = new int[saved.getBallot().size()];
+        for (int i = 0; i < ballotIds.length; i++) {
+            ballotIds[i] = saved.getBallot().idAt(i);
+        }
+        server.stop();
+
+        long launchNanos = System.nanoTime();
+        VotingServer restarted = new VotingServer(store, new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+        });
+        restarted.getMetrics().setLaunchNanos(launchNanos);
+        restarted.restoreBallot(Election.DEFAULT_ID, registered, ballotIds);
+        restarted.load();
+        // Loaded while the app would still be asking for permissions
+        assertEquals(Long.valueOf(1), restarted.getResults().get("Dev"));
+        assertEquals(-1, restarted.getMetrics().getStartupMillis());
+        TcpServerTransport restartedTransport = new TcpServerTransport(0);
+        restarted.start(restartedTransport);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), restartedTransport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            assertEquals(Arrays.asList("Meera", "Dev"), reader.nextCandidates(1));
+            assertEquals(Arrays.asList(1, 2), reader.ids);
+
+            // A vote queued on a student before the restart still means the same candidate
+            assertEquals(VoteResult.ACCEPTED, restarted.handleVote("Kiran", 2));
+            assertEquals(VoteResult.DUPLICATE, restarted.handleVote("Asha", 1));
+            assertTrue(restarted.getMetrics().getStartupMillis() >= 0);
+            assertTrue(restarted.getMetrics().getFirstVoteMillis() >= restarted.getMetrics().getStartupMillis());
+            StringBuilder report = new StringBuilder();
+            restarted.writeMetrics(report);
+            assertTrue(report.toString().contains("startup_first_vote_ms="));
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    @Test
+    public void sendsReceiptsThatProveAcceptedVotesAreInTheChainedBatch() throws Exception {
+        server.stop();
+        server = new VotingServer(new InMemoryVoteStore(), new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+                events.add("error:" + e.getMessage());
+            }
+        });
+        server.addCandidate("Ravi");
+        server.addCandidate("Meera");
+        server.enableReceipts();
+        transport = new TcpServerTransport(0);
+        server.start(transport);
+        byte[] chain;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(2);
+            socket.getOutputStream().write(Messages.voteBatch(new long[]{1, 2, 3},
+                    new String[]{"Asha", "Dev", "Asha"}, new int[3], new int[]{0, 1, 1}));
+
+            // The ack and the two receipts, in whichever order the hashing thread allows
+            byte[][] chains = new byte[2][];
+            for (int frame = 0; frame < 3; frame++) {
+                PayloadReader payload = reader.next();
+                if (reader.type == MessageType.VOTE_BATCH_ACK) {
+                    continue;
+                }
+                assertEquals(MessageType.VOTE_RECEIPT, reader.type);
+                long voteId = payload.readLong();
+                assertTrue(voteId == 1 || voteId == 2);
+                chains[(int) voteId - 1] = checkReceipt(payload, voteId == 1 ? "Asha" : "Dev", (int) voteId - 1);
+            }
+            assertArrayEquals(chains[0], chains[1]);
+            chain = chains[0];
+        }
+        ReceiptLog log = server.getReceiptLog();
+        assertArrayEquals(chain, log.getChainHead());
+
+        // A retry whose ack was lost gets the receipt again on its new connection
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(2);
+            socket.getOutputStream().write(Messages.voteRequest(2, "Dev", Election.DEFAULT_ID, 1));
+            PayloadReader payload = reader.next();
+            if (reader.type == MessageType.VOTE_ACK) {
+                payload = reader.next();
+            }
+            assertEquals(MessageType.VOTE_RECEIPT, reader.type);
+            assertEquals(2, payload.readLong());
+            assertArrayEquals(chain, checkReceipt(payload, "Dev", 1));
+        }
+
+        StringBuilder audit = new StringBuilder();
+        log.writeAudit(audit);
+        assertTrue(audit.toString().startsWith("batch=0 leaves=2 root="));
+        assertTrue(audit.toString().contains(" chain=" + MediaLibrary.hex(chain) + "\n"));
+    }
+
+    @Test
+    public void answersRetriesFromTheStoredVoteIdOnceTheyAreForgottenOrTheServerRestarted() throws Exception {
+        int votes = VotingServer.MAX_REMEMBERED_VOTE_IDS + 100;
+        server.stop();
+        server = receiptServer();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(2);
+            // In chunks, so the acks and receipts never back up past the session's send queue
+            int chunk = 100;
+            int receipts = 0;
+            for (int first = 1; first <= votes; first += chunk) {
+                int count = Math.min(chunk, votes - first + 1);
+                long[] voteIds = new long[count];
+                String[] students = new String[count];
+                for (int i = 0; i < count; i++) {
+                    voteIds[i] = first + i;
+                    students[i] = "s-" + (first + i);
+                }
+                socket.getOutputStream().write(Messages.voteBatch(voteIds, students, new int[count], new int[count]));
+                // Everything for this chunk, receipts before or after the ack, before the next one
+                boolean acked = false;
+                while (!acked || receipts < first + count - 1) {
+                    reader.next();
+                    if (reader.type == MessageType.VOTE_RECEIPT) {
+                        receipts++;
+                    } else {
+                        acked = true;
+                    }
+                }
+            }
+
+            // Vote 1's id and receipt have both been pushed out of memory by the later ones
+            socket.getOutputStream().write(Messages.voteRequest(1, "s-1", Election.DEFAULT_ID, 0));
+            for (int frame = 0; frame < 2; frame++) {
+                PayloadReader payload = reader.next();
+                assertEquals(1, payload.readLong());
+                if (reader.type == MessageType.VOTE_ACK) {
+                    assertEquals(MessageType.ACK_ACCEPTED, payload.readUnsignedByte());
+                } else {
+                    // Rebuilt from the first batch
+                    assertEquals(MessageType.VOTE_RECEIPT, reader.type);
+                    assertEquals(0, payload.readInt());
+                }
+            }
+        }
+        assertEquals(votes, server.getMetrics().getAccepted());
+
+        // Same storage, nothing in memory
+        server.stop();
+        server = receiptServer();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(2);
+            socket.getOutputStream().write(Messages.voteRequest(2, "s-2", Election.DEFAULT_ID, 0));
+            socket.getOutputStream().write(Messages.voteRequest(votes + 1, "s-2", Election.DEFAULT_ID, 1));
+            int[][] expected = {{2, MessageType.ACK_ACCEPTED}, {votes + 1, MessageType.ACK_DUPLICATE}};
+            for (int[] ack : expected) {
+                PayloadReader payload = reader.next();
+                assertEquals(MessageType.VOTE_ACK, reader.type);
+                assertEquals(ack[0], payload.readLong());
+                assertEquals(ack[1], payload.readUnsignedByte());
+            }
+        }
+        assertEquals(0, server.getMetrics().getAccepted());
+        assertEquals(Long.valueOf(votes), server.getResults().get("Ravi"));
+    }
+
+    /** A server with receipts over {@link #store}, as TeacherApp builds it on every launch. */
+    private VotingServer receiptServer() throws Exception {
+        VotingServer restarted = new VotingServer(store, new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+                events.add("error:" + e.getMessage());
+            }
+        });
+        restarted.addCandidate("Ravi");
+        restarted.addCandidate("Meera");
+        restarted.enableReceipts();
+        transport = new TcpServerTransport(0);
+        restarted.start(transport);
+        return restarted;
+    }
+
+    @Test
+    public void throttlesFloodingClientsAndDisconnectsThoseThatKeepSending() throws Exception {
+        server.stop();
+        server = new VotingServer(new InMemoryVoteStore(), new VotingServer.Listener() {
+            @Override
+            public void onVote(String student, String candidate, VoteResult result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+                events.add("error:" + e.getMessage());
+            }
+        });
+        server.addCandidate("Ravi");
+        // Practically no refill during the test
+        server.enableAdmissionControl(0.001, 2, IngestLimiter.DEFAULT_MAX_QUEUED_VOTES);
+        transport = new TcpServerTransport(0);
+        server.start(transport);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(1);
+            socket.getOutputStream().write(Messages.voteBatch(new long[]{1, 2, 3},
+                    new String[]{"Asha", "Dev", "Kiran"}, new int[3], new int[3]));
+            assertBatchAck(reader, new long[]{1, 2, 3},
+                    new int[]{MessageType.ACK_ACCEPTED, MessageType.ACK_ACCEPTED, MessageType.ACK_RETRY});
+
+            for (int i = 1; i < IngestLimiter.MAX_STRIKES; i++) {
+                socket.getOutputStream().write(Messages.voteRequest(3, "Kiran", Election.DEFAULT_ID, 0));
+                PayloadReader payload = reader.next();
+                assertEquals(MessageType.VOTE_ACK, reader.type);
+                assertEquals(3, payload.readLong());
+                assertEquals(MessageType.ACK_RETRY, payload.readUnsignedByte());
+            }
+            socket.getOutputStream().write(Messages.voteRequest(3, "Kiran", Election.DEFAULT_ID, 0));
+            try {
+                assertEquals(-1, socket.getInputStream().read());
+            } catch (IOException expected) {
+                // Reset rather than closed, depending on timing
+            }
+        }
+
+        // Other clients have buckets of their own
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+            FrameReader reader = new FrameReader(socket);
+            reader.nextCandidates(1);
+            socket.getOutputStream().write(Messages.voteRequest(3, "Kiran", Election.DEFAULT_ID, 0));
+            PayloadReader payload = reader.next();
+            assertEquals(3, payload.readLong());
+            assertEquals(MessageType.ACK_ACCEPTED, payload.readUnsignedByte());
+        }
+
+        // Kiran in the batch, then every refused request
+        assertEquals(1 + IngestLimiter.MAX_STRIKES, server.getMetrics().getThrottled());
+        assertEquals(1, server.getMetrics().getAbusiveDisconnects());
+        assertEquals(3, server.getMetrics().getAccepted());
+        StringBuilder metrics = new StringBuilder();
+        server.writeMetrics(metrics);
+        assertTrue(metrics.toString().contains("clients_disconnected_abusive=1\n"));
+        assertTrue(metrics.toString().contains("ingest_queued=0\n"));
+    }
+
+    /** Checks a receipt's proof after its vote id and returns the chain value it leads to. */
+    private static byte[] checkReceipt(PayloadReader payload, String student, int candidateId) throws IOException {
+        int batch = payload.readInt();
+        int index = payload.readInt();
+        int count = payload.readInt();
+        byte[] previous = new byte[Messages.HASH_SIZE];
+        payload.readBytes(previous, 0, previous.length);
+        List<byte[]> proof = new ArrayList<>();
+        for (int depth = payload.readUnsignedByte(); depth > 0; depth--) {
+            byte[] sibling = new byte[Messages.HASH_SIZE];
+            payload.readBytes(sibling, 0, sibling.length);
+            proof.add(sibling);
+        }
+        assertEquals(0, batch);
+        assertEquals(2, count);
+        assertArrayEquals(VoteReceipts.genesis(), previous);
+        byte[] root = VoteReceipts.rootFromProof(VoteReceipts.leaf(Election.DEFAULT_ID, candidateId, student),
+                index, count, proof);
+        assertNotNull(root);
+        return VoteReceipts.chain(previous, batch, root);
+    }
+}